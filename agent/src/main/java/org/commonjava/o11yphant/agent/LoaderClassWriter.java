@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.agent;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Computes common super classes for frame computation by reading class files through the defining loader instead of
+ * loading application classes, which must not happen from inside a transformer. JDK types are resolved reflectively
+ * (they are already loaded, and their class files are newer than ASM can read). Interfaces and unresolvable types fall
+ * back to {@code java/lang/Object}, which the verifier accepts for them.
+ */
+class LoaderClassWriter
+        extends ClassWriter
+{
+    private static final String OBJECT = "java/lang/Object";
+
+    private final ClassLoader loader;
+
+    LoaderClassWriter( int flags, ClassLoader loader )
+    {
+        super( flags );
+        this.loader = loader;
+    }
+
+    @Override
+    protected String getCommonSuperClass( String type1, String type2 )
+    {
+        Set<String> supers1 = new HashSet<>();
+        for ( String t = type1; t != null; t = superName( t ) )
+        {
+            supers1.add( t );
+        }
+        for ( String t = type2; t != null; t = superName( t ) )
+        {
+            if ( supers1.contains( t ) )
+            {
+                return t;
+            }
+        }
+        return OBJECT;
+    }
+
+    private String superName( String type )
+    {
+        if ( OBJECT.equals( type ) )
+        {
+            return null;
+        }
+
+        ClassLoader cl = loader == null ? ClassLoader.getSystemClassLoader() : loader;
+        if ( type.startsWith( "java/" ) )
+        {
+            try
+            {
+                Class<?> superClass = Class.forName( type.replace( '/', '.' ), false, cl ).getSuperclass();
+                return superClass == null ? OBJECT : superClass.getName().replace( '.', '/' );
+            }
+            catch ( ClassNotFoundException | LinkageError e )
+            {
+                return OBJECT;
+            }
+        }
+
+        try (InputStream in = cl.getResourceAsStream( type + ".class" ))
+        {
+            if ( in == null )
+            {
+                return OBJECT;
+            }
+            ClassReader reader = new ClassReader( in );
+            return ( reader.getAccess() & Opcodes.ACC_INTERFACE ) != 0 ? OBJECT : reader.getSuperName();
+        }
+        catch ( IOException | RuntimeException e )
+        {
+            return OBJECT;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Java agent weaving {@link org.commonjava.o11yphant.metrics.annotation.Measure} instrumentation into classes as they
+ * are loaded, for services that do not run CDI interceptors:
+ * <pre>
+ * java -javaagent:o11yphant-agent.jar=com.acme.service,com.acme.storage ...
+ * </pre>
+ * The argument is a comma-separated list of packages; only classes in them are parsed, which bounds the startup cost.
+ * The packages can also be given with the {@value #PACKAGES_PROPERTY} system property. Woven methods report through
+ * {@link org.commonjava.o11yphant.metrics.instrument.MeasureHandle}, i.e. to whatever
+ * {@link org.commonjava.o11yphant.metrics.MetricsManager} is installed there.
+ * <p>
+ * The agent jar does not bundle its dependencies: {@code asm}, {@code asm-commons}, {@code asm-tree} (9.6) and
+ * {@code slf4j-api} must sit next to it under their Maven file names (e.g. {@code asm-9.6.jar}), where its manifest
+ * {@code Class-Path} picks them up, or be put on the system class path with {@code -cp}.
+ * <p>
+ * When attached to a running JVM, only classes loaded after the attach are woven.
+ */
+public class MeasureAgent
+{
+    public static final String PACKAGES_PROPERTY = "o11yphant.agent.packages";
+
+    private static final Logger logger = LoggerFactory.getLogger( MeasureAgent.class );
+
+    public static void premain( String args, Instrumentation instrumentation )
+    {
+        install( args, instrumentation );
+    }
+
+    public static void agentmain( String args, Instrumentation instrumentation )
+    {
+        install( args, instrumentation );
+    }
+
+    private static void install( String args, Instrumentation instrumentation )
+    {
+        List<String> packages = parsePackages( args );
+        packages.addAll( parsePackages( System.getProperty( PACKAGES_PROPERTY ) ) );
+        if ( packages.isEmpty() )
+        {
+            logger.warn( "No packages configured for @Measure weaving (agent argument or -D{}), agent is inactive",
+                         PACKAGES_PROPERTY );
+            return;
+        }
+
+        logger.info( "Weaving @Measure instrumentation into packages: {}", packages );
+        instrumentation.addTransformer( new MeasureTransformer( packages ) );
+    }
+
+    static List<String> parsePackages( String value )
+    {
+        List<String> packages = new ArrayList<>();
+        if ( value != null )
+        {
+            for ( String p : value.split( "[,;:\\s]+" ) )
+            {
+                if ( !p.trim().isEmpty() )
+                {
+                    packages.add( p.trim() );
+                }
+            }
+        }
+        return packages;
+    }
+}
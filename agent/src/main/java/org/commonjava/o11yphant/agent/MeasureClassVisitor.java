@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.agent;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.AdviceAdapter;
+import org.objectweb.asm.commons.Method;
+
+import java.util.List;
+
+/**
+ * Second pass: adds one static {@code MeasureHandle} field per measured method (initialized in the static
+ * initializer, created if missing) and wraps each measured method body as
+ * <pre>
+ * MeasureHandle.Scope scope = HANDLE.start();
+ * try { body } catch ( Throwable t ) { scope.failed( t ); throw t; } finally { scope.close(); }
+ * </pre>
+ * except that an object returned normally is passed to {@code scope.complete( result )} instead of closing the scope,
+ * so methods returning a {@code CompletionStage} are measured until the stage completes.
+ */
+class MeasureClassVisitor
+        extends ClassVisitor
+{
+    static final String HANDLE = "org/commonjava/o11yphant/metrics/instrument/MeasureHandle";
+
+    static final String HANDLE_DESC = "L" + HANDLE + ";";
+
+    static final Type SCOPE = Type.getObjectType( HANDLE + "$Scope" );
+
+    private static final String FIELD_PREFIX = "o11y$measure$";
+
+    private final MeasureScanner scanner;
+
+    private final List<String> measured;
+
+    MeasureClassVisitor( ClassVisitor cv, MeasureScanner scanner )
+    {
+        super( Opcodes.ASM9, cv );
+        this.scanner = scanner;
+        this.measured = scanner.getMeasured();
+    }
+
+    @Override
+    public MethodVisitor visitMethod( int access, String name, String desc, String signature, String[] exceptions )
+    {
+        MethodVisitor mv = super.visitMethod( access, name, desc, signature, exceptions );
+        if ( "<clinit>".equals( name ) )
+        {
+            return new MethodVisitor( Opcodes.ASM9, mv )
+            {
+                @Override
+                public void visitCode()
+                {
+                    super.visitCode();
+                    initHandles( mv );
+                }
+            };
+        }
+
+        int idx = measured.indexOf( name + desc );
+        if ( idx < 0 )
+        {
+            return mv;
+        }
+        return new MeasureMethodAdapter( mv, access, name, desc, FIELD_PREFIX + idx );
+    }
+
+    @Override
+    public void visitEnd()
+    {
+        for ( int i = 0; i < measured.size(); i++ )
+        {
+            super.visitField( Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC,
+                              FIELD_PREFIX + i, HANDLE_DESC, null, null ).visitEnd();
+        }
+
+        if ( !scanner.hasStaticInit() )
+        {
+            MethodVisitor mv = super.visitMethod( Opcodes.ACC_STATIC, "<clinit>", "()V", null, null );
+            mv.visitCode();
+            initHandles( mv );
+            mv.visitInsn( Opcodes.RETURN );
+            mv.visitMaxs( 0, 0 );
+            mv.visitEnd();
+        }
+
+        super.visitEnd();
+    }
+
+    private void initHandles( MethodVisitor mv )
+    {
+        String owner = scanner.getClassName();
+        for ( int i = 0; i < measured.size(); i++ )
+        {
+            String key = measured.get( i );
+            mv.visitLdcInsn( Type.getObjectType( owner ) );
+            mv.visitLdcInsn( key.substring( 0, key.indexOf( '(' ) ) );
+            mv.visitMethodInsn( Opcodes.INVOKESTATIC, HANDLE, "of",
+                                "(Ljava/lang/Class;Ljava/lang/String;)" + HANDLE_DESC, false );
+            mv.visitFieldInsn( Opcodes.PUTSTATIC, owner, FIELD_PREFIX + i, HANDLE_DESC );
+        }
+    }
+
+    private class MeasureMethodAdapter
+            extends AdviceAdapter
+    {
+        private final String field;
+
+        private final Label start = new Label();
+
+        private final Label end = new Label();
+
+        private final Label handler = new Label();
+
+        private int scope;
+
+        MeasureMethodAdapter( MethodVisitor mv, int access, String name, String desc, String field )
+        {
+            super( Opcodes.ASM9, mv, access, name, desc );
+            this.field = field;
+        }
+
+        @Override
+        protected void onMethodEnter()
+        {
+            visitFieldInsn( GETSTATIC, scanner.getClassName(), field, HANDLE_DESC );
+            visitMethodInsn( INVOKEVIRTUAL, HANDLE, "start", "()" + SCOPE.getDescriptor(), false );
+            scope = newLocal( SCOPE );
+            storeLocal( scope );
+            visitLabel( start );
+        }
+
+        @Override
+        protected void onMethodExit( int opcode )
+        {
+            // explicit throws are handled by the catch-all handler below
+            if ( opcode == ARETURN )
+            {
+                dup();
+                loadLocal( scope );
+                swap();
+                invokeVirtual( SCOPE, Method.getMethod( "java.lang.Object complete(java.lang.Object)" ) );
+                pop();
+            }
+            else if ( opcode != ATHROW )
+            {
+                loadLocal( scope );
+                invokeVirtual( SCOPE, Method.getMethod( "void close()" ) );
+            }
+        }
+
+        @Override
+        public void visitMaxs( int maxStack, int maxLocals )
+        {
+            visitLabel( end );
+            // registered last, so the method's own handlers keep precedence
+            visitTryCatchBlock( start, end, handler, "java/lang/Throwable" );
+            visitLabel( handler );
+            dup();
+            loadLocal( scope );
+            swap();
+            invokeVirtual( SCOPE, Method.getMethod( "void failed(java.lang.Throwable)" ) );
+            loadLocal( scope );
+            invokeVirtual( SCOPE, Method.getMethod( "void close()" ) );
+            throwException();
+            super.visitMaxs( maxStack, maxLocals );
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.agent;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * First, code-less pass over a class: finds the methods to measure. A method is measured when it carries
+ * {@code @Measure}, or when the class does and the method is public and non-static (mirroring what the CDI
+ * interceptor sees). Abstract, native, synthetic methods and constructors are never measured.
+ */
+class MeasureScanner
+        extends ClassVisitor
+{
+    static final String MEASURE_DESC = "Lorg/commonjava/o11yphant/metrics/annotation/Measure;";
+
+    private static final int SKIPPED = Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE | Opcodes.ACC_SYNTHETIC
+                    | Opcodes.ACC_BRIDGE;
+
+    private String className;
+
+    private int version;
+
+    private boolean isInterface;
+
+    private boolean classMeasured;
+
+    private boolean hasStaticInit;
+
+    private final Map<String, Candidate> candidates = new LinkedHashMap<>();
+
+    private List<String> measured;
+
+    MeasureScanner()
+    {
+        super( Opcodes.ASM9 );
+    }
+
+    @Override
+    public void visit( int version, int access, String name, String signature, String superName,
+                       String[] interfaces )
+    {
+        this.className = name;
+        this.version = version & 0xFFFF;
+        this.isInterface = ( access & Opcodes.ACC_INTERFACE ) != 0;
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation( String desc, boolean visible )
+    {
+        if ( MEASURE_DESC.equals( desc ) )
+        {
+            classMeasured = true;
+        }
+        return null;
+    }
+
+    @Override
+    public MethodVisitor visitMethod( int access, String name, String desc, String signature, String[] exceptions )
+    {
+        if ( "<clinit>".equals( name ) )
+        {
+            hasStaticInit = true;
+            return null;
+        }
+        if ( "<init>".equals( name ) || ( access & SKIPPED ) != 0 )
+        {
+            return null;
+        }
+
+        Candidate candidate = new Candidate( access );
+        candidates.put( name + desc, candidate );
+        return new MethodVisitor( Opcodes.ASM9 )
+        {
+            @Override
+            public AnnotationVisitor visitAnnotation( String annotationDesc, boolean visible )
+            {
+                if ( MEASURE_DESC.equals( annotationDesc ) )
+                {
+                    candidate.annotated = true;
+                }
+                return null;
+            }
+        };
+    }
+
+    String getClassName()
+    {
+        return className;
+    }
+
+    boolean hasStaticInit()
+    {
+        return hasStaticInit;
+    }
+
+    /**
+     * Interfaces are skipped (their fields must be public) as are pre-Java 5 class files, which can't load class
+     * constants.
+     */
+    boolean isWeavable()
+    {
+        return !isInterface && version >= Opcodes.V1_5 && !getMeasured().isEmpty();
+    }
+
+    /**
+     * Keys ({@code name + desc}) of the measured methods, in declaration order. The position is the handle index.
+     */
+    List<String> getMeasured()
+    {
+        if ( measured != null )
+        {
+            return measured;
+        }
+
+        measured = new ArrayList<>();
+        candidates.forEach( ( key, c ) -> {
+            boolean publicInstance = ( c.access & Opcodes.ACC_PUBLIC ) != 0 && ( c.access & Opcodes.ACC_STATIC ) == 0;
+            if ( c.annotated || ( classMeasured && publicInstance ) )
+            {
+                measured.add( key );
+            }
+        } );
+        return measured;
+    }
+
+    private static final class Candidate
+    {
+        private final int access;
+
+        private boolean annotated;
+
+        private Candidate( int access )
+        {
+            this.access = access;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.agent;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Weaves {@link org.commonjava.o11yphant.metrics.instrument.MeasureHandle} scopes around {@code @Measure} methods of
+ * classes in the configured packages. Other classes are rejected on their name alone, before any parsing. Classes that
+ * cannot be woven are left untouched; class files newer than ASM supports (Java 22 with ASM 9.6) are skipped before
+ * parsing, with a single warning for all of them.
+ *
+ * @see MeasureClassVisitor
+ */
+public class MeasureTransformer
+        implements ClassFileTransformer
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private static final int MAX_SUPPORTED_VERSION = Opcodes.V22;
+
+    private final String[] prefixes;
+
+    private final AtomicBoolean warnedUnsupported = new AtomicBoolean();
+
+    public MeasureTransformer( List<String> packages )
+    {
+        this.prefixes = packages.stream()
+                                .map( p -> p.replace( '.', '/' ) + ( p.endsWith( "." ) ? "" : "/" ) )
+                                .map( p -> p.replace( "//", "/" ) )
+                                .toArray( String[]::new );
+    }
+
+    @Override
+    public byte[] transform( ClassLoader loader, String className, Class<?> classBeingRedefined,
+                             ProtectionDomain protectionDomain, byte[] classfileBuffer )
+    {
+        // redefinition can't add the handle fields
+        if ( className == null || classBeingRedefined != null || !matches( className ) )
+        {
+            return null;
+        }
+
+        if ( !supported( classfileBuffer ) )
+        {
+            if ( warnedUnsupported.compareAndSet( false, true ) )
+            {
+                logger.warn( "Skipping @Measure weaving of class files newer than Java 22, starting with {}; further "
+                                             + "ones are logged at debug level", className );
+            }
+            else
+            {
+                logger.debug( "Skipping @Measure weaving of {}: class file newer than Java 22", className );
+            }
+            return null;
+        }
+
+        try
+        {
+            return weave( classfileBuffer, loader );
+        }
+        catch ( Throwable e )
+        {
+            logger.warn( "Failed to weave @Measure instrumentation into {}: {}", className, e.toString() );
+            return null;
+        }
+    }
+
+    static boolean supported( byte[] classfileBuffer )
+    {
+        // the major version is the big-endian u2 at offset 6; ASM rejects versions it doesn't know
+        if ( classfileBuffer.length < 8 )
+        {
+            return true;
+        }
+        int major = ( ( classfileBuffer[6] & 0xFF ) << 8 ) | ( classfileBuffer[7] & 0xFF );
+        return major <= MAX_SUPPORTED_VERSION;
+    }
+
+    boolean matches( String className )
+    {
+        for ( String prefix : prefixes )
+        {
+            if ( className.startsWith( prefix ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the woven class, or null if the class has nothing to measure
+     */
+    byte[] weave( byte[] classfileBuffer, ClassLoader loader )
+    {
+        ClassReader reader = new ClassReader( classfileBuffer );
+
+        MeasureScanner scanner = new MeasureScanner();
+        reader.accept( scanner, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES );
+        if ( !scanner.isWeavable() )
+        {
+            return null;
+        }
+
+        ClassWriter writer = new LoaderClassWriter( ClassWriter.COMPUTE_FRAMES, loader );
+        reader.accept( new MeasureClassVisitor( writer, scanner ), ClassReader.SKIP_FRAMES );
+
+        logger.debug( "Woven @Measure instrumentation into {} ({} methods)", scanner.getClassName(),
+                      scanner.getMeasured().size() );
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.agent;
+
+import com.codahale.metrics.health.HealthCheckRegistry;
+import org.commonjava.o11yphant.agent.fixture.MeasuredService;
+import org.commonjava.o11yphant.metrics.DefaultMetricRegistry;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
+import org.commonjava.o11yphant.metrics.api.MetricRegistry;
+import org.commonjava.o11yphant.metrics.conf.DefaultMetricsConfig;
+import org.commonjava.o11yphant.metrics.instrument.MeasureHandle;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import static org.apache.commons.io.IOUtils.toByteArray;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MeasureTransformerTest
+{
+    private static final String FIXTURE = MeasuredService.class.getName();
+
+    private final MeasureTransformer transformer =
+                    new MeasureTransformer( Collections.singletonList( "org.commonjava.o11yphant.agent.fixture" ) );
+
+    @After
+    public void tearDown()
+    {
+        MeasureHandle.uninstall();
+    }
+
+    @Test
+    public void onlyConfiguredPackagesAreWoven()
+            throws Exception
+    {
+        assertThat( transformer.transform( getClass().getClassLoader(), internalName( getClass().getName() ), null,
+                                           null, bytes( getClass().getName() ) ), nullValue() );
+        assertThat( transformer.transform( getClass().getClassLoader(), internalName( FIXTURE ), null, null,
+                                           bytes( FIXTURE ) ), notNullValue() );
+    }
+
+    @Test
+    public void modernClassFilesAreWovenAndUnknownOnesSkipped()
+            throws Exception
+    {
+        // Java 17
+        byte[] modern = bytes( FIXTURE );
+        modern[6] = 0;
+        modern[7] = 61;
+        assertThat( MeasureTransformer.supported( modern ), equalTo( true ) );
+        assertThat( transformer.transform( getClass().getClassLoader(), internalName( FIXTURE ), null, null, modern ),
+                    notNullValue() );
+
+        // newer than ASM knows
+        byte[] newer = bytes( FIXTURE );
+        newer[6] = 0;
+        newer[7] = 99;
+        assertThat( MeasureTransformer.supported( newer ), equalTo( false ) );
+        assertThat( transformer.transform( getClass().getClassLoader(), internalName( FIXTURE ), null, null, newer ),
+                    nullValue() );
+    }
+
+    @Test
+    public void wovenMethodsRecordMetrics()
+            throws Exception
+    {
+        MetricRegistry registry =
+                        new DefaultMetricRegistry( new com.codahale.metrics.MetricRegistry(), new HealthCheckRegistry() );
+        MeasureHandle.install( new DefaultMetricsManager( registry ), new DefaultMetricsConfig() );
+
+        byte[] woven = transformer.transform( getClass().getClassLoader(), internalName( FIXTURE ), null, null,
+                                              bytes( FIXTURE ) );
+        Class<?> type = new WovenLoader( getClass().getClassLoader(), woven ).loadClass( FIXTURE );
+        Object service = type.getDeclaredConstructor().newInstance();
+
+        assertThat( type.getMethod( "echo", String.class ).invoke( service, "a" ), equalTo( ">a" ) );
+        assertThat( type.getMethod( "sum", long.class, long.class ).invoke( null, 1L, 2L ), equalTo( 3L ) );
+        assertThat( type.getMethod( "recovers" ).invoke( service ), equalTo( -1 ) );
+        assertThat( type.getMethod( "notMeasured" ).invoke( service ), equalTo( 1 ) );
+        try
+        {
+            type.getMethod( "fails" ).invoke( service );
+            fail( "exception expected" );
+        }
+        catch ( InvocationTargetException e )
+        {
+            assertThat( e.getCause(), instanceOf( IOException.class ) );
+        }
+
+        assertThat( registry.timer( "MeasuredService.echo.timer" ).getCount(), equalTo( 1L ) );
+        assertThat( registry.timer( "MeasuredService.sum.timer" ).getCount(), equalTo( 1L ) );
+        assertThat( registry.timer( "MeasuredService.recovers.timer" ).getCount(), equalTo( 1L ) );
+        assertThat( registry.meter( "MeasuredService.recovers.exception" ).getCount(), equalTo( 0L ) );
+        assertThat( registry.timer( "MeasuredService.fails.timer" ).getCount(), equalTo( 1L ) );
+        assertThat( registry.meter( "MeasuredService.fails.exception.IOException" ).getCount(), equalTo( 1L ) );
+        assertThat( registry.timer( "MeasuredService.notMeasured.timer" ).getCount(), equalTo( 0L ) );
+
+        // asynchronous results are measured until they complete
+        CompletableFuture<String> stage = new CompletableFuture<>();
+        assertThat( type.getMethod( "later", CompletableFuture.class ).invoke( service, stage ), sameInstance( stage ) );
+        assertThat( registry.timer( "MeasuredService.later.timer" ).getCount(), equalTo( 0L ) );
+        stage.completeExceptionally( new IOException( "late" ) );
+        assertThat( registry.timer( "MeasuredService.later.timer" ).getCount(), equalTo( 1L ) );
+        assertThat( registry.meter( "MeasuredService.later.exception.IOException" ).getCount(), equalTo( 1L ) );
+    }
+
+    private static String internalName( String className )
+    {
+        return className.replace( '.', '/' );
+    }
+
+    private static byte[] bytes( String className )
+            throws IOException
+    {
+        try (InputStream in = MeasureTransformerTest.class.getClassLoader()
+                                                          .getResourceAsStream( internalName( className ) + ".class" ))
+        {
+            return toByteArray( in );
+        }
+    }
+
+    private static final class WovenLoader
+            extends ClassLoader
+    {
+        private final byte[] woven;
+
+        private WovenLoader( ClassLoader parent, byte[] woven )
+        {
+            super( parent );
+            this.woven = woven;
+        }
+
+        @Override
+        protected Class<?> loadClass( String name, boolean resolve )
+                throws ClassNotFoundException
+        {
+            if ( FIXTURE.equals( name ) )
+            {
+                synchronized ( getClassLoadingLock( name ) )
+                {
+                    Class<?> c = findLoadedClass( name );
+                    return c != null ? c : defineClass( name, woven, 0, woven.length );
+                }
+            }
+            return super.loadClass( name, resolve );
+        }
+    }
+}
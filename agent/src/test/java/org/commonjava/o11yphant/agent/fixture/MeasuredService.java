@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.agent.fixture;
+
+import org.commonjava.o11yphant.metrics.annotation.Measure;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+public class MeasuredService
+{
+    private static final String PREFIX = ">";
+
+    @Measure
+    public String echo( String value )
+    {
+        return PREFIX + value;
+    }
+
+    @Measure
+    public static long sum( long a, long b )
+    {
+        return a + b;
+    }
+
+    @Measure
+    public int recovers()
+    {
+        try
+        {
+            throw new IllegalStateException();
+        }
+        catch ( IllegalStateException e )
+        {
+            return -1;
+        }
+    }
+
+    @Measure
+    public void fails()
+            throws IOException
+    {
+        throw new IOException( "expected" );
+    }
+
+    @Measure
+    public CompletableFuture<String> later( CompletableFuture<String> stage )
+    {
+        return stage;
+    }
+
+    public int notMeasured()
+    {
+        return 1;
+    }
+}
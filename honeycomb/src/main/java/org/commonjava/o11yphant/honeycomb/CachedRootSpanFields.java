@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb;
+
+import io.honeycomb.beeline.tracing.Span;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the registered {@link RootSpanFields} and applies them to root spans without calling every provider for every
+ * span. Each provider is refreshed according to its {@link RootSpanFields#getRefreshIntervalMillis()}: in the
+ * background on its own schedule, once at registration, or (the default) on every span. Refreshed values are kept as
+ * immutable key/value arrays, so applying them to a span is a plain array walk.
+ */
+public class CachedRootSpanFields
+{
+    private static final Fields EMPTY = new Fields( new String[0], new Object[0] );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService scheduler;
+
+    public void register( RootSpanFields provider )
+    {
+        Entry entry = new Entry( provider );
+        long interval = provider.getRefreshIntervalMillis();
+        if ( !entry.everySpan )
+        {
+            entry.refresh();
+        }
+
+        if ( interval > 0 )
+        {
+            getScheduler().scheduleWithFixedDelay( entry::refresh, interval, interval, TimeUnit.MILLISECONDS );
+        }
+
+        entries.add( entry );
+    }
+
+    public void apply( Span span )
+    {
+        for ( Entry entry : entries )
+        {
+            if ( entry.everySpan )
+            {
+                Map<String, Object> map = entry.provider.get();
+                if ( map != null )
+                {
+                    map.forEach( span::addField );
+                }
+                continue;
+            }
+
+            Fields fields = entry.fields;
+            String[] keys = fields.keys;
+            Object[] values = fields.values;
+            for ( int i = 0; i < keys.length; i++ )
+            {
+                span.addField( keys[i], values[i] );
+            }
+        }
+    }
+
+    public synchronized void shutdown()
+    {
+        if ( scheduler != null )
+        {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private synchronized ScheduledExecutorService getScheduler()
+    {
+        if ( scheduler == null )
+        {
+            scheduler = Executors.newSingleThreadScheduledExecutor( r -> {
+                Thread t = new Thread( r, "o11yphant-root-span-fields" );
+                t.setDaemon( true );
+                return t;
+            } );
+        }
+        return scheduler;
+    }
+
+    private final class Entry
+    {
+        private final RootSpanFields provider;
+
+        private final boolean everySpan;
+
+        private volatile Fields fields = EMPTY;
+
+        Entry( RootSpanFields provider )
+        {
+            this.provider = provider;
+            this.everySpan = provider.getRefreshIntervalMillis() == RootSpanFields.EVERY_SPAN;
+        }
+
+        void refresh()
+        {
+            try
+            {
+                fields = Fields.of( provider.get() );
+            }
+            catch ( RuntimeException e )
+            {
+                // keep the previous snapshot, and keep the schedule alive
+                logger.warn( "Failed to refresh root span fields from: " + provider.getClass().getName(), e );
+            }
+        }
+    }
+
+    private static final class Fields
+    {
+        private final String[] keys;
+
+        private final Object[] values;
+
+        private Fields( String[] keys, Object[] values )
+        {
+            this.keys = keys;
+            this.values = values;
+        }
+
+        static Fields of( Map<String, Object> map )
+        {
+            if ( map == null || map.isEmpty() )
+            {
+                return EMPTY;
+            }
+
+            String[] keys = new String[map.size()];
+            Object[] values = new Object[keys.length];
+            int i = 0;
+            for ( Map.Entry<String, Object> e : map.entrySet() )
+            {
+                keys[i] = e.getKey();
+                values[i] = e.getValue();
+                i++;
+            }
+            return new Fields( keys, values );
+        }
+    }
+}
@@ -19,6 +19,8 @@ import io.honeycomb.beeline.tracing.sampling.TraceSampler;
 import org.commonjava.cdi.util.weft.ThreadContext;
 import org.commonjava.o11yphant.metrics.TrafficClassifier;
 import org.commonjava.o11yphant.honeycomb.config.HoneycombConfiguration;
+import org.commonjava.o11yphant.honeycomb.config.SampleRateResolver;
+import org.commonjava.o11yphant.honeycomb.sampling.AdaptiveSampler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +37,8 @@ import static org.commonjava.o11yphant.honeycomb.util.InterceptorUtils.SAMPLE_OV
 public class DefaultTraceSampler
                 implements TraceSampler<String>
 {
+    private static final String DEFAULT_KEY = "default";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
@@ -43,6 +47,12 @@ public class DefaultTraceSampler
     @Inject
     private HoneycombConfiguration configuration;
 
+    @Inject
+    private SampleRateResolver sampleRateResolver;
+
+    @Inject
+    private AdaptiveSampler adaptiveSampler;
+
     /**
      * Decides whether to sample the input.
      * If it returns 0, it should not be sampled.
@@ -68,13 +78,13 @@ public class DefaultTraceSampler
         }
 
         Optional<List<String>> functionClassifiers = classifier.getCachedFunctionClassifiers();
-        Integer rate = configuration.getSampleRate( input );
+        int rate = sampleRateResolver.getSampleRate( input, false );
 
         if ( Objects.equals( rate, configuration.getBaseSampleRate() ) && functionClassifiers.isPresent() )
         {
             Optional<Integer> mostAggressive = functionClassifiers.get()
                                                                   .stream()
-                                                                  .map( classifier -> configuration.getSampleRate(
+                                                                  .map( classifier -> sampleRateResolver.getSampleRate(
                                                                                   classifier ) )
                                                                   .filter( theRate -> theRate > 0 )
                                                                   .min( ( one, two ) -> two - one );
@@ -85,6 +95,18 @@ public class DefaultTraceSampler
             }
         }
 
+        if ( configuration.isTailSamplingEnabled() && rate > 0 )
+        {
+            // keep every span for now, TailSamplingTransport applies the rate once the whole trace is known
+            return 1;
+        }
+
+        if ( configuration.isAdaptiveSamplingEnabled() && rate > 0 )
+        {
+            String key = functionClassifiers.filter( c -> !c.isEmpty() ).map( c -> c.get( 0 ) ).orElse( DEFAULT_KEY );
+            return adaptiveSampler.sample( key, input );
+        }
+
         return rate;
     }
 }
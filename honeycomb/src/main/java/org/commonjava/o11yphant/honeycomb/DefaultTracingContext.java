@@ -26,13 +26,18 @@ import javax.inject.Inject;
 import java.util.ArrayDeque;
 import java.util.Deque;
 
+/**
+ * Beeline calls into this context several times per span, so each operation does exactly one thread-local lookup and
+ * logs only at TRACE level behind a guard. The per-thread deque is cleared rather than replaced when a request ends,
+ * so pooled threads reuse its backing array instead of allocating a new one per request.
+ */
 @ApplicationScoped
 public class DefaultTracingContext
         implements TracingContext
 {
-    private static ThreadLocal<Deque<TracerSpan>> SPANS = ThreadLocal.withInitial( ArrayDeque::new );
+    private static final ThreadLocal<ArrayDeque<TracerSpan>> SPANS = ThreadLocal.withInitial( ArrayDeque::new );
 
-    private Logger logger = LoggerFactory.getLogger( getClass() );
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
     private HoneycombConfiguration config;
@@ -41,8 +46,9 @@ public class DefaultTracingContext
     {
         if ( config.isEnabled() )
         {
-            logger.debug( "Clearing spans in current thread: {}", Thread.currentThread().getId() );
-            SPANS.set( new ArrayDeque<>() );
+            ArrayDeque<TracerSpan> spans = SPANS.get();
+            logger.debug( "Clearing {} spans in current thread", spans.size() );
+            spans.clear();
         }
     }
 
@@ -50,16 +56,15 @@ public class DefaultTracingContext
     {
         if ( config.isEnabled() )
         {
-            logger.debug( "Clearing context...SPANs in current thread: {} (thread: {})", SPANS.get().size(),
-                         Thread.currentThread().getId() );
-            TracerSpan tracerSpan = SPANS.get().peekLast();
+            ArrayDeque<TracerSpan> spans = SPANS.get();
+            logger.debug( "Clearing context...SPANs in current thread: {}", spans.size() );
+            TracerSpan tracerSpan = spans.peekLast();
             if ( tracerSpan != null )
             {
                 tracerSpan.close();
             }
 
-            logger.debug( "Clearing spans deque in: {}", Thread.currentThread().getId() );
-            SPANS.remove();
+            spans.clear();
         }
     }
 
@@ -72,50 +77,47 @@ public class DefaultTracingContext
     @Override
     public int size()
     {
-        logger.debug( "SPANs in current thread: {} (thread: {})", SPANS.get().size(), Thread.currentThread().getId() );
         return SPANS.get().size();
     }
 
     @Override
     public TracerSpan peekLast()
     {
-        logger.debug( "SPANs in current thread: {} (thread: {})", SPANS.get().size(), Thread.currentThread().getId()  );
         return SPANS.get().peekLast();
     }
 
     @Override
     public TracerSpan peekFirst()
     {
-        logger.debug( "SPANs in current thread: {} (thread: {})", SPANS.get().size(), Thread.currentThread().getId() );
         return SPANS.get().peekFirst();
     }
 
     @Override
     public boolean isEmpty()
     {
-        Deque<TracerSpan> spans = SPANS.get();
-        logger.debug( "SPANs in current thread: {} (thread: {})", spans.size(), Thread.currentThread().getId() );
-        boolean empty = spans.isEmpty();
-
-        logger.debug( "SPANs.isEmpty() ? {}", empty );
-        return empty;
+        return SPANS.get().isEmpty();
     }
 
     @Override
     public void push( final TracerSpan span )
     {
-        logger.debug( "SPANs in current thread: {} (thread: {})", SPANS.get().size(), Thread.currentThread().getId()  );
-        SPANS.get().push( span );
+        ArrayDeque<TracerSpan> spans = SPANS.get();
+        spans.push( span );
+        if ( logger.isTraceEnabled() )
+        {
+            logger.trace( "Pushed span: {}, SPANs in current thread: {}", span, spans.size() );
+        }
     }
 
     @Override
     public TracerSpan pop()
     {
-        logger.debug( "Pre-POP SPANs in current thread: {} (thread: {})", SPANS.get().size(), Thread.currentThread().getId()  );
-
-        TracerSpan span = SPANS.get().pop();
-
-        logger.debug( "Post-POP SPANs in current thread: {} (thread: {})", SPANS.get().size(), Thread.currentThread().getId()  );
+        ArrayDeque<TracerSpan> spans = SPANS.get();
+        TracerSpan span = spans.pop();
+        if ( logger.isTraceEnabled() )
+        {
+            logger.trace( "Popped span: {}, SPANs in current thread: {}", span, spans.size() );
+        }
         return span;
     }
 }
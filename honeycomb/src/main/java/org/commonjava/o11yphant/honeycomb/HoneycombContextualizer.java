@@ -124,14 +124,25 @@ public class HoneycombContextualizer
         SpanContext spanContext = SPAN_CONTEXT.get();
         if ( spanContext != null )
         {
-            spanContext.getTimers().forEach( ( k, v ) -> {
+            spanContext.getSpanTimers().forEach( ( k, v ) -> {
+                span.addField( COUNT + "." + k, v.getCount() );
+                span.addField( MEAN + "." + k, v.getMean() );
+                span.addField( MAX + "." + k, v.getMax() );
+                span.addField( MIN + "." + k, v.getMin() );
+            } );
+            spanContext.getSpanMeters().forEach( ( k, v ) -> {
+                span.addField( k, v.getCount() );
+            } );
+
+            // put by callers of the deprecated codahale API
+            spanContext.getForeignTimers().forEach( ( k, v ) -> {
                 Snapshot st = v.getSnapshot();
                 span.addField( COUNT + "." + k, v.getCount() );
                 span.addField( MEAN + "." + k, st.getMean() );
                 span.addField( MAX + "." + k, st.getMax() );
                 span.addField( MIN + "." + k, st.getMin() );
             } );
-            spanContext.getMeters().forEach( ( k, v ) -> {
+            spanContext.getForeignMeters().forEach( ( k, v ) -> {
                 span.addField( k, v.getCount() );
             } );
         }
@@ -24,49 +24,69 @@ import io.honeycomb.beeline.tracing.SpanPostProcessor;
 import io.honeycomb.beeline.tracing.Tracer;
 import io.honeycomb.beeline.tracing.Tracing;
 import io.honeycomb.beeline.tracing.propagation.PropagationContext;
-import io.honeycomb.beeline.tracing.sampling.Sampling;
 import io.honeycomb.libhoney.EventPostProcessor;
 import io.honeycomb.libhoney.HoneyClient;
 import io.honeycomb.libhoney.LibHoney;
+import io.honeycomb.libhoney.Options;
+import io.honeycomb.libhoney.transport.Transport;
+import io.honeycomb.libhoney.transport.impl.BatchingHttpTransport;
 import org.commonjava.cdi.util.weft.ThreadContext;
 import org.commonjava.o11yphant.metrics.RequestContextHelper;
 import org.commonjava.o11yphant.honeycomb.config.HoneycombConfiguration;
+import org.commonjava.o11yphant.honeycomb.export.FileSpanExporter;
+import org.commonjava.o11yphant.honeycomb.export.OtlpHttpExporter;
+import org.commonjava.o11yphant.honeycomb.export.SpanExporter;
+import org.commonjava.o11yphant.honeycomb.sampling.TailSamplingTransport;
+import org.commonjava.o11yphant.honeycomb.transport.BatchingEventTransport;
+import org.commonjava.o11yphant.metrics.api.MetricRegistry;
 import org.commonjava.o11yphant.metrics.annotation.MetricWrapper;
 import org.commonjava.o11yphant.metrics.annotation.MetricWrapperNamed;
 import org.commonjava.o11yphant.metrics.annotation.MetricWrapperNamedAfterRun;
+import org.commonjava.o11yphant.metrics.context.ContextPropagation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Paths;
 import java.util.Optional;
 import java.util.function.Supplier;
 
-import static org.commonjava.o11yphant.metrics.MetricsConstants.AVERAGE_TIME_MS;
-import static org.commonjava.o11yphant.metrics.MetricsConstants.CUMULATIVE_COUNT;
-import static org.commonjava.o11yphant.metrics.MetricsConstants.CUMULATIVE_TIMINGS;
-import static org.commonjava.o11yphant.metrics.MetricsConstants.MAX_TIME_MS;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.NANOS_PER_MILLISECOND;
 import static org.commonjava.o11yphant.metrics.RequestContextHelper.REQUEST_PARENT_SPAN;
 import static org.commonjava.o11yphant.metrics.RequestContextHelper.REQUEST_PHASE_START;
 import static org.commonjava.o11yphant.metrics.RequestContextHelper.TRACE_ID;
-import static org.commonjava.o11yphant.metrics.RequestContextHelper.getContext;
 import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
+import static org.commonjava.o11yphant.metrics.util.AsyncUtils.isAsync;
+import static org.commonjava.o11yphant.metrics.util.AsyncUtils.onCompletion;
 
 @ApplicationScoped
 public class HoneycombManager
 {
+    private static final String TRANSPORT_METRICS = "honeycomb.transport";
+
+    private static final String EXPORTER_FILE = "file";
+
+    private static final String EXPORTER_FILE_PREFIX = "spans";
+
+    private static final String EXPORTER_OTLP = "otlp";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private HoneyClient client;
 
+    private TailSamplingTransport tailSampling;
+
     private Beeline beeline;
 
+    private TracingContextPropagator contextPropagator;
+
     @Inject
     private HoneycombContextualizer honeycombContextualizer;
 
@@ -85,12 +105,42 @@ public class HoneycombManager
     @Inject
     private Instance<RootSpanFields> rootSpanFieldsInstance;
 
-    private List<RootSpanFields> rootSpanFieldsList = new ArrayList<>();
+    @Inject
+    private Instance<MetricRegistry> metricRegistryInstance;
+
+    @Inject
+    private Instance<SpanExporter> spanExporterInstance;
+
+    private final CachedRootSpanFields rootSpanFields = new CachedRootSpanFields();
+
+    private final SpanFieldProjection fieldProjection = new SpanFieldProjection();
+
+    private final SpanStatistics spanStatistics = new SpanStatistics();
 
     public HoneycombManager()
     {
     }
 
+    @PreDestroy
+    public void stop()
+    {
+        rootSpanFields.shutdown();
+
+        if ( contextPropagator != null )
+        {
+            // the registry is static; don't keep attaching this tracer to tasks after a redeploy
+            ContextPropagation.unregister( contextPropagator );
+            contextPropagator = null;
+        }
+
+        if ( client != null )
+        {
+            // closes the transport chain: tail-sampled traces are decided and the batching queue is flushed
+            client.close();
+            client = null;
+        }
+    }
+
     @PostConstruct
     public void init()
     {
@@ -100,26 +150,108 @@ public class HoneycombManager
             String dataset = configuration.getDataset();
 
             logger.debug( "Init Honeycomb manager, dataset: {}", dataset );
-            client = new HoneyClient( LibHoney.options().setDataset( dataset ).setWriteKey( writeKey )
-                                              .setEventPostProcessor( eventPostProcessor ).build() ); //, new ConsoleTransport( new ResponseObservable() ) );
+            Options options = LibHoney.options()
+                                      .setDataset( dataset )
+                                      .setWriteKey( writeKey )
+                                      .setEventPostProcessor( eventPostProcessor )
+                                      .build();
+            Transport transport = null;
+            SpanExporter exporter = createSpanExporter();
+            if ( exporter != null || configuration.isBatchingTransportEnabled() )
+            {
+                BatchingEventTransport batching = exporter != null ?
+                                new BatchingEventTransport( configuration, exporter ) :
+                                new BatchingEventTransport( configuration );
+                if ( metricRegistryInstance != null && !metricRegistryInstance.isUnsatisfied() )
+                {
+                    metricRegistryInstance.get().register( TRANSPORT_METRICS, batching );
+                }
+                transport = batching;
+            }
+
+            if ( configuration.isTailSamplingEnabled() )
+            {
+                logger.debug( "Enable tail sampling, rate: {}, latency threshold: {}ms",
+                              configuration.getTailSamplingRate(),
+                              configuration.getTailSamplingLatencyThresholdMillis() );
+                if ( transport == null )
+                {
+                    transport = BatchingHttpTransport.init( LibHoney.transportOptions().build() );
+                }
+                tailSampling = new TailSamplingTransport( transport, configuration );
+                transport = tailSampling;
+            }
+
+            if ( transport != null )
+            {
+                client = new HoneyClient( options, transport );
+            }
+            else
+            {
+                client = new HoneyClient( options ); //, new ConsoleTransport( new ResponseObservable() ) );
+            }
             LibHoney.setDefault( client );
 
-            SpanPostProcessor postProcessor = Tracing.createSpanProcessor( client, Sampling.alwaysSampler() );
+            SpanPostProcessor postProcessor =
+                            Tracing.createSpanProcessor( client, spanStatistics.flushingSampler() );
             SpanBuilderFactory factory = Tracing.createSpanBuilderFactory( postProcessor, traceSampler );
 
             Tracer tracer = Tracing.createTracer( factory, tracingContext );
             beeline = Tracing.createBeeline( tracer, factory );
+            contextPropagator = new TracingContextPropagator( tracer );
+            ContextPropagation.register( contextPropagator );
 
-            rootSpanFieldsInstance.forEach( instance -> rootSpanFieldsList.add( instance ) );
+            rootSpanFieldsInstance.forEach( rootSpanFields::register );
         }
     }
 
+    private SpanExporter createSpanExporter()
+    {
+        if ( spanExporterInstance != null && !spanExporterInstance.isUnsatisfied() )
+        {
+            return spanExporterInstance.get();
+        }
+
+        String type = configuration.getSpanExporter();
+        logger.debug( "Span exporter: {}", type );
+        if ( EXPORTER_FILE.equalsIgnoreCase( type ) )
+        {
+            try
+            {
+                return new FileSpanExporter( Paths.get( configuration.getExportFileDirectory() ), EXPORTER_FILE_PREFIX,
+                                             configuration.getExportFileMaxBytes(),
+                                             configuration.getExportFileMaxFiles() );
+            }
+            catch ( IOException e )
+            {
+                logger.error( "Failed to create span export directory: " + configuration.getExportFileDirectory()
+                                              + ", falling back to Honeycomb", e );
+            }
+        }
+        else if ( EXPORTER_OTLP.equalsIgnoreCase( type ) )
+        {
+            return new OtlpHttpExporter( URI.create( configuration.getOtlpEndpoint() ), null,
+                                         configuration.isTransportGzipEnabled(),
+                                         configuration.getTransportRequestTimeoutMillis() );
+        }
+
+        return null;
+    }
+
     /**
      * Register new {@link RootSpanFields} instances in case CDI is not available in client library.
      */
     public void registerRootSpanFields( RootSpanFields rootSpanFields )
     {
-        rootSpanFieldsList.add( rootSpanFields );
+        this.rootSpanFields.register( rootSpanFields );
+    }
+
+    /**
+     * @return the tail-sampling transport, or null if tail sampling is not enabled
+     */
+    public TailSamplingTransport getTailSampling()
+    {
+        return tailSampling;
     }
 
     public HoneyClient getClient()
@@ -169,6 +301,11 @@ public class HoneycombManager
             }
 
             span = beeline.getTracer().startTrace( span );
+            if ( parentContext != null && tailSampling != null )
+            {
+                // continues a remote trace, so it has a parent but still closes our part of the trace
+                tailSampling.markRoot( span.getSpanId() );
+            }
 
             logger.debug( "Started root span: {} (ID: {}, trace ID: {} and parent: {}, thread: {})", span,
                           span.getSpanId(), span.getTraceId(), span.getParentSpanId(),
@@ -208,6 +345,39 @@ public class HoneycombManager
         return null;
     }
 
+    /**
+     * Remove the span from the current thread's tracing context without closing it, so it can be closed later from
+     * another thread. Returns the span to close.
+     */
+    public Span detachSpan( Span span )
+    {
+        if ( beeline == null || span == null || span.isNoop() )
+        {
+            return span;
+        }
+        Span detached = beeline.getTracer().popSpan( span );
+        return detached.isNoop() ? span : detached;
+    }
+
+    /**
+     * Close a span opened around an intercepted call. If the call returned a
+     * {@link java.util.concurrent.CompletionStage}, the span is detached from this thread and closed when the stage
+     * completes, so it covers the whole asynchronous operation.
+     */
+    public void closeSpan( Span span, Object result )
+    {
+        addFields( span );
+        if ( isAsync( result ) )
+        {
+            Span detached = detachSpan( span );
+            onCompletion( result, error -> detached.close() );
+        }
+        else
+        {
+            span.close();
+        }
+    }
+
     public void addFields( Span span )
     {
         if ( beeline != null )
@@ -215,25 +385,7 @@ public class HoneycombManager
             ThreadContext ctx = ThreadContext.getContext( false );
             if ( ctx != null )
             {
-                configuration.getFieldSet().forEach( field -> {
-                    Object value = getContext( field );
-                    if ( value != null )
-                    {
-                        span.addField( field, value );
-                    }
-                } );
-
-                Map<String, Double> cumulativeTimings = (Map<String, Double>) ctx.get( CUMULATIVE_TIMINGS );
-                if ( cumulativeTimings != null )
-                {
-                    cumulativeTimings.forEach( ( k, v ) -> span.addField( CUMULATIVE_TIMINGS + "." + k, v ) );
-                }
-
-                Map<String, Integer> cumulativeCounts = (Map<String, Integer>) ctx.get( CUMULATIVE_COUNT );
-                if ( cumulativeCounts != null )
-                {
-                    cumulativeCounts.forEach( ( k, v ) -> span.addField( CUMULATIVE_COUNT + "." + k, v ) );
-                }
+                fieldProjection.project( configuration.getFieldSet(), ctx, span );
             }
 
             addRootSpanFields( span ); // add custom root span fields via RootSpanFields
@@ -242,13 +394,7 @@ public class HoneycombManager
 
     private void addRootSpanFields( Span span )
     {
-        rootSpanFieldsList.forEach( rootSpanFields -> {
-            Map<String, Object> fields = rootSpanFields.get();
-            if ( fields != null )
-            {
-                fields.forEach( ( k, v ) -> span.addField( k, v ) );
-            }
-        } );
+        rootSpanFields.apply( span );
     }
 
     public void endTrace()
@@ -269,36 +415,64 @@ public class HoneycombManager
         return null;
     }
 
-    public Optional<Timer> getSpanTimer( String name )
+    public Optional<SpanTimer> getSpanContextTimer( String name )
     {
         SpanContext spanContext = (SpanContext) honeycombContextualizer.extractCurrentContext();
         if ( spanContext != null )
         {
-            Timer timer = spanContext.getTimer( name );
-            if ( timer == null )
-            {
-                timer = new Timer();
-                spanContext.putTimer( name, timer );
-            }
-            return Optional.of( timer );
+            return Optional.of( spanContext.getOrCreateTimer( name ) );
         }
         return Optional.empty();
     }
 
-    public Optional<Timer.Context> startSpanTimer( String name )
+    public Optional<SpanTimer.Context> startSpanContextTimer( String name )
+    {
+        return getSpanContextTimer( name ).map( SpanTimer::time );
+    }
+
+    public Optional<SpanMeter> getSpanContextMeter( String name )
     {
         SpanContext spanContext = (SpanContext) honeycombContextualizer.extractCurrentContext();
         if ( spanContext != null )
         {
-            Timer timer = getSpanTimer( name ).get();
-            if ( timer != null )
+            return Optional.of( spanContext.getOrCreateMeter( name ) );
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @deprecated use {@link #getSpanContextTimer(String)}; the returned timer is a view that also records into it
+     */
+    @Deprecated
+    public Optional<Timer> getSpanTimer( String name )
+    {
+        SpanContext spanContext = (SpanContext) honeycombContextualizer.extractCurrentContext();
+        if ( spanContext != null )
+        {
+            Timer timer = spanContext.getTimer( name );
+            if ( timer == null )
             {
-                return Optional.of( timer.time() );
+                spanContext.getOrCreateTimer( name );
+                timer = spanContext.getTimer( name );
             }
+            return Optional.of( timer );
         }
         return Optional.empty();
     }
 
+    /**
+     * @deprecated use {@link #startSpanContextTimer(String)}
+     */
+    @Deprecated
+    public Optional<Timer.Context> startSpanTimer( String name )
+    {
+        return getSpanTimer( name ).map( Timer::time );
+    }
+
+    /**
+     * @deprecated use {@link #getSpanContextMeter(String)}; the returned meter is a view that also records into it
+     */
+    @Deprecated
     public Optional<Meter> getSpanMeter( String name )
     {
         SpanContext spanContext = (SpanContext) honeycombContextualizer.extractCurrentContext();
@@ -307,8 +481,8 @@ public class HoneycombManager
             Meter meter = spanContext.getMeter( name );
             if ( meter == null )
             {
-                meter = new Meter();
-                spanContext.putMeter( name, meter );
+                spanContext.getOrCreateMeter( name );
+                meter = spanContext.getMeter( name );
             }
             return Optional.of( meter );
         }
@@ -325,40 +499,27 @@ public class HoneycombManager
     }
 
     /**
-     * Add cumulative fields to specified span, i.e., cumulative-timings/count/avg/max.
+     * Add cumulative fields to specified span, i.e., cumulative-timings/count/avg/max. The values are accumulated in
+     * {@link SpanStatistics} and written to the span when it closes.
      */
     public void addCumulativeField( Span span, String name, long elapse )
     {
-        final Map<String, Object> fields = span.getFields();
-
-        // cumulative timing
-        String cumulativeTimingName = name( name, CUMULATIVE_TIMINGS );
-        Long cumulativeMs = (Long) fields.getOrDefault( cumulativeTimingName, 0L );
-        cumulativeMs += elapse;
-        span.addField( cumulativeTimingName, cumulativeMs );
-
-        // cumulative count
-        String cumulativeCountName = name( name, CUMULATIVE_COUNT );
-        Integer cumulativeCount = (Integer) fields.getOrDefault( cumulativeCountName, 0 );
-        cumulativeCount += 1;
-        span.addField( cumulativeCountName, cumulativeCount );
-
-        // max
-        String maxTimingName = name( name, MAX_TIME_MS );
-        Long max = (Long) fields.getOrDefault( maxTimingName, 0L );
-        if ( elapse > max )
-        {
-            span.addField( maxTimingName, elapse );
-        }
-
-        // average
-        String averageName = name( name, AVERAGE_TIME_MS );
-        span.addField( averageName, ( cumulativeMs / cumulativeCount ) );
+        addCumulativeNanos( span, name, elapse * (long) NANOS_PER_MILLISECOND );
+    }
 
-        logger.trace( "addCumulativeField, span: {}, name: {}, elapse: {}, cumulative-ms: {}, count: {}", span, name,
-                      elapse, cumulativeMs, cumulativeCount );
+    /**
+     * Same as {@link #addCumulativeField(Span, String, long)}, with the elapsed time in nanoseconds.
+     */
+    public void addCumulativeNanos( Span span, String name, long elapseNanos )
+    {
+        logger.trace( "addCumulativeNanos, span: {}, name: {}, elapse: {}", span, name, elapseNanos );
+        spanStatistics.record( span, name, elapseNanos );
     }
 
+    /**
+     * Mark the start of a phase, as a {@link System#currentTimeMillis()} reading stored in the
+     * <code>&lt;name&gt;.start</code> span field until {@link #addEndField(Span, String, long)} is called.
+     */
     public void addStartField( Span span, String name, long begin )
     {
         String startFieldName = name( name, REQUEST_PHASE_START );
@@ -381,6 +542,25 @@ public class HoneycombManager
         span.addField( startFieldName, null ); // clear start field
     }
 
+    /**
+     * Same as {@link #addStartField(Span, String, long)}, with {@link System#nanoTime()} readings. The start is kept
+     * by the span statistics instead of a span field; end the phase with {@link #addEndNanos(Span, String, long)}.
+     */
+    public void addStartNanos( Span span, String name, long begin )
+    {
+        logger.trace( "addStartNanos, span: {}, name: {}, begin: {}", span, name, begin );
+        spanStatistics.start( span, name, begin );
+    }
+
+    public void addEndNanos( Span span, String name, long end )
+    {
+        logger.trace( "addEndNanos, span: {}, name: {}, end: {}", span, name, end );
+        if ( !spanStatistics.end( span, name, end ) )
+        {
+            logger.warn( "Failed to get START field, span: {}, name: {}", span, name );
+        }
+    }
+
 
     /**
      * Wrap method with standard {@link MetricWrapper}. The HoneycombWrapperInterceptor will pick it up
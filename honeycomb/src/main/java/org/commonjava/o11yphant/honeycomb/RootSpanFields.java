@@ -24,4 +24,27 @@ import java.util.function.Supplier;
  */
 public interface RootSpanFields extends Supplier<Map<String,Object>>
 {
+    /**
+     * Call {@link #get()} for every root span.
+     */
+    long EVERY_SPAN = 0;
+
+    /**
+     * Call {@link #get()} once and reuse the result for all root spans.
+     */
+    long ONCE = -1;
+
+    /**
+     * Refresh interval used by the provided implementations that read live pool, JVM or metric state.
+     */
+    long DEFAULT_REFRESH_MILLIS = 5000;
+
+    /**
+     * How often {@link #get()} is called to refresh the fields attached to root spans, in milliseconds. Positive values
+     * refresh in the background and every span gets the latest snapshot; see {@link CachedRootSpanFields}.
+     */
+    default long getRefreshIntervalMillis()
+    {
+        return EVERY_SPAN;
+    }
 }
@@ -21,9 +21,21 @@ import io.honeycomb.beeline.tracing.Span;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static java.util.Collections.unmodifiableMap;
 
+/**
+ * Parent-thread span context handed to child threads by {@link HoneycombContextualizer}. The timers and meters are
+ * shared by all threads forked from the same parent, so they are kept in concurrent maps and created atomically.
+ * <p>
+ * The deprecated codahale-typed accessors are kept for existing callers. The codahale {@link Timer}s and
+ * {@link Meter}s they return for this context's own timers and meters are views that also record into them; ones put
+ * by callers are kept as they are and reported alongside.
+ */
 public class SpanContext
 {
     private final String traceId;
@@ -32,9 +44,17 @@ public class SpanContext
 
     private final String spanId;
 
-    private Map<String, Timer> timerMap = new HashMap<>();
+    private final Map<String, SpanTimer> timerMap = new ConcurrentHashMap<>();
+
+    private final Map<String, SpanMeter> meterMap = new ConcurrentHashMap<>();
+
+    private final Map<String, Timer> codahaleTimers = new ConcurrentHashMap<>();
+
+    private final Map<String, Meter> codahaleMeters = new ConcurrentHashMap<>();
 
-    private Map<String, Meter> meterMap = new HashMap<>();
+    private final Map<String, TimerView> timerViews = new ConcurrentHashMap<>();
+
+    private final Map<String, MeterView> meterViews = new ConcurrentHashMap<>();
 
     public SpanContext( final String traceId, final String spanId, final String parentSpanId )
     {
@@ -72,33 +92,237 @@ public class SpanContext
                         + parentSpanId + '\'' + '}';
     }
 
-    public void putTimer( String timerName, Timer timer )
+    public void putTimer( String timerName, SpanTimer timer )
     {
+        timerViews.remove( timerName );
         timerMap.put( timerName, timer );
     }
 
-    public Timer getTimer( String timerName )
+    public SpanTimer getSpanTimer( String timerName )
     {
         return timerMap.get( timerName );
     }
 
-    public Meter getMeter( String meterName )
+    public SpanTimer getOrCreateTimer( String timerName )
+    {
+        SpanTimer timer = timerMap.get( timerName );
+        return timer != null ? timer : timerMap.computeIfAbsent( timerName, k -> new SpanTimer() );
+    }
+
+    public SpanMeter getSpanMeter( String meterName )
     {
         return meterMap.get( meterName );
     }
 
-    public void putMeter( String meterName, Meter meter )
+    public SpanMeter getOrCreateMeter( String meterName )
     {
+        SpanMeter meter = meterMap.get( meterName );
+        return meter != null ? meter : meterMap.computeIfAbsent( meterName, k -> new SpanMeter() );
+    }
+
+    public void putMeter( String meterName, SpanMeter meter )
+    {
+        meterViews.remove( meterName );
         meterMap.put( meterName, meter );
     }
 
-    public Map<String, Timer> getTimers()
+    public Map<String, SpanTimer> getSpanTimers()
     {
         return unmodifiableMap( timerMap );
     }
 
-    public Map<String, Meter> getMeters()
+    public Map<String, SpanMeter> getSpanMeters()
     {
         return unmodifiableMap( meterMap );
     }
+
+    /**
+     * @deprecated use {@link #putTimer(String, SpanTimer)}
+     */
+    @Deprecated
+    public void putTimer( String timerName, Timer timer )
+    {
+        if ( timer instanceof TimerView )
+        {
+            putTimer( timerName, ( (TimerView) timer ).timer );
+        }
+        else
+        {
+            codahaleTimers.put( timerName, timer );
+        }
+    }
+
+    /**
+     * @deprecated use {@link #getSpanTimer(String)} or {@link #getOrCreateTimer(String)}
+     */
+    @Deprecated
+    public Timer getTimer( String timerName )
+    {
+        Timer timer = codahaleTimers.get( timerName );
+        if ( timer != null )
+        {
+            return timer;
+        }
+
+        SpanTimer spanTimer = timerMap.get( timerName );
+        return spanTimer == null ? null : timerViews.computeIfAbsent( timerName, k -> new TimerView( spanTimer ) );
+    }
+
+    /**
+     * @deprecated use {@link #getSpanMeter(String)} or {@link #getOrCreateMeter(String)}
+     */
+    @Deprecated
+    public Meter getMeter( String meterName )
+    {
+        Meter meter = codahaleMeters.get( meterName );
+        if ( meter != null )
+        {
+            return meter;
+        }
+
+        SpanMeter spanMeter = meterMap.get( meterName );
+        return spanMeter == null ? null : meterViews.computeIfAbsent( meterName, k -> new MeterView( spanMeter ) );
+    }
+
+    /**
+     * @deprecated use {@link #putMeter(String, SpanMeter)}
+     */
+    @Deprecated
+    public void putMeter( String meterName, Meter meter )
+    {
+        if ( meter instanceof MeterView )
+        {
+            putMeter( meterName, ( (MeterView) meter ).meter );
+        }
+        else
+        {
+            codahaleMeters.put( meterName, meter );
+        }
+    }
+
+    /**
+     * @deprecated use {@link #getSpanTimers()}
+     */
+    @Deprecated
+    public Map<String, Timer> getTimers()
+    {
+        Map<String, Timer> timers = new HashMap<>( codahaleTimers );
+        timerMap.keySet().forEach( name -> timers.put( name, getTimer( name ) ) );
+        return unmodifiableMap( timers );
+    }
+
+    /**
+     * @deprecated use {@link #getSpanMeters()}
+     */
+    @Deprecated
+    public Map<String, Meter> getMeters()
+    {
+        Map<String, Meter> meters = new HashMap<>( codahaleMeters );
+        meterMap.keySet().forEach( name -> meters.put( name, getMeter( name ) ) );
+        return unmodifiableMap( meters );
+    }
+
+    /**
+     * Codahale timers put through {@link #putTimer(String, Timer)} under a name this context has no timer of its own
+     * for.
+     */
+    Map<String, Timer> getForeignTimers()
+    {
+        Map<String, Timer> timers = new HashMap<>( codahaleTimers );
+        timers.keySet().removeAll( timerMap.keySet() );
+        return timers;
+    }
+
+    /**
+     * Codahale meters put through {@link #putMeter(String, Meter)} under a name this context has no meter of its own
+     * for.
+     */
+    Map<String, Meter> getForeignMeters()
+    {
+        Map<String, Meter> meters = new HashMap<>( codahaleMeters );
+        meters.keySet().removeAll( meterMap.keySet() );
+        return meters;
+    }
+
+    /**
+     * Codahale view of a {@link SpanTimer}: every update also lands in the span timer, and the count is read from it.
+     */
+    private static final class TimerView
+            extends Timer
+    {
+        private final SpanTimer timer;
+
+        private TimerView( SpanTimer timer )
+        {
+            this.timer = timer;
+        }
+
+        @Override
+        public void update( long duration, TimeUnit unit )
+        {
+            timer.update( duration, unit );
+            super.update( duration, unit );
+        }
+
+        @Override
+        public <T> T time( Callable<T> event )
+                throws Exception
+        {
+            try (Context ignored = time())
+            {
+                return event.call();
+            }
+        }
+
+        @Override
+        public <T> T timeSupplier( Supplier<T> event )
+        {
+            try (Context ignored = time())
+            {
+                return event.get();
+            }
+        }
+
+        @Override
+        public void time( Runnable event )
+        {
+            try (Context ignored = time())
+            {
+                event.run();
+            }
+        }
+
+        @Override
+        public long getCount()
+        {
+            return timer.getCount();
+        }
+    }
+
+    /**
+     * Codahale view of a {@link SpanMeter}: every mark also lands in the span meter, and the count is read from it.
+     */
+    private static final class MeterView
+            extends Meter
+    {
+        private final SpanMeter meter;
+
+        private MeterView( SpanMeter meter )
+        {
+            this.meter = meter;
+        }
+
+        @Override
+        public void mark( long n )
+        {
+            meter.mark( n );
+            super.mark( n );
+        }
+
+        @Override
+        public long getCount()
+        {
+            return meter.getCount();
+        }
+    }
 }
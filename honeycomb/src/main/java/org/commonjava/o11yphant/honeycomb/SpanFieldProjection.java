@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb;
+
+import io.honeycomb.beeline.tracing.Span;
+import org.commonjava.cdi.util.weft.ThreadContext;
+import org.commonjava.o11yphant.metrics.RequestContext;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.commonjava.o11yphant.metrics.MetricsConstants.CUMULATIVE_COUNT;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.CUMULATIVE_TIMINGS;
+
+/**
+ * Precompiled plan for copying request-context fields and cumulative metrics onto a span. The configured field set is
+ * resolved once into field names and {@link RequestContext.Slot}s (rebuilt only when the configuration hands out a set
+ * with different contents), and the {@code cumulative-*.<name>} keys are built once per metric name and reused for every span.
+ */
+final class SpanFieldProjection
+{
+    private static final int MAX_CACHED_KEYS = 4096;
+
+    private static final String TIMINGS_PREFIX = CUMULATIVE_TIMINGS + ".";
+
+    private static final String COUNT_PREFIX = CUMULATIVE_COUNT + ".";
+
+    private final Map<String, String> timingKeys = new ConcurrentHashMap<>();
+
+    private final Map<String, String> countKeys = new ConcurrentHashMap<>();
+
+    private volatile Plan plan;
+
+    void project( Set<String> fieldSet, ThreadContext ctx, Span span )
+    {
+        Plan p = plan;
+        if ( p == null || !p.matches( fieldSet ) )
+        {
+            p = new Plan( fieldSet );
+            plan = p;
+        }
+
+        RequestContext requestContext = RequestContext.getRequestContext( ctx, false );
+        String[] fields = p.fields;
+        RequestContext.Slot[] slots = p.slots;
+        for ( int i = 0; i < fields.length; i++ )
+        {
+            Object value = null;
+            if ( slots[i] != null && requestContext != null )
+            {
+                value = requestContext.get( slots[i] );
+            }
+            if ( value == null )
+            {
+                // also covers well-known keys written straight into the ThreadContext
+                value = ctx.get( fields[i] );
+            }
+
+            if ( value != null )
+            {
+                span.addField( fields[i], value );
+            }
+        }
+
+        Map<String, ?> cumulativeTimings = cumulative( ctx, CUMULATIVE_TIMINGS );
+        if ( cumulativeTimings != null )
+        {
+            cumulativeTimings.forEach( ( k, v ) -> span.addField( key( timingKeys, TIMINGS_PREFIX, k ), v ) );
+        }
+
+        Map<String, ?> cumulativeCounts = cumulative( ctx, CUMULATIVE_COUNT );
+        if ( cumulativeCounts != null )
+        {
+            cumulativeCounts.forEach( ( k, v ) -> span.addField( key( countKeys, COUNT_PREFIX, k ), v ) );
+        }
+    }
+
+    /**
+     * The cumulative maps are written by {@code MetricsManager.accumulate()}, always keyed by metric name.
+     */
+    @SuppressWarnings( "unchecked" )
+    private static Map<String, ?> cumulative( ThreadContext ctx, String key )
+    {
+        Object value = ctx.get( key );
+        return value instanceof Map ? (Map<String, ?>) value : null;
+    }
+
+    private static String key( Map<String, String> cache, String prefix, String name )
+    {
+        String key = cache.get( name );
+        if ( key == null )
+        {
+            key = prefix + name;
+            if ( cache.size() < MAX_CACHED_KEYS )
+            {
+                cache.put( name, key );
+            }
+        }
+        return key;
+    }
+
+    private static final class Plan
+    {
+        private final Set<String> fieldSet;
+
+        /**
+         * Last set seen with the planned contents, so the same instance is recognized without comparing elements.
+         */
+        private volatile Set<String> source;
+
+        private final String[] fields;
+
+        private final RequestContext.Slot[] slots;
+
+        Plan( Set<String> source )
+        {
+            this.fieldSet = new HashSet<>( source );
+            this.source = source;
+            this.fields = fieldSet.toArray( new String[0] );
+            this.slots = new RequestContext.Slot[fields.length];
+            for ( int i = 0; i < fields.length; i++ )
+            {
+                slots[i] = RequestContext.slotFor( fields[i] );
+            }
+        }
+
+        boolean matches( Set<String> set )
+        {
+            if ( set == source )
+            {
+                return true;
+            }
+            if ( fieldSet.equals( set ) )
+            {
+                source = set;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lightweight, concurrent event counter kept in a {@link SpanContext}.
+ */
+public final class SpanMeter
+{
+    private final LongAdder count = new LongAdder();
+
+    public void mark()
+    {
+        count.increment();
+    }
+
+    public void mark( long n )
+    {
+        count.add( n );
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+}
@@ -0,0 +1,361 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb;
+
+import io.honeycomb.beeline.tracing.Span;
+import io.honeycomb.beeline.tracing.sampling.TraceSampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.commonjava.o11yphant.metrics.MetricsConstants.AVERAGE_TIME_MS;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.CUMULATIVE_COUNT;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.CUMULATIVE_TIMINGS;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.MAX_TIME_MS;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.NANOS_PER_MILLISECOND;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.P50_TIME_MS;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.P90_TIME_MS;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.P99_TIME_MS;
+import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
+
+/**
+ * Per-span primitive accumulators for the cumulative timing fields (count, total, max, average per metric name).
+ * Measured calls only update primitive counters; the span fields are written once, when the span closes, via the
+ * {@link #flushingSampler()} hook that {@link HoneycombManager} installs on the span processor.
+ * <p>
+ * Timings are kept in nanoseconds (callers should use {@link System#nanoTime()}) and reported as fractional
+ * milliseconds, so sub-millisecond calls are not rounded away. Each name also keeps a small log2 histogram, from which
+ * approximate p50/p90/p99 fields are reported.
+ * <p>
+ * Accumulators are keyed by span id. A span that is never closed would leave its accumulator behind, so the number of
+ * open accumulators is capped: when the cap is reached, the oldest tenth of them (the likeliest leaks) is evicted,
+ * and the statistics of the other spans in flight are kept.
+ */
+public class SpanStatistics
+{
+    static final int MAX_OPEN_SPANS = 100000;
+
+    static final int RECENTLY_CLOSED = 10000;
+
+    static final int EVICTION_BATCH = MAX_OPEN_SPANS / 10;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<String, Accumulator> accumulators = new ConcurrentHashMap<>();
+
+    private final Map<String, Keys> keys = new ConcurrentHashMap<>();
+
+    /**
+     * Recently closed spans. Async completions may still report against them; those late values are dropped instead
+     * of starting an accumulator that would never be flushed. The ids are kept in a ring, so marking a span closed is
+     * a couple of lock-free updates; the oldest id is forgotten when its slot is reused.
+     */
+    private final Map<String, Boolean> closed = new ConcurrentHashMap<>();
+
+    private final AtomicReferenceArray<String> closedRing = new AtomicReferenceArray<>( RECENTLY_CLOSED );
+
+    private final AtomicLong closedCount = new AtomicLong();
+
+    public void record( Span span, String name, long elapseNanos )
+    {
+        Accumulator accumulator = accumulator( span );
+        if ( accumulator != null )
+        {
+            accumulator.record( keys( name ), elapseNanos );
+        }
+    }
+
+    /**
+     * Remember the start time of a phase, to be completed by {@link #end(Span, String, long)} with the same name.
+     */
+    public void start( Span span, String name, long startNanos )
+    {
+        Accumulator accumulator = accumulator( span );
+        if ( accumulator != null )
+        {
+            accumulator.start( keys( name ), startNanos );
+        }
+    }
+
+    /**
+     * Complete a phase started by {@link #start(Span, String, long)} and record its duration.
+     *
+     * @return false if no start time was recorded for the name
+     */
+    public boolean end( Span span, String name, long endNanos )
+    {
+        Accumulator accumulator = accumulator( span );
+        return accumulator != null && accumulator.end( keys( name ), endNanos );
+    }
+
+    private Accumulator accumulator( Span span )
+    {
+        if ( span == null || span.isNoop() )
+        {
+            return null;
+        }
+
+        Accumulator accumulator = accumulators.get( span.getSpanId() );
+        if ( accumulator == null )
+        {
+            if ( closed.containsKey( span.getSpanId() ) )
+            {
+                logger.trace( "Span {} is already closed, dropping its statistics", span.getSpanId() );
+                return null;
+            }
+            if ( accumulators.size() >= MAX_OPEN_SPANS )
+            {
+                evictOldest();
+            }
+            accumulator = accumulators.computeIfAbsent( span.getSpanId(), k -> new Accumulator() );
+        }
+        return accumulator;
+    }
+
+    private synchronized void evictOldest()
+    {
+        // another thread may have evicted while we waited
+        if ( accumulators.size() < MAX_OPEN_SPANS )
+        {
+            return;
+        }
+
+        List<Map.Entry<String, Accumulator>> entries = new ArrayList<>( accumulators.entrySet() );
+        entries.sort( Comparator.comparingLong( e -> e.getValue().created ) );
+        int evicted = 0;
+        for ( Map.Entry<String, Accumulator> e : entries.subList( 0, Math.min( EVICTION_BATCH, entries.size() ) ) )
+        {
+            if ( accumulators.remove( e.getKey(), e.getValue() ) )
+            {
+                evicted++;
+            }
+        }
+        logger.warn( "Too many open span accumulators ({}), evicted the {} oldest. Are spans being closed?",
+                     entries.size(), evicted );
+    }
+
+    /**
+     * Write the accumulated statistics into the span's fields and forget them.
+     */
+    public void flush( Span span )
+    {
+        Accumulator accumulator = accumulators.remove( span.getSpanId() );
+        if ( accumulator != null )
+        {
+            accumulator.flush( span );
+        }
+        markClosed( span.getSpanId() );
+    }
+
+    private void markClosed( String spanId )
+    {
+        if ( closed.putIfAbsent( spanId, Boolean.TRUE ) == null )
+        {
+            int slot = (int) ( closedCount.getAndIncrement() % RECENTLY_CLOSED );
+            String forgotten = closedRing.getAndSet( slot, spanId );
+            if ( forgotten != null )
+            {
+                closed.remove( forgotten );
+            }
+        }
+    }
+
+    /**
+     * Span processor hook that flushes the statistics of each closing span, then keeps the span (rate 1). Beeline
+     * calls it right before the span's event is generated.
+     */
+    public TraceSampler<Span> flushingSampler()
+    {
+        return span -> {
+            flush( span );
+            return 1;
+        };
+    }
+
+    private Keys keys( String name )
+    {
+        Keys k = keys.get( name );
+        if ( k == null )
+        {
+            k = keys.computeIfAbsent( name, Keys::new );
+        }
+        return k;
+    }
+
+    /**
+     * Field names derived from a metric name, built once.
+     */
+    private static final class Keys
+    {
+        private final String timings;
+
+        private final String count;
+
+        private final String max;
+
+        private final String average;
+
+        private final String p50;
+
+        private final String p90;
+
+        private final String p99;
+
+        Keys( String name )
+        {
+            this.timings = name( name, CUMULATIVE_TIMINGS );
+            this.count = name( name, CUMULATIVE_COUNT );
+            this.max = name( name, MAX_TIME_MS );
+            this.average = name( name, AVERAGE_TIME_MS );
+            this.p50 = name( name, P50_TIME_MS );
+            this.p90 = name( name, P90_TIME_MS );
+            this.p99 = name( name, P99_TIME_MS );
+        }
+    }
+
+    private static final class Stat
+    {
+        /**
+         * Bucket 0 holds durations under 1us, bucket i (i &gt; 0) durations in [2^(i-1), 2^i) us. The last bucket is
+         * open-ended (about 1 hour and up).
+         */
+        static final int BUCKETS = 33;
+
+        private final int[] histogram = new int[BUCKETS];
+
+        private long count;
+
+        private long total;
+
+        private long max;
+
+        private long start = -1;
+
+        void record( long elapse )
+        {
+            if ( elapse < 0 )
+            {
+                elapse = 0;
+            }
+
+            count++;
+            total += elapse;
+            if ( elapse > max )
+            {
+                max = elapse;
+            }
+            histogram[bucket( elapse )]++;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given quantile, capped by the observed max.
+         */
+        long quantile( double q )
+        {
+            long rank = (long) Math.ceil( q * count );
+            long seen = 0;
+            for ( int i = 0; i < BUCKETS; i++ )
+            {
+                seen += histogram[i];
+                if ( seen >= rank )
+                {
+                    return i == BUCKETS - 1 ? max : Math.min( max, 1000L << i );
+                }
+            }
+            return max;
+        }
+
+        static int bucket( long nanos )
+        {
+            long micros = nanos / 1000;
+            return Math.min( BUCKETS - 1, 64 - Long.numberOfLeadingZeros( micros ) );
+        }
+    }
+
+    private static final class Accumulator
+    {
+        private final long created = System.nanoTime();
+
+        private final Map<Keys, Stat> stats = new HashMap<>();
+
+        synchronized void record( Keys keys, long elapse )
+        {
+            stat( keys ).record( elapse );
+        }
+
+        synchronized void start( Keys keys, long start )
+        {
+            stat( keys ).start = start;
+        }
+
+        synchronized boolean end( Keys keys, long end )
+        {
+            Stat stat = stats.get( keys );
+            if ( stat == null || stat.start < 0 )
+            {
+                return false;
+            }
+
+            stat.record( end - stat.start );
+            stat.start = -1;
+            return true;
+        }
+
+        synchronized void flush( Span span )
+        {
+            stats.forEach( ( keys, stat ) -> {
+                if ( stat.count == 0 )
+                {
+                    return;
+                }
+                span.addField( keys.timings, millis( stat.total ) );
+                span.addField( keys.count, (int) stat.count );
+                span.addField( keys.max, millis( stat.max ) );
+                span.addField( keys.average, millis( stat.total / stat.count ) );
+                span.addField( keys.p50, millis( stat.quantile( 0.5 ) ) );
+                span.addField( keys.p90, millis( stat.quantile( 0.9 ) ) );
+                span.addField( keys.p99, millis( stat.quantile( 0.99 ) ) );
+            } );
+        }
+
+        private Stat stat( Keys keys )
+        {
+            Stat stat = stats.get( keys );
+            if ( stat == null )
+            {
+                stat = new Stat();
+                stats.put( keys, stat );
+            }
+            return stat;
+        }
+
+        /**
+         * Nanoseconds to milliseconds, keeping microsecond precision.
+         */
+        private static double millis( long nanos )
+        {
+            return Math.round( nanos / 1000.0 ) / ( NANOS_PER_MILLISECOND / 1000 );
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lightweight timer kept in a {@link SpanContext}. It only tracks count, sum, min and max (in nanoseconds), using
+ * striped adders/accumulators so threads forked from the same parent context can update it concurrently without
+ * contending on a single word.
+ */
+public final class SpanTimer
+{
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final LongAccumulator min = new LongAccumulator( Math::min, Long.MAX_VALUE );
+
+    private final LongAccumulator max = new LongAccumulator( Math::max, Long.MIN_VALUE );
+
+    public void update( long duration, TimeUnit unit )
+    {
+        update( unit.toNanos( duration ) );
+    }
+
+    public void update( long nanos )
+    {
+        if ( nanos < 0 )
+        {
+            return;
+        }
+        count.increment();
+        sum.add( nanos );
+        min.accumulate( nanos );
+        max.accumulate( nanos );
+    }
+
+    public Context time()
+    {
+        return new Context( this );
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    public long getSum()
+    {
+        return sum.sum();
+    }
+
+    public double getMean()
+    {
+        long c = count.sum();
+        return c == 0 ? 0 : (double) sum.sum() / c;
+    }
+
+    public long getMin()
+    {
+        return count.sum() == 0 ? 0 : min.get();
+    }
+
+    public long getMax()
+    {
+        return count.sum() == 0 ? 0 : max.get();
+    }
+
+    public static final class Context
+            implements AutoCloseable
+    {
+        private final SpanTimer timer;
+
+        private final long start = System.nanoTime();
+
+        private Context( SpanTimer timer )
+        {
+            this.timer = timer;
+        }
+
+        /**
+         * @return the elapsed time in nanoseconds
+         */
+        public long stop()
+        {
+            long elapsed = System.nanoTime() - start;
+            timer.update( elapsed );
+            return elapsed;
+        }
+
+        @Override
+        public void close()
+        {
+            stop();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb;
+
+import io.honeycomb.beeline.tracing.Span;
+import io.honeycomb.beeline.tracing.Tracer;
+import io.honeycomb.beeline.tracing.TracerSpan;
+import org.commonjava.o11yphant.metrics.context.ContextPropagator;
+
+/**
+ * Makes the submitting thread's active span the parent of spans started on the executing thread, so async work shows
+ * up inside the request's trace instead of as a separate root span per worker thread. The parent span is pushed for
+ * the duration of the task and popped (not sent) afterwards; the submitting thread remains responsible for closing it.
+ */
+public class TracingContextPropagator
+                implements ContextPropagator
+{
+    private final Tracer tracer;
+
+    public TracingContextPropagator( Tracer tracer )
+    {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public Object capture()
+    {
+        TracerSpan active = tracer.getActiveSpan();
+        return active.isNoop() ? null : active;
+    }
+
+    @Override
+    public Object attach( Object captured )
+    {
+        if ( captured == null )
+        {
+            return null;
+        }
+
+        Span parent = (Span) captured;
+        TracerSpan active = tracer.getActiveSpan();
+        if ( !active.isNoop() && parent.getSpanId().equals( active.getSpanId() ) )
+        {
+            // running inline on the submitting thread, nothing to do
+            return null;
+        }
+
+        return tracer.pushSpan( parent );
+    }
+
+    @Override
+    public void detach( Object captured, Object previous )
+    {
+        if ( previous != null )
+        {
+            tracer.popSpan( (Span) previous );
+        }
+    }
+}
@@ -61,6 +61,147 @@ public interface HoneycombConfiguration
 
     String getNodeId();
 
+    /**
+     * When enabled, the keep/drop decision for a trace is made when its root span closes, see
+     * {@link org.commonjava.o11yphant.honeycomb.sampling.TailSamplingTransport}.
+     */
+    default boolean isTailSamplingEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * Traces whose root span takes at least this long are always kept by tail sampling.
+     */
+    default long getTailSamplingLatencyThresholdMillis()
+    {
+        return 1000;
+    }
+
+    /**
+     * Rate (1 in N) at which tail sampling keeps traces that are neither slow nor failed.
+     */
+    default int getTailSamplingRate()
+    {
+        Integer base = getBaseSampleRate();
+        return base == null || base < 1 ? 1 : base;
+    }
+
+    /**
+     * Maximum number of traces buffered while waiting for their root span.
+     */
+    default int getTailSamplingMaxTraces()
+    {
+        return 10000;
+    }
+
+    /**
+     * Maximum number of spans buffered per trace; further spans are decided without waiting for the root span.
+     */
+    default int getTailSamplingMaxSpansPerTrace()
+    {
+        return 500;
+    }
+
+    /**
+     * When enabled, rates are computed per classifier to hold the event throughput near
+     * {@link #getAdaptiveSamplingTargetPerSecond()}, see {@link org.commonjava.o11yphant.honeycomb.sampling.AdaptiveSampler}.
+     * Ignored when tail sampling is enabled.
+     */
+    default boolean isAdaptiveSamplingEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * Target number of sampled spans (events) per second, per classifier. Every span is counted, not just roots, so a
+     * classifier whose traces have many spans keeps proportionally fewer traces.
+     */
+    default int getAdaptiveSamplingTargetPerSecond()
+    {
+        return 10;
+    }
+
+    /**
+     * Length of the sliding window (in seconds) over which the observed throughput is averaged.
+     */
+    default int getAdaptiveSamplingWindowSeconds()
+    {
+        return 30;
+    }
+
+    /**
+     * When enabled, events are sent by {@link org.commonjava.o11yphant.honeycomb.transport.BatchingEventTransport}
+     * instead of the libhoney default transport.
+     */
+    default boolean isBatchingTransportEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * Maximum number of events waiting to be sent; events submitted to a full queue are dropped and counted.
+     */
+    default int getTransportQueueCapacity()
+    {
+        return 10000;
+    }
+
+    default int getTransportBatchSize()
+    {
+        return 100;
+    }
+
+    /**
+     * Maximum time an event waits for its batch to fill before the batch is sent anyway.
+     */
+    default long getTransportBatchTimeoutMillis()
+    {
+        return 100;
+    }
+
+    default boolean isTransportGzipEnabled()
+    {
+        return true;
+    }
+
+    /**
+     * Connect and read timeout for each batch request.
+     */
+    default int getTransportRequestTimeoutMillis()
+    {
+        return 5000;
+    }
+
+    /**
+     * Where spans are exported: {@code honeycomb} (default), {@code file} or {@code otlp}. Anything other than
+     * {@code honeycomb} implies the batching transport. See {@link org.commonjava.o11yphant.honeycomb.export.SpanExporter}.
+     */
+    default String getSpanExporter()
+    {
+        return "honeycomb";
+    }
+
+    default String getExportFileDirectory()
+    {
+        return System.getProperty( "java.io.tmpdir" ) + "/o11yphant-spans";
+    }
+
+    default long getExportFileMaxBytes()
+    {
+        return 64L * 1024 * 1024;
+    }
+
+    default int getExportFileMaxFiles()
+    {
+        return 10;
+    }
+
+    default String getOtlpEndpoint()
+    {
+        return "http://localhost:4318/v1/traces";
+    }
+
     default int getSampleRate( Method method )
     {
         Logger logger = LoggerFactory.getLogger( getClass() );
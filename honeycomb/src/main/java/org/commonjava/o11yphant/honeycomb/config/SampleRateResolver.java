@@ -0,0 +1,292 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.config;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled, cached form of {@link HoneycombConfiguration#getSampleRate(String)} and
+ * {@link HoneycombConfiguration#getSampleRate(Method)}, which are called by the interceptors on every wrapped method.
+ * <p>
+ * The span rates are compiled into a trie keyed by dot-separated segments, and every resolved classifier and
+ * {@link Method} is cached, so in steady state a lookup is a single hash lookup. The compiled state is rebuilt (and the
+ * caches dropped) atomically whenever the configuration returns span rates or a base rate that differ from the
+ * compiled ones (by value, so a configuration handing out fresh or wrapped maps doesn't force a rebuild), or when
+ * {@link #reload()} is called. A map that is changed in place is only noticed after {@link #reload()}.
+ * <p>
+ * Results are identical to the default methods on {@link HoneycombConfiguration}: exact match first, then the first
+ * segment that is configured on its own, then the longest configured prefix, then the base rate. If the configuration
+ * overrides either method (which includes CDI proxies of it), that method is called instead of the trie, and only
+ * its results are cached. A missing base rate (or classifier rate) means every span is kept, i.e. a rate of 1.
+ */
+@ApplicationScoped
+public class SampleRateResolver
+{
+    static final int MAX_CACHED = 4096;
+
+    @Inject
+    private HoneycombConfiguration configuration;
+
+    private volatile Compiled compiled;
+
+    public SampleRateResolver()
+    {
+    }
+
+    public SampleRateResolver( HoneycombConfiguration configuration )
+    {
+        this.configuration = configuration;
+    }
+
+    public int getSampleRate( final String classifier )
+    {
+        return getSampleRate( classifier, true );
+    }
+
+    /**
+     * @param cache false for one-off inputs (e.g. trace ids) that would only churn the classifier cache
+     */
+    public int getSampleRate( final String classifier, final boolean cache )
+    {
+        Compiled c = current();
+        Integer rate = c.byClassifier.get( classifier );
+        if ( rate == null )
+        {
+            rate = c.customClassifierRates ? configuration.getSampleRate( classifier ) : c.resolve( classifier );
+            if ( rate == null )
+            {
+                rate = c.baseRate;
+            }
+            if ( cache )
+            {
+                c.cache( c.byClassifier, classifier, rate );
+            }
+        }
+        return rate;
+    }
+
+    public int getSampleRate( final Method method )
+    {
+        Compiled c = current();
+        Integer rate = c.byMethod.get( method );
+        if ( rate == null )
+        {
+            rate = c.customMethodRates ? configuration.getSampleRate( method ) : c.resolve( method );
+            c.cache( c.byMethod, method, rate );
+        }
+        return rate;
+    }
+
+    /**
+     * Drop the compiled state, e.g. after the configuration was changed in place.
+     */
+    public void reload()
+    {
+        compiled = null;
+    }
+
+    private Compiled current()
+    {
+        Map<String, Integer> rates = configuration.getSpanRates();
+        Integer baseRate = configuration.getBaseSampleRate();
+
+        Compiled c = compiled;
+        if ( c == null || !Objects.equals( c.configuredBaseRate, baseRate ) || !c.hasRates( rates ) )
+        {
+            c = new Compiled( rates, baseRate, isOverridden( String.class ), isOverridden( Method.class ) );
+            compiled = c;
+        }
+        return c;
+    }
+
+    private boolean isOverridden( Class<?> parameterType )
+    {
+        try
+        {
+            return configuration.getClass().getMethod( "getSampleRate", parameterType ).getDeclaringClass()
+                            != HoneycombConfiguration.class;
+        }
+        catch ( NoSuchMethodException e )
+        {
+            return true;
+        }
+    }
+
+    private static final class Node
+    {
+        private final Map<String, Node> children = new HashMap<>();
+
+        private Integer rate;
+    }
+
+    private static final class Compiled
+    {
+        private final Map<String, Integer> rates;
+
+        private final Integer configuredBaseRate;
+
+        private final int baseRate;
+
+        /**
+         * Last map seen with the compiled contents, so the same instance is recognized without comparing entries.
+         */
+        private volatile Map<String, Integer> source;
+
+        private final Node root = new Node();
+
+        private final Map<String, Integer> byClassifier = new ConcurrentHashMap<>();
+
+        private final Map<Method, Integer> byMethod = new ConcurrentHashMap<>();
+
+        private final boolean customClassifierRates;
+
+        private final boolean customMethodRates;
+
+        Compiled( Map<String, Integer> rates, Integer baseRate, boolean customClassifierRates,
+                  boolean customMethodRates )
+        {
+            this.rates = rates == null ? null : new HashMap<>( rates );
+            this.source = rates;
+            this.configuredBaseRate = baseRate;
+            this.baseRate = baseRate == null ? 1 : baseRate;
+            this.customClassifierRates = customClassifierRates;
+            this.customMethodRates = customMethodRates;
+
+            if ( rates != null )
+            {
+                rates.forEach( ( key, rate ) -> {
+                    Node node = root;
+                    int start = 0;
+                    int dot;
+                    while ( ( dot = key.indexOf( '.', start ) ) >= 0 )
+                    {
+                        node = node.children.computeIfAbsent( key.substring( start, dot ), k -> new Node() );
+                        start = dot + 1;
+                    }
+                    node = node.children.computeIfAbsent( key.substring( start ), k -> new Node() );
+                    node.rate = rate;
+                } );
+            }
+        }
+
+        boolean hasRates( Map<String, Integer> rates )
+        {
+            if ( rates == source )
+            {
+                return true;
+            }
+            if ( Objects.equals( this.rates, rates ) )
+            {
+                source = rates;
+                return true;
+            }
+            return false;
+        }
+
+        int resolve( String classifier )
+        {
+            Node node = root;
+            Integer longestPrefix = null;
+            Integer firstSegment = null;
+            boolean onPath = true;
+
+            int start = 0;
+            int len = classifier.length();
+            while ( start <= len )
+            {
+                int dot = classifier.indexOf( '.', start );
+                int end = dot < 0 ? len : dot;
+                String segment = classifier.substring( start, end );
+
+                if ( firstSegment == null )
+                {
+                    Node single = root.children.get( segment );
+                    if ( single != null )
+                    {
+                        firstSegment = single.rate;
+                    }
+                }
+
+                if ( onPath )
+                {
+                    node = node.children.get( segment );
+                    if ( node == null )
+                    {
+                        onPath = false;
+                    }
+                    else if ( node.rate != null )
+                    {
+                        longestPrefix = node.rate;
+                        if ( dot < 0 )
+                        {
+                            // exact match wins over everything else
+                            return node.rate;
+                        }
+                    }
+                }
+
+                if ( dot < 0 )
+                {
+                    break;
+                }
+                start = dot + 1;
+            }
+
+            if ( firstSegment != null )
+            {
+                return firstSegment;
+            }
+
+            return longestPrefix != null ? longestPrefix : baseRate;
+        }
+
+        int resolve( Method method )
+        {
+            if ( rates != null && !rates.isEmpty() )
+            {
+                Class<?> cls = method.getDeclaringClass();
+                String[] keys = { method.getName(), cls.getSimpleName() + "." + method.getName(),
+                                cls.getName() + "." + method.getName(), cls.getSimpleName(), cls.getName() };
+
+                for ( String key : keys )
+                {
+                    Integer rate = rates.get( key );
+                    if ( rate != null )
+                    {
+                        return rate;
+                    }
+                }
+            }
+
+            return baseRate;
+        }
+
+        <K> void cache( Map<K, Integer> cache, K key, Integer rate )
+        {
+            if ( cache.size() >= MAX_CACHED )
+            {
+                cache.clear();
+            }
+            cache.put( key, rate );
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+final class ExportUtils
+{
+    private ExportUtils()
+    {
+    }
+
+    static byte[] gzip( byte[] data )
+                    throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream( data.length / 4 + 64 );
+        try (GZIPOutputStream out = new GZIPOutputStream( buf ))
+        {
+            out.write( data );
+        }
+        return buf.toByteArray();
+    }
+
+    /**
+     * POST the body and drain the response so the connection can be kept alive.
+     *
+     * @return the HTTP status
+     */
+    static int post( URI uri, Map<String, String> headers, byte[] body, boolean gzip, int timeoutMillis )
+                    throws IOException
+    {
+        HttpURLConnection conn = (HttpURLConnection) uri.toURL().openConnection();
+        try
+        {
+            conn.setRequestMethod( "POST" );
+            conn.setDoOutput( true );
+            conn.setConnectTimeout( timeoutMillis );
+            conn.setReadTimeout( timeoutMillis );
+            headers.forEach( conn::setRequestProperty );
+
+            if ( gzip )
+            {
+                conn.setRequestProperty( "Content-Encoding", "gzip" );
+                body = gzip( body );
+            }
+
+            conn.setFixedLengthStreamingMode( body.length );
+            try (OutputStream out = conn.getOutputStream())
+            {
+                out.write( body );
+            }
+
+            int status = conn.getResponseCode();
+            try (InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream())
+            {
+                if ( in != null )
+                {
+                    byte[] skip = new byte[1024];
+                    while ( in.read( skip ) >= 0 )
+                    {
+                        // drain
+                    }
+                }
+            }
+            return status;
+        }
+        catch ( IOException e )
+        {
+            conn.disconnect();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.export;
+
+import io.honeycomb.libhoney.eventdata.ResolvedEvent;
+import io.honeycomb.libhoney.transport.batch.impl.HoneycombBatchConsumer.BatchRequestElement;
+import io.honeycomb.libhoney.transport.json.BatchRequestSerializer;
+import io.honeycomb.libhoney.utils.ObjectUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Writes span batches to rotating local files, for air-gapped environments or to measure export cost without a
+ * network. Each batch is one record: a 4-byte big-endian length followed by that many bytes of gzip-compressed JSON,
+ * in the same array format as the Honeycomb batch API ({@code [{"time":..,"samplerate":..,"data":{..}}, ..]}).
+ * <p>
+ * A new file is started when the current one would exceed {@code maxFileBytes}; only the newest {@code maxFiles}
+ * files are kept. File names sort in creation order: {@code <prefix>-<millis>-<seq>.spans}.
+ */
+public class FileSpanExporter
+                implements SpanExporter
+{
+    static final String SUFFIX = ".spans";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final BatchRequestSerializer serializer = new BatchRequestSerializer();
+
+    private final SimpleDateFormat dateFormat = ObjectUtils.getRFC3339DateTimeFormatter();
+
+    private final ByteBuffer header = ByteBuffer.allocate( 4 );
+
+    private final Path directory;
+
+    private final String prefix;
+
+    private final long maxFileBytes;
+
+    private final int maxFiles;
+
+    private FileChannel channel;
+
+    private long written;
+
+    private int sequence;
+
+    public FileSpanExporter( Path directory, String prefix, long maxFileBytes, int maxFiles )
+                    throws IOException
+    {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = Math.max( 1, maxFiles );
+        Files.createDirectories( directory );
+    }
+
+    @Override
+    public void export( List<ResolvedEvent> batch )
+                    throws IOException
+    {
+        List<BatchRequestElement> elements = new ArrayList<>( batch.size() );
+        for ( ResolvedEvent event : batch )
+        {
+            Long timestamp = event.getTimestamp();
+            String time = timestamp == null ? null : dateFormat.format( new Date( timestamp ) );
+            elements.add( new BatchRequestElement( time, event.getSampleRate(), event.getFields() ) );
+        }
+
+        byte[] payload = ExportUtils.gzip( serializer.serialize( elements ) );
+        long recordSize = payload.length + 4L;
+
+        if ( channel == null || ( written > 0 && written + recordSize > maxFileBytes ) )
+        {
+            rotate();
+        }
+
+        header.clear();
+        header.putInt( payload.length ).flip();
+        ByteBuffer[] record = { header, ByteBuffer.wrap( payload ) };
+        while ( record[1].hasRemaining() )
+        {
+            channel.write( record );
+        }
+        written += recordSize;
+    }
+
+    @Override
+    public void close()
+                    throws IOException
+    {
+        if ( channel != null )
+        {
+            channel.force( false );
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void rotate()
+                    throws IOException
+    {
+        close();
+
+        Path file = directory.resolve( String.format( "%s-%013d-%06d%s", prefix, System.currentTimeMillis(),
+                                                      sequence++, SUFFIX ) );
+        channel = FileChannel.open( file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                    StandardOpenOption.APPEND );
+        written = channel.size();
+        logger.debug( "Exporting spans to: {}", file );
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream( directory, prefix + "-*" + SUFFIX ))
+        {
+            stream.forEach( files::add );
+        }
+
+        if ( files.size() > maxFiles )
+        {
+            Collections.sort( files );
+            for ( Path old : files.subList( 0, files.size() - maxFiles ) )
+            {
+                Files.deleteIfExists( old );
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.export;
+
+import io.honeycomb.libhoney.eventdata.ResolvedEvent;
+import io.honeycomb.libhoney.transport.batch.impl.HoneycombBatchConsumer.BatchRequestElement;
+import io.honeycomb.libhoney.transport.json.BatchRequestSerializer;
+import io.honeycomb.libhoney.utils.ObjectUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Sends events to the Honeycomb batch API ({@code POST <apiHost>/1/batch/<dataset>}), one request per
+ * apiHost/writeKey/dataset found in the batch.
+ */
+public class HoneycombBatchExporter
+                implements SpanExporter
+{
+    private static final String BATCH_PATH = "/1/batch/";
+
+    private static final String TEAM_HEADER = "X-Honeycomb-Team";
+
+    private final BatchRequestSerializer serializer = new BatchRequestSerializer();
+
+    private final SimpleDateFormat dateFormat = ObjectUtils.getRFC3339DateTimeFormatter();
+
+    private final boolean gzip;
+
+    private final int requestTimeoutMillis;
+
+    public HoneycombBatchExporter( boolean gzip, int requestTimeoutMillis )
+    {
+        this.gzip = gzip;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    @Override
+    public void export( List<ResolvedEvent> batch )
+                    throws IOException
+    {
+        Map<Target, List<BatchRequestElement>> byTarget = new LinkedHashMap<>();
+        for ( ResolvedEvent event : batch )
+        {
+            Long timestamp = event.getTimestamp();
+            String time = timestamp == null ? null : dateFormat.format( new Date( timestamp ) );
+            byTarget.computeIfAbsent( new Target( event ), t -> new ArrayList<>() )
+                    .add( new BatchRequestElement( time, event.getSampleRate(), event.getFields() ) );
+        }
+
+        IOException error = null;
+        for ( Map.Entry<Target, List<BatchRequestElement>> e : byTarget.entrySet() )
+        {
+            Target target = e.getKey();
+            Map<String, String> headers = new HashMap<>();
+            headers.put( "Content-Type", "application/json" );
+            headers.put( TEAM_HEADER, target.writeKey );
+
+            URI uri = target.apiHost.resolve( BATCH_PATH + URLEncoder.encode( target.dataset, "UTF-8" ) );
+            try
+            {
+                int status = ExportUtils.post( uri, headers, serializer.serialize( e.getValue() ), gzip,
+                                               requestTimeoutMillis );
+                if ( status / 100 != 2 )
+                {
+                    throw new IOException( "Honeycomb rejected batch for dataset " + target.dataset + ", status: "
+                                                           + status );
+                }
+            }
+            catch ( IOException ex )
+            {
+                error = ex;
+            }
+        }
+
+        if ( error != null )
+        {
+            throw error;
+        }
+    }
+
+    private static final class Target
+    {
+        private final URI apiHost;
+
+        private final String writeKey;
+
+        private final String dataset;
+
+        Target( ResolvedEvent event )
+        {
+            this.apiHost = event.getApiHost();
+            this.writeKey = event.getWriteKey();
+            this.dataset = event.getDataset();
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !( o instanceof Target ) )
+            {
+                return false;
+            }
+            Target that = (Target) o;
+            return apiHost.equals( that.apiHost ) && Objects.equals( writeKey, that.writeKey ) && dataset.equals(
+                            that.dataset );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( apiHost, writeKey, dataset );
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.export;
+
+import io.honeycomb.libhoney.eventdata.ResolvedEvent;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.DURATION_FIELD;
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.PARENT_ID_FIELD;
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.REQUEST_ERROR_FIELD;
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.SERVICE_NAME_FIELD;
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.SPAN_ID_FIELD;
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.SPAN_NAME_FIELD;
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.TRACE_ID_FIELD;
+
+/**
+ * Exports spans to an OpenTelemetry collector using OTLP/HTTP with binary protobuf
+ * ({@code POST <endpoint>, Content-Type: application/x-protobuf}), e.g. {@code http://localhost:4318/v1/traces}.
+ * <p>
+ * Beeline span events are mapped to OTLP spans: trace/span/parent ids (UUID strings) become 16/8-byte ids, the event
+ * timestamp and {@code duration_ms} give start and end, {@code service_name} becomes the resource's
+ * {@code service.name}, and the remaining fields become attributes. The request is encoded by hand
+ * ({@link ProtobufWriter}), so no protobuf runtime is needed.
+ */
+public class OtlpHttpExporter
+                implements SpanExporter
+{
+    private static final String SCOPE_NAME = "o11yphant";
+
+    private static final int SPAN_KIND_INTERNAL = 1;
+
+    private static final int STATUS_CODE_ERROR = 2;
+
+    private static final String SAMPLE_RATE_ATTRIBUTE = "SampleRate";
+
+    private final URI endpoint;
+
+    private final Map<String, String> headers;
+
+    private final boolean gzip;
+
+    private final int requestTimeoutMillis;
+
+    public OtlpHttpExporter( URI endpoint, Map<String, String> headers, boolean gzip, int requestTimeoutMillis )
+    {
+        this.endpoint = endpoint;
+        this.headers = new HashMap<>( headers == null ? Collections.emptyMap() : headers );
+        this.headers.put( "Content-Type", "application/x-protobuf" );
+        this.gzip = gzip;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    @Override
+    public void export( List<ResolvedEvent> batch )
+                    throws IOException
+    {
+        int status = ExportUtils.post( endpoint, headers, encode( batch ), gzip, requestTimeoutMillis );
+        if ( status / 100 != 2 )
+        {
+            throw new IOException( "OTLP collector rejected batch, status: " + status );
+        }
+    }
+
+    /**
+     * Encode a batch as an OTLP {@code ExportTraceServiceRequest}.
+     */
+    byte[] encode( List<ResolvedEvent> batch )
+    {
+        Map<String, List<ResolvedEvent>> byService = new LinkedHashMap<>();
+        batch.forEach( event -> {
+            String service = String.valueOf( event.getFields().get( SERVICE_NAME_FIELD ) );
+            byService.computeIfAbsent( service, s -> new ArrayList<>() ).add( event );
+        } );
+
+        ProtobufWriter request = new ProtobufWriter();
+        byService.forEach( ( service, events ) -> {
+            ProtobufWriter resource = new ProtobufWriter().message( 1, attribute( "service.name", service ) );
+
+            ProtobufWriter scopeSpans = new ProtobufWriter().message( 1, new ProtobufWriter().string( 1, SCOPE_NAME ) );
+            events.forEach( event -> scopeSpans.message( 2, span( event ) ) );
+
+            request.message( 1, new ProtobufWriter().message( 1, resource ).message( 2, scopeSpans ) );
+        } );
+
+        return request.toByteArray();
+    }
+
+    private ProtobufWriter span( ResolvedEvent event )
+    {
+        Map<String, Object> fields = event.getFields();
+
+        long startNanos = TimeUnit.MILLISECONDS.toNanos(
+                        event.getTimestamp() == null ? System.currentTimeMillis() : event.getTimestamp() );
+        Object duration = fields.get( DURATION_FIELD );
+        long durationNanos = duration instanceof Number ?
+                        (long) ( ( (Number) duration ).doubleValue() * TimeUnit.MILLISECONDS.toNanos( 1 ) ) :
+                        0;
+
+        ProtobufWriter span = new ProtobufWriter().bytes( 1, id( fields.get( TRACE_ID_FIELD ), 16 ) )
+                                                  .bytes( 2, id( fields.get( SPAN_ID_FIELD ), 8 ) );
+        Object parent = fields.get( PARENT_ID_FIELD );
+        if ( parent != null )
+        {
+            span.bytes( 4, id( parent, 8 ) );
+        }
+
+        Object name = fields.get( SPAN_NAME_FIELD );
+        span.string( 5, name == null ? "unknown" : name.toString() )
+            .int64( 6, SPAN_KIND_INTERNAL )
+            .fixed64( 7, startNanos )
+            .fixed64( 8, startNanos + durationNanos );
+
+        fields.forEach( ( k, v ) -> {
+            if ( v != null && !isMapped( k ) )
+            {
+                span.message( 9, attribute( k, v ) );
+            }
+        } );
+        if ( event.getSampleRate() > 1 )
+        {
+            span.message( 9, attribute( SAMPLE_RATE_ATTRIBUTE, event.getSampleRate() ) );
+        }
+
+        Object error = fields.get( REQUEST_ERROR_FIELD );
+        if ( error == null )
+        {
+            error = fields.get( "error" );
+        }
+        if ( error != null )
+        {
+            span.message( 15, new ProtobufWriter().string( 2, error.toString() ).int64( 3, STATUS_CODE_ERROR ) );
+        }
+
+        return span;
+    }
+
+    private static boolean isMapped( String field )
+    {
+        return TRACE_ID_FIELD.equals( field ) || SPAN_ID_FIELD.equals( field ) || PARENT_ID_FIELD.equals( field )
+                        || SPAN_NAME_FIELD.equals( field ) || SERVICE_NAME_FIELD.equals( field )
+                        || DURATION_FIELD.equals( field );
+    }
+
+    private static ProtobufWriter attribute( String key, Object value )
+    {
+        ProtobufWriter any = new ProtobufWriter();
+        if ( value instanceof Boolean )
+        {
+            any.bool( 2, (Boolean) value );
+        }
+        else if ( value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte )
+        {
+            any.int64( 3, ( (Number) value ).longValue() );
+        }
+        else if ( value instanceof Number )
+        {
+            any.double64( 4, ( (Number) value ).doubleValue() );
+        }
+        else
+        {
+            any.string( 1, value.toString() );
+        }
+
+        return new ProtobufWriter().string( 1, key ).message( 2, any );
+    }
+
+    /**
+     * Beeline ids are UUID strings; use their hex digits when possible, otherwise derive a stable id from the text.
+     */
+    static byte[] id( Object value, int length )
+    {
+        String text = value == null ? "" : value.toString();
+        String hex = text.replace( "-", "" );
+        if ( hex.length() >= length * 2 && hex.substring( 0, length * 2 ).matches( "[0-9a-fA-F]+" ) )
+        {
+            byte[] id = new byte[length];
+            for ( int i = 0; i < length; i++ )
+            {
+                id[i] = (byte) Integer.parseInt( hex.substring( i * 2, i * 2 + 2 ), 16 );
+            }
+            return id;
+        }
+
+        UUID uuid = UUID.nameUUIDFromBytes( text.getBytes( StandardCharsets.UTF_8 ) );
+        ByteBuffer buf = ByteBuffer.allocate( 16 );
+        buf.putLong( uuid.getMostSignificantBits() ).putLong( uuid.getLeastSignificantBits() );
+        byte[] id = new byte[length];
+        System.arraycopy( buf.array(), 0, id, 0, length );
+        return id;
+    }
+}
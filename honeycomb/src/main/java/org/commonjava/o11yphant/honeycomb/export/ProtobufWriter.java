@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.export;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal protobuf wire-format encoder, enough to build OTLP requests without depending on protobuf-java.
+ * Nested messages are written to their own writer and embedded with {@link #message(int, ProtobufWriter)}.
+ */
+final class ProtobufWriter
+{
+    private static final int VARINT = 0;
+
+    private static final int FIXED64 = 1;
+
+    private static final int LENGTH_DELIMITED = 2;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    ProtobufWriter string( int field, String value )
+    {
+        if ( value != null )
+        {
+            bytes( field, value.getBytes( StandardCharsets.UTF_8 ) );
+        }
+        return this;
+    }
+
+    ProtobufWriter bytes( int field, byte[] value )
+    {
+        if ( value != null )
+        {
+            tag( field, LENGTH_DELIMITED );
+            varint( value.length );
+            out.write( value, 0, value.length );
+        }
+        return this;
+    }
+
+    ProtobufWriter message( int field, ProtobufWriter message )
+    {
+        return bytes( field, message.toByteArray() );
+    }
+
+    ProtobufWriter int64( int field, long value )
+    {
+        tag( field, VARINT );
+        varint( value );
+        return this;
+    }
+
+    ProtobufWriter bool( int field, boolean value )
+    {
+        tag( field, VARINT );
+        varint( value ? 1 : 0 );
+        return this;
+    }
+
+    ProtobufWriter fixed64( int field, long value )
+    {
+        tag( field, FIXED64 );
+        for ( int i = 0; i < 8; i++ )
+        {
+            out.write( (int) ( value >>> ( 8 * i ) ) & 0xff );
+        }
+        return this;
+    }
+
+    ProtobufWriter double64( int field, double value )
+    {
+        return fixed64( field, Double.doubleToRawLongBits( value ) );
+    }
+
+    byte[] toByteArray()
+    {
+        return out.toByteArray();
+    }
+
+    private void tag( int field, int wireType )
+    {
+        varint( ( field << 3 ) | wireType );
+    }
+
+    private void varint( long value )
+    {
+        while ( ( value & ~0x7FL ) != 0 )
+        {
+            out.write( (int) ( ( value & 0x7F ) | 0x80 ) );
+            value >>>= 7;
+        }
+        out.write( (int) value );
+    }
+}
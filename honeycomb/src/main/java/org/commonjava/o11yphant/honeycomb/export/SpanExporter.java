@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.export;
+
+import io.honeycomb.libhoney.eventdata.ResolvedEvent;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination for finished span events. {@link org.commonjava.o11yphant.honeycomb.transport.BatchingEventTransport}
+ * calls it from its sender thread with one batch at a time, so implementations don't need to be thread-safe and may
+ * block.
+ * <p>
+ * Provided implementations: {@link HoneycombBatchExporter} (Honeycomb batch API), {@link FileSpanExporter} (rotating
+ * local files) and {@link OtlpHttpExporter} (OTLP/HTTP protobuf). A CDI bean implementing this interface replaces the
+ * configured one.
+ */
+public interface SpanExporter
+                extends AutoCloseable
+{
+    /**
+     * @throws IOException if the batch could not be exported; the whole batch is counted as failed
+     */
+    void export( List<ResolvedEvent> batch )
+                    throws IOException;
+
+    @Override
+    default void close()
+                    throws IOException
+    {
+    }
+}
@@ -37,6 +37,12 @@ public abstract class CassandraConnectionRootSpanFields
      */
     protected abstract Map<String, Session> getSessions();
     
+    @Override
+    public long getRefreshIntervalMillis()
+    {
+        return DEFAULT_REFRESH_MILLIS;
+    }
+
     @Override
     public Map<String, Object> get()
     {
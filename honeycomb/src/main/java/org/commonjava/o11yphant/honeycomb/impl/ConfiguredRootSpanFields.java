@@ -42,6 +42,12 @@ public class ConfiguredRootSpanFields
         configured.put( "config.node.id", configuration.getNodeId() );
     }
 
+    @Override
+    public long getRefreshIntervalMillis()
+    {
+        return ONCE;
+    }
+
     @Override
     public Map<String, Object> get()
     {
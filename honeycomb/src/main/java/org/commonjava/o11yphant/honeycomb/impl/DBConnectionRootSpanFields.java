@@ -88,6 +88,12 @@ public class DBConnectionRootSpanFields
         }
     }
 
+    @Override
+    public long getRefreshIntervalMillis()
+    {
+        return DEFAULT_REFRESH_MILLIS;
+    }
+
     @Override
     public Map<String, Object> get()
     {
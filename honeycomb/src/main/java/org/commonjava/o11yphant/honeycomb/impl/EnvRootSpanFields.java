@@ -35,6 +35,12 @@ public class EnvRootSpanFields
     @Inject
     private HoneycombConfiguration configuration;
 
+    @Override
+    public long getRefreshIntervalMillis()
+    {
+        return ONCE;
+    }
+
     @Override
     public Map<String, Object> get()
     {
@@ -39,6 +39,12 @@ public abstract class GoldenSignalsRootSpanFields
         this.goldenSignalsMetricSet = goldenSignalsMetricSet;
     }
 
+    @Override
+    public long getRefreshIntervalMillis()
+    {
+        return DEFAULT_REFRESH_MILLIS;
+    }
+
     @Override
     public Map<String, Object> get()
     {
@@ -40,6 +40,12 @@ public class JVMRootSpanFields
         this.jvmInstrumentation = jvmInstrumentation;
     }
 
+    @Override
+    public long getRefreshIntervalMillis()
+    {
+        return DEFAULT_REFRESH_MILLIS;
+    }
+
     @Override
     public Map<String, Object> get()
     {
@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.interceptor;
+
+import io.honeycomb.beeline.tracing.Span;
+import org.commonjava.o11yphant.honeycomb.HoneycombManager;
+import org.commonjava.o11yphant.honeycomb.config.HoneycombConfiguration;
+import org.commonjava.o11yphant.honeycomb.config.SampleRateResolver;
+import org.commonjava.o11yphant.metrics.MetricsManager;
+import org.commonjava.o11yphant.metrics.annotation.Measure;
+import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
+import org.commonjava.o11yphant.metrics.instrument.MeasureHandle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.interceptor.InvocationContext;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.lang.System.nanoTime;
+import static org.commonjava.o11yphant.metrics.util.AsyncUtils.isAsync;
+import static org.commonjava.o11yphant.metrics.util.AsyncUtils.onCompletion;
+
+/**
+ * Single-pass {@link Measure} instrumentation for both metrics and Honeycomb. Annotation lookup and name resolution
+ * happen once per method; each call reads the clock once at start and once at the end, and the same elapsed time and
+ * outcome go to the metrics (the injected {@link MetricsManager}, through a {@link MeasureHandle} per method) and to
+ * the span. Subclasses decide how the span side is recorded (child span or cumulative fields).
+ * <p>
+ * Enable a subclass <b>instead of</b> {@code DefaultMetricsInterceptor} plus the Honeycomb measure interceptor, or
+ * the method is measured twice.
+ */
+public abstract class AbstractObservedMeasureInterceptor
+{
+    protected static final String ERROR_FIELD = "error";
+
+    protected static final String ERROR_DETAIL_FIELD = "error_detail";
+
+    private static final Measured NOT_MEASURED = new Measured( null, null );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Map<Method, Measured> measured = new ConcurrentHashMap<>();
+
+    @Inject
+    private HoneycombConfiguration config;
+
+    @Inject
+    private SampleRateResolver sampleRateResolver;
+
+    @Inject
+    protected HoneycombManager honeycombManager;
+
+    @Inject
+    private MetricsManager metricsManager;
+
+    @Inject
+    private MetricsConfig metricsConfig;
+
+    protected AbstractObservedMeasureInterceptor()
+    {
+    }
+
+    protected AbstractObservedMeasureInterceptor( HoneycombConfiguration config, SampleRateResolver sampleRateResolver,
+                                                  HoneycombManager honeycombManager, MetricsManager metricsManager,
+                                                  MetricsConfig metricsConfig )
+    {
+        this.config = config;
+        this.sampleRateResolver = sampleRateResolver;
+        this.honeycombManager = honeycombManager;
+        this.metricsManager = metricsManager;
+        this.metricsConfig = metricsConfig;
+    }
+
+    public Object operation( InvocationContext context ) throws Exception
+    {
+        Measured m = measured( context.getMethod() );
+        if ( m == NOT_MEASURED )
+        {
+            return context.proceed();
+        }
+
+        long start = nanoTime();
+        boolean traced = config.isEnabled() && sampleRateResolver.getSampleRate( m.name ) > 0;
+        Span span = traced ? beginSpan( m.name, start ) : null;
+
+        MeasureHandle.Scope metrics = m.handle.start( metricsManager, metricsConfig, start );
+        Throwable error = null;
+        boolean async = false;
+        try
+        {
+            Object result = context.proceed();
+            if ( isAsync( result ) )
+            {
+                async = true;
+                Span detached = span == null ? null : detachSpan( span );
+                onCompletion( result, failure -> {
+                    if ( failure != null )
+                    {
+                        metrics.failed( failure );
+                    }
+                    finish( m, metrics, detached, start, failure );
+                } );
+            }
+            return result;
+        }
+        catch ( Exception e )
+        {
+            error = e;
+            metrics.failed( e );
+            throw e;
+        }
+        finally
+        {
+            if ( !async )
+            {
+                finish( m, metrics, span, start, error );
+            }
+        }
+    }
+
+    private void finish( Measured m, MeasureHandle.Scope metrics, Span span, long start, Throwable error )
+    {
+        long end = nanoTime();
+        metrics.stop( end );
+        if ( span != null )
+        {
+            endSpan( span, m.name, end - start, error );
+        }
+        logger.trace( "END: measured {} ({} ns)", m.name, end - start );
+    }
+
+    /**
+     * Called when the measured call returned a {@link java.util.concurrent.CompletionStage}, before its completion is
+     * awaited. Returns the span {@link #endSpan(Span, String, long, Throwable)} will get on completion, which may
+     * happen on another thread.
+     */
+    protected Span detachSpan( Span span )
+    {
+        return span;
+    }
+
+    /**
+     * @param startNanos the {@link System#nanoTime()} reading the call is measured from
+     * @return the span to record this call in, or null to skip tracing it
+     */
+    protected abstract Span beginSpan( String name, long startNanos );
+
+    /**
+     * Record the call on the span returned by {@link #beginSpan(String, long)}.
+     *
+     * @param elapsedNanos the elapsed time also recorded in the metrics
+     * @param error the exception the call failed with, or null
+     */
+    protected abstract void endSpan( Span span, String name, long elapsedNanos, Throwable error );
+
+    private Measured measured( Method method )
+    {
+        Measured m = measured.get( method );
+        if ( m == null )
+        {
+            m = measured.computeIfAbsent( method, this::resolve );
+        }
+        return m;
+    }
+
+    private Measured resolve( Method method )
+    {
+        Class<?> declaringClass = method.getDeclaringClass();
+        if ( method.getAnnotation( Measure.class ) == null && declaringClass.getAnnotation( Measure.class ) == null )
+        {
+            return NOT_MEASURED;
+        }
+        MeasureHandle handle = MeasureHandle.of( declaringClass, method.getName() );
+        return new Measured( handle, handle.getDefaultName() );
+    }
+
+    private static final class Measured
+    {
+        private final MeasureHandle handle;
+
+        private final String name;
+
+        private Measured( MeasureHandle handle, String name )
+        {
+            this.handle = handle;
+            this.name = name;
+        }
+    }
+}
@@ -19,6 +19,7 @@ import io.honeycomb.beeline.tracing.Span;
 import org.commonjava.o11yphant.metrics.annotation.Measure;
 import org.commonjava.o11yphant.honeycomb.HoneycombManager;
 import org.commonjava.o11yphant.honeycomb.config.HoneycombConfiguration;
+import org.commonjava.o11yphant.honeycomb.config.SampleRateResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,7 +29,9 @@ import javax.interceptor.Interceptor;
 import javax.interceptor.InvocationContext;
 import java.lang.reflect.Method;
 
-import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
+import static org.commonjava.o11yphant.metrics.util.AsyncUtils.isAsync;
+import static org.commonjava.o11yphant.metrics.util.AsyncUtils.onCompletion;
 
 @Interceptor
 @Measure
@@ -39,6 +42,9 @@ public class FlatHoneycombMeasureInterceptor
     @Inject
     private HoneycombConfiguration config;
 
+    @Inject
+    private SampleRateResolver sampleRateResolver;
+
     @Inject
     private HoneycombManager honeycombManager;
 
@@ -61,26 +67,36 @@ public class FlatHoneycombMeasureInterceptor
             measure = method.getDeclaringClass().getAnnotation( Measure.class );
         }
 
-        int sampleRate = config.getSampleRate( name );
+        int sampleRate = sampleRateResolver.getSampleRate( name );
         if ( measure == null || sampleRate < 1 )
         {
             logger.trace( "SKIP: Honeycomb method wrapper (no annotation or span is not configured: {})", name );
             return context.proceed();
         }
 
-        long begin = currentTimeMillis();
+        long begin = nanoTime();
         Span span = null;
+        Object result = null;
         try
         {
             span = honeycombManager.getActiveSpan();
-            return context.proceed();
+            result = context.proceed();
+            return result;
         }
         finally
         {
             if ( span != null )
             {
-                long elapse = currentTimeMillis() - begin;
-                honeycombManager.addCumulativeField( span, name, elapse );
+                Span active = span;
+                if ( isAsync( result ) )
+                {
+                    onCompletion( result,
+                                  error -> honeycombManager.addCumulativeNanos( active, name, nanoTime() - begin ) );
+                }
+                else
+                {
+                    honeycombManager.addCumulativeNanos( active, name, nanoTime() - begin );
+                }
             }
             logger.trace( "END: Honeycomb method wrapper: {}", name );
         }
@@ -19,6 +19,7 @@ import io.honeycomb.beeline.tracing.Span;
 import org.commonjava.o11yphant.metrics.annotation.MetricWrapper;
 import org.commonjava.o11yphant.honeycomb.HoneycombManager;
 import org.commonjava.o11yphant.honeycomb.config.HoneycombConfiguration;
+import org.commonjava.o11yphant.honeycomb.config.SampleRateResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,7 +28,7 @@ import javax.interceptor.AroundInvoke;
 import javax.interceptor.Interceptor;
 import javax.interceptor.InvocationContext;
 
-import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
 import static org.commonjava.o11yphant.honeycomb.util.InterceptorUtils.getMetricNameFromContext;
 import static org.commonjava.o11yphant.metrics.MetricsConstants.SKIP_METRIC;
 
@@ -40,6 +41,9 @@ public class FlatHoneycombWrapperEndInterceptor
     @Inject
     private HoneycombConfiguration config;
 
+    @Inject
+    private SampleRateResolver sampleRateResolver;
+
     @Inject
     private HoneycombManager honeycombManager;
 
@@ -54,7 +58,7 @@ public class FlatHoneycombWrapperEndInterceptor
             return context.proceed();
         }
 
-        if ( name == null || SKIP_METRIC.equals( name ) || config.getSampleRate( context.getMethod() ) < 1 )
+        if ( name == null || SKIP_METRIC.equals( name ) || sampleRateResolver.getSampleRate( context.getMethod() ) < 1 )
         {
             logger.trace( "SKIP: Honeycomb metrics-end wrapper (span not configured: {})", name );
             return context.proceed();
@@ -65,7 +69,7 @@ public class FlatHoneycombWrapperEndInterceptor
         {
             if ( span != null )
             {
-                honeycombManager.addEndField( span, name, currentTimeMillis() );
+                honeycombManager.addEndNanos( span, name, nanoTime() );
             }
             return context.proceed();
         }
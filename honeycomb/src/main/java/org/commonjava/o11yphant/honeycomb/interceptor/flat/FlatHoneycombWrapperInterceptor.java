@@ -19,6 +19,7 @@ import io.honeycomb.beeline.tracing.Span;
 import org.commonjava.o11yphant.metrics.annotation.MetricWrapper;
 import org.commonjava.o11yphant.honeycomb.HoneycombManager;
 import org.commonjava.o11yphant.honeycomb.config.HoneycombConfiguration;
+import org.commonjava.o11yphant.honeycomb.config.SampleRateResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,7 +28,9 @@ import javax.interceptor.AroundInvoke;
 import javax.interceptor.Interceptor;
 import javax.interceptor.InvocationContext;
 
-import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
+import static org.commonjava.o11yphant.metrics.util.AsyncUtils.isAsync;
+import static org.commonjava.o11yphant.metrics.util.AsyncUtils.onCompletion;
 import static org.commonjava.o11yphant.honeycomb.util.InterceptorUtils.getMetricNameFromContextAfterRun;
 import static org.commonjava.o11yphant.honeycomb.util.InterceptorUtils.getMetricNameFromContext;
 import static org.commonjava.o11yphant.metrics.MetricsConstants.SKIP_METRIC;
@@ -42,6 +45,9 @@ public class FlatHoneycombWrapperInterceptor
     @Inject
     private HoneycombConfiguration config;
 
+    @Inject
+    private SampleRateResolver sampleRateResolver;
+
     @Inject
     private HoneycombManager honeycombManager;
 
@@ -56,26 +62,40 @@ public class FlatHoneycombWrapperInterceptor
             return context.proceed();
         }
 
-        if ( name == null || SKIP_METRIC.equals( name ) || config.getSampleRate( name ) < 1 )
+        if ( name == null || SKIP_METRIC.equals( name ) || sampleRateResolver.getSampleRate( name ) < 1 )
         {
             logger.debug( "SKIP Honeycomb lambda wrapper (no span name or span not configured: {})", name );
             return context.proceed();
         }
 
-        long begin = currentTimeMillis();
+        long begin = nanoTime();
         Span span = null;
+        Object result = null;
         try
         {
             span = honeycombManager.getActiveSpan();
-            return context.proceed();
+            result = context.proceed();
+            return result;
         }
         finally
         {
             if ( span != null )
             {
-                long elapse = currentTimeMillis() - begin;
-                name = name( name, getMetricNameFromContextAfterRun( context ) );
-                honeycombManager.addCumulativeField( span, name, elapse );
+                Span active = span;
+                String baseName = name;
+                if ( isAsync( result ) )
+                {
+                    onCompletion( result, error -> {
+                        String fullName = name( baseName, getMetricNameFromContextAfterRun( context ) );
+                        honeycombManager.addCumulativeNanos( active, fullName, nanoTime() - begin );
+                    } );
+                }
+                else
+                {
+                    long elapse = nanoTime() - begin;
+                    name = name( name, getMetricNameFromContextAfterRun( context ) );
+                    honeycombManager.addCumulativeNanos( span, name, elapse );
+                }
             }
             logger.debug( "END: Honeycomb lambda wrapper: {}", name );
         }
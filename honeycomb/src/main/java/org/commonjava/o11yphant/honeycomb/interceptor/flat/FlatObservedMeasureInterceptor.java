@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.interceptor.flat;
+
+import io.honeycomb.beeline.tracing.Span;
+import org.commonjava.o11yphant.honeycomb.HoneycombManager;
+import org.commonjava.o11yphant.honeycomb.config.HoneycombConfiguration;
+import org.commonjava.o11yphant.honeycomb.config.SampleRateResolver;
+import org.commonjava.o11yphant.honeycomb.interceptor.AbstractObservedMeasureInterceptor;
+import org.commonjava.o11yphant.metrics.MetricsManager;
+import org.commonjava.o11yphant.metrics.annotation.Measure;
+import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
+
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.Interceptor;
+import javax.interceptor.InvocationContext;
+
+import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
+
+/**
+ * Combined replacement for {@code DefaultMetricsInterceptor} + {@link FlatHoneycombMeasureInterceptor}: records
+ * metrics and the cumulative fields on the active span in one pass, with the same elapsed time. A failed call sets
+ * the <code>&lt;name&gt;.{@value #ERROR_FIELD}</code> field to the exception's simple class name.
+ */
+@Interceptor
+@Measure
+public class FlatObservedMeasureInterceptor
+        extends AbstractObservedMeasureInterceptor
+{
+    public FlatObservedMeasureInterceptor()
+    {
+    }
+
+    public FlatObservedMeasureInterceptor( HoneycombConfiguration config, SampleRateResolver sampleRateResolver,
+                                           HoneycombManager honeycombManager, MetricsManager metricsManager,
+                                           MetricsConfig metricsConfig )
+    {
+        super( config, sampleRateResolver, honeycombManager, metricsManager, metricsConfig );
+    }
+
+    @AroundInvoke
+    @Override
+    public Object operation( InvocationContext context ) throws Exception
+    {
+        return super.operation( context );
+    }
+
+    @Override
+    protected Span beginSpan( String name, long startNanos )
+    {
+        return honeycombManager.getActiveSpan();
+    }
+
+    @Override
+    protected void endSpan( Span span, String name, long elapsedNanos, Throwable error )
+    {
+        honeycombManager.addCumulativeNanos( span, name, elapsedNanos );
+        if ( error != null )
+        {
+            span.addField( name( name, ERROR_FIELD ), error.getClass().getSimpleName() );
+        }
+    }
+}
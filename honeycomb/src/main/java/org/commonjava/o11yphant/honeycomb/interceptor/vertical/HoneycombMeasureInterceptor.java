@@ -19,6 +19,7 @@ import io.honeycomb.beeline.tracing.Span;
 import org.commonjava.o11yphant.metrics.annotation.Measure;
 import org.commonjava.o11yphant.honeycomb.HoneycombManager;
 import org.commonjava.o11yphant.honeycomb.config.HoneycombConfiguration;
+import org.commonjava.o11yphant.honeycomb.config.SampleRateResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +38,9 @@ public class HoneycombMeasureInterceptor
     @Inject
     private HoneycombConfiguration config;
 
+    @Inject
+    private SampleRateResolver sampleRateResolver;
+
     @Inject
     private HoneycombManager honeycombManager;
 
@@ -59,7 +63,7 @@ public class HoneycombMeasureInterceptor
             measure = method.getDeclaringClass().getAnnotation( Measure.class );
         }
 
-        int sampleRate = config.getSampleRate( name );
+        int sampleRate = sampleRateResolver.getSampleRate( name );
         if ( measure == null || sampleRate < 1 )
         {
             logger.trace( "SKIP: Honeycomb method wrapper (no annotation or span is not configured: {})", name );
@@ -71,20 +75,20 @@ public class HoneycombMeasureInterceptor
         // ThreadContext.getContext( true ).put( SAMPLE_OVERRIDE, Boolean.TRUE );
 
         Span span = null;
+        Object result = null;
         try
         {
             span = honeycombManager.startChildSpan( name );
             logger.trace( "startChildSpan, span: {}, name: {}", span, name );
-            return context.proceed();
+            result = context.proceed();
+            return result;
         }
         finally
         {
             if ( span != null )
             {
-                honeycombManager.addFields( span );
-
                 logger.trace( "closeSpan, {}", span );
-                span.close();
+                honeycombManager.closeSpan( span, result );
             }
 
             logger.trace( "END: Honeycomb method wrapper: {}", name );
@@ -19,6 +19,7 @@ import io.honeycomb.beeline.tracing.Span;
 import org.commonjava.o11yphant.metrics.annotation.MetricWrapper;
 import org.commonjava.o11yphant.honeycomb.HoneycombManager;
 import org.commonjava.o11yphant.honeycomb.config.HoneycombConfiguration;
+import org.commonjava.o11yphant.honeycomb.config.SampleRateResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,6 +40,9 @@ public class HoneycombWrapperInterceptor
     @Inject
     private HoneycombConfiguration config;
 
+    @Inject
+    private SampleRateResolver sampleRateResolver;
+
     @Inject
     private HoneycombManager honeycombManager;
 
@@ -53,27 +57,27 @@ public class HoneycombWrapperInterceptor
             return context.proceed();
         }
 
-        if ( name == null || SKIP_METRIC.equals( name ) || config.getSampleRate( name ) < 1 )
+        if ( name == null || SKIP_METRIC.equals( name ) || sampleRateResolver.getSampleRate( name ) < 1 )
         {
             logger.debug( "SKIP Honeycomb lambda wrapper (no span name or span not configured: {})", name );
             return context.proceed();
         }
 
         Span span = null;
+        Object result = null;
         try
         {
             span = honeycombManager.startChildSpan( name );
             logger.trace( "startChildSpan, span: {}, name: {}", span, name );
-            return context.proceed();
+            result = context.proceed();
+            return result;
         }
         finally
         {
             if ( span != null )
             {
-                honeycombManager.addFields( span );
-
                 logger.trace( "closeSpan, {}", span );
-                span.close();
+                honeycombManager.closeSpan( span, result );
             }
 
             logger.debug( "END: Honeycomb lambda wrapper: {}", name );
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.interceptor.vertical;
+
+import io.honeycomb.beeline.tracing.Span;
+import org.commonjava.o11yphant.honeycomb.HoneycombManager;
+import org.commonjava.o11yphant.honeycomb.config.HoneycombConfiguration;
+import org.commonjava.o11yphant.honeycomb.config.SampleRateResolver;
+import org.commonjava.o11yphant.honeycomb.interceptor.AbstractObservedMeasureInterceptor;
+import org.commonjava.o11yphant.metrics.MetricsManager;
+import org.commonjava.o11yphant.metrics.annotation.Measure;
+import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
+
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.Interceptor;
+import javax.interceptor.InvocationContext;
+
+/**
+ * Combined replacement for {@code DefaultMetricsInterceptor} + {@link HoneycombMeasureInterceptor}: records metrics
+ * and a child span per measured call in one pass. The span starts at the same clock reading as the timer, so its
+ * duration matches the recorded elapsed time; a failed call sets the {@value #ERROR_FIELD} and
+ * {@value #ERROR_DETAIL_FIELD} fields.
+ */
+@Interceptor
+@Measure
+public class ObservedMeasureInterceptor
+        extends AbstractObservedMeasureInterceptor
+{
+    public ObservedMeasureInterceptor()
+    {
+    }
+
+    public ObservedMeasureInterceptor( HoneycombConfiguration config, SampleRateResolver sampleRateResolver,
+                                       HoneycombManager honeycombManager, MetricsManager metricsManager,
+                                       MetricsConfig metricsConfig )
+    {
+        super( config, sampleRateResolver, honeycombManager, metricsManager, metricsConfig );
+    }
+
+    @AroundInvoke
+    @Override
+    public Object operation( InvocationContext context ) throws Exception
+    {
+        return super.operation( context );
+    }
+
+    @Override
+    protected Span beginSpan( String name, long startNanos )
+    {
+        Span span = honeycombManager.startChildSpan( name );
+        if ( span != null )
+        {
+            // measure the span's duration from the same reading as the timer
+            span.markStart( span.getTimestamp(), startNanos );
+        }
+        return span;
+    }
+
+    @Override
+    protected Span detachSpan( Span span )
+    {
+        return honeycombManager.detachSpan( span );
+    }
+
+    @Override
+    protected void endSpan( Span span, String name, long elapsedNanos, Throwable error )
+    {
+        if ( error != null )
+        {
+            span.addField( ERROR_FIELD, error.getClass().getSimpleName() );
+            span.addField( ERROR_DETAIL_FIELD, error.getMessage() );
+        }
+        honeycombManager.addFields( span );
+        span.close();
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.sampling;
+
+import org.commonjava.o11yphant.honeycomb.config.HoneycombConfiguration;
+import org.commonjava.o11yphant.metrics.api.Gauge;
+import org.commonjava.o11yphant.metrics.api.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
+
+/**
+ * Throughput-targeting sampler. For each key (classifier) it counts span arrivals in a sliding window of one-second
+ * buckets and derives the rate that holds the sampled throughput near
+ * {@link HoneycombConfiguration#getAdaptiveSamplingTargetPerSecond()}: below the target everything is kept, during a
+ * spike the rate rises so outbound events stay flat. Counting is lock-free; the rate of a key is recomputed at most
+ * once per second.
+ * <p>
+ * The keep decision is derived from the trace id, so all spans of a trace get the same answer. The current rate and
+ * observed throughput of each key are registered as gauges ({@code honeycomb.sampler.<key>.rate} and
+ * {@code .throughput}) when a {@link MetricRegistry} is available.
+ */
+@ApplicationScoped
+public class AdaptiveSampler
+{
+    static final String METRIC_PREFIX = "honeycomb.sampler";
+
+    static final int MAX_KEYS = 1024;
+
+    static final String OTHER_KEY = "other";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private HoneycombConfiguration configuration;
+
+    @Inject
+    private Instance<MetricRegistry> metricRegistryInstance;
+
+    private MetricRegistry metricRegistry;
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    public AdaptiveSampler()
+    {
+    }
+
+    public AdaptiveSampler( HoneycombConfiguration configuration, MetricRegistry metricRegistry )
+    {
+        this.configuration = configuration;
+        this.metricRegistry = metricRegistry;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        if ( metricRegistryInstance != null && !metricRegistryInstance.isUnsatisfied() )
+        {
+            metricRegistry = metricRegistryInstance.get();
+        }
+    }
+
+    /**
+     * Record one span arrival for the key and decide whether its trace is kept.
+     *
+     * @return the sample rate if the trace is kept, 0 otherwise
+     */
+    public int sample( String key, String traceId )
+    {
+        Window window = window( key );
+        long now = currentSecond();
+        window.record( now );
+
+        int rate = window.rate( now );
+        if ( rate <= 1 )
+        {
+            return 1;
+        }
+
+        return Math.floorMod( traceId == null ? 0 : traceId.hashCode(), rate ) == 0 ? rate : 0;
+    }
+
+    /**
+     * @return the current rate for the key, or 1 if the key has not been seen
+     */
+    public int getRate( String key )
+    {
+        Window window = windows.get( key );
+        return window == null ? 1 : window.currentRate;
+    }
+
+    protected long currentSecond()
+    {
+        return TimeUnit.NANOSECONDS.toSeconds( System.nanoTime() );
+    }
+
+    private Window window( String key )
+    {
+        Window window = windows.get( key );
+        if ( window != null )
+        {
+            return window;
+        }
+
+        if ( windows.size() >= MAX_KEYS )
+        {
+            key = OTHER_KEY;
+        }
+
+        return windows.computeIfAbsent( key, k -> {
+            Window w = new Window( Math.max( 1, configuration.getAdaptiveSamplingWindowSeconds() ), currentSecond() );
+            registerGauges( k, w );
+            return w;
+        } );
+    }
+
+    private void registerGauges( String key, Window window )
+    {
+        if ( metricRegistry == null )
+        {
+            return;
+        }
+
+        try
+        {
+            metricRegistry.register( name( METRIC_PREFIX, key, "rate" ), (Gauge<Integer>) () -> window.currentRate );
+            metricRegistry.register( name( METRIC_PREFIX, key, "throughput" ),
+                                     (Gauge<Double>) () -> window.throughput( currentSecond() ) );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            logger.debug( "Sampler gauges already registered for: {}", key );
+        }
+    }
+
+    /**
+     * Ring of per-second buckets: the last {@code size} completed seconds, plus the one currently being counted.
+     */
+    private final class Window
+    {
+        private final int size;
+
+        private final long created;
+
+        private final AtomicLongArray counts;
+
+        private final AtomicLongArray seconds;
+
+        private final AtomicLong lastComputed = new AtomicLong( -1 );
+
+        private volatile int currentRate = 1;
+
+        Window( int size, long created )
+        {
+            this.size = size;
+            this.created = created;
+            this.counts = new AtomicLongArray( size + 1 );
+            this.seconds = new AtomicLongArray( size + 1 );
+            for ( int i = 0; i <= size; i++ )
+            {
+                seconds.set( i, -1 );
+            }
+        }
+
+        void record( long now )
+        {
+            int idx = (int) ( now % ( size + 1 ) );
+            long bucketSecond = seconds.get( idx );
+            if ( bucketSecond != now && seconds.compareAndSet( idx, bucketSecond, now ) )
+            {
+                // first arrival in a new second claims the bucket; concurrent increments may be lost, which is fine
+                counts.set( idx, 0 );
+            }
+            counts.incrementAndGet( idx );
+        }
+
+        /**
+         * Average per-second count over the completed seconds of the window. Seconds without any arrivals count as
+         * zero, so bursty traffic isn't mistaken for a sustained rate; only a window younger than its size is averaged
+         * over fewer seconds.
+         */
+        double throughput( long now )
+        {
+            long elapsed = Math.min( size, now - created );
+            if ( elapsed <= 0 )
+            {
+                return 0;
+            }
+
+            long total = 0;
+            for ( int i = 0; i <= size; i++ )
+            {
+                long s = seconds.get( i );
+                if ( s < now && s >= now - size )
+                {
+                    total += counts.get( i );
+                }
+            }
+            return (double) total / elapsed;
+        }
+
+        int rate( long now )
+        {
+            long last = lastComputed.get();
+            if ( last != now && lastComputed.compareAndSet( last, now ) )
+            {
+                double observed = throughput( now );
+                int target = Math.max( 1, configuration.getAdaptiveSamplingTargetPerSecond() );
+                currentRate = observed <= target ? 1 : (int) Math.ceil( observed / target );
+            }
+            return currentRate;
+        }
+    }
+}
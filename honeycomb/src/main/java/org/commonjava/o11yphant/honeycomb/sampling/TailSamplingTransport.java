@@ -0,0 +1,343 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.sampling;
+
+import io.honeycomb.libhoney.eventdata.ResolvedEvent;
+import io.honeycomb.libhoney.responses.ResponseObservable;
+import io.honeycomb.libhoney.transport.Transport;
+import io.honeycomb.libhoney.transport.batch.ClockProvider;
+import io.honeycomb.libhoney.transport.batch.impl.SystemClockProvider;
+import org.commonjava.o11yphant.honeycomb.config.HoneycombConfiguration;
+import org.commonjava.o11yphant.metrics.util.LruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.DURATION_FIELD;
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.PARENT_ID_FIELD;
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.REQUEST_ERROR_FIELD;
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.SPAN_ID_FIELD;
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.STATUS_CODE_FIELD;
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.TRACE_ID_FIELD;
+import static org.commonjava.o11yphant.metrics.RequestContextHelper.HTTP_STATUS;
+
+/**
+ * Tail-sampling {@link Transport} decorator. Span events are buffered per trace until the trace's root span arrives;
+ * then the whole trace is either forwarded or dropped:
+ * <ul>
+ *     <li>traces whose root took at least {@link HoneycombConfiguration#getTailSamplingLatencyThresholdMillis()},
+ *     or with any span reporting an error or a 5xx status, are always kept at their original sample rate</li>
+ *     <li>other traces are kept with probability 1 / {@link HoneycombConfiguration#getTailSamplingRate()}, and the
+ *     sample rate of their events is multiplied by that rate so Honeycomb's counts stay correct</li>
+ * </ul>
+ * A root span is one without a parent id, or one registered via {@link #markRoot(String)} (local roots that continue
+ * a remote trace, see {@link org.commonjava.o11yphant.honeycomb.HoneycombManager#startRootTracer(String,
+ * org.commonjava.o11yphant.honeycomb.SpanContext)}). Spans arriving after their trace was decided follow the same
+ * decision. If the buffer overflows, the oldest pending trace is decided without its root, using the same rules.
+ * <p>
+ * Decisions are made and recorded under the buffer lock, so a span can't start a new pending list for a trace that
+ * is being decided; events are forwarded to the delegate only after the lock is released.
+ */
+public class TailSamplingTransport
+                implements Transport
+{
+    private static final int DROP = 0;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Transport delegate;
+
+    private final HoneycombConfiguration configuration;
+
+    private final ClockProvider clock = SystemClockProvider.getInstance();
+
+    private final Map<String, List<ResolvedEvent>> pending;
+
+    private final LruCache<String, Integer> decided;
+
+    private final LruCache<String, Boolean> localRoots;
+
+    // evicted by removeEldestEntry, guarded by pending; forwarded once the lock is released
+    private final List<Decision> evicted = new ArrayList<>();
+
+    private final AtomicLong kept = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    public TailSamplingTransport( Transport delegate, HoneycombConfiguration configuration )
+    {
+        this.delegate = delegate;
+        this.configuration = configuration;
+
+        final int maxTraces = configuration.getTailSamplingMaxTraces();
+        this.pending = new LinkedHashMap<String, List<ResolvedEvent>>()
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<String, List<ResolvedEvent>> eldest )
+            {
+                if ( size() > maxTraces )
+                {
+                    logger.debug( "Tail-sampling buffer full, deciding trace {} without its root span",
+                                  eldest.getKey() );
+                    evicted.add( decide( eldest.getKey(), eldest.getValue(), null ) );
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.decided = new LruCache<>( maxTraces );
+        this.localRoots = new LruCache<>( maxTraces );
+    }
+
+    /**
+     * Register a span id as the local root of its trace, so its arrival triggers the decision even though it has a
+     * (remote) parent.
+     */
+    public void markRoot( String spanId )
+    {
+        localRoots.put( spanId, Boolean.TRUE );
+    }
+
+    @Override
+    public boolean submit( ResolvedEvent event )
+    {
+        Map<String, Object> fields = event.getFields();
+        Object traceId = fields.get( TRACE_ID_FIELD );
+        if ( traceId == null )
+        {
+            return delegate.submit( event );
+        }
+
+        String trace = traceId.toString();
+        Integer decision = decided.get( trace );
+        if ( decision != null )
+        {
+            return forward( event, decision );
+        }
+
+        boolean root = fields.get( PARENT_ID_FIELD ) == null
+                        || localRoots.remove( String.valueOf( fields.get( SPAN_ID_FIELD ) ) ) != null;
+
+        List<Decision> ready = new ArrayList<>( 1 );
+        synchronized ( pending )
+        {
+            // may have been decided while we waited for the lock
+            decision = decided.get( trace );
+            if ( decision == null )
+            {
+                if ( root )
+                {
+                    ready.add( decide( trace, pending.remove( trace ), event ) );
+                }
+                else
+                {
+                    List<ResolvedEvent> spans = pending.computeIfAbsent( trace, k -> new ArrayList<>() );
+                    spans.add( event );
+                    if ( spans.size() >= configuration.getTailSamplingMaxSpansPerTrace() )
+                    {
+                        pending.remove( trace );
+                        ready.add( decide( trace, spans, null ) );
+                    }
+                }
+            }
+
+            if ( !evicted.isEmpty() )
+            {
+                ready.addAll( evicted );
+                evicted.clear();
+            }
+        }
+
+        ready.forEach( Decision::forward );
+        return decision == null || forward( event, decision );
+    }
+
+    /**
+     * Decide a trace and record the decision. Must be called holding the lock on {@link #pending}.
+     */
+    private Decision decide( String trace, List<ResolvedEvent> spans, ResolvedEvent root )
+    {
+        int decision = root != null && isInteresting( root, true ) ? 1 : DROP;
+        if ( decision == DROP && spans != null )
+        {
+            for ( ResolvedEvent span : spans )
+            {
+                if ( isInteresting( span, false ) )
+                {
+                    decision = 1;
+                    break;
+                }
+            }
+        }
+
+        if ( decision == DROP )
+        {
+            int rate = Math.max( 1, configuration.getTailSamplingRate() );
+            decision = rate == 1 || keepSampled( trace, rate ) ? rate : DROP;
+        }
+
+        decided.put( trace, decision );
+        logger.trace( "Tail-sampling decision for trace {}: {}", trace, decision );
+
+        return new Decision( decision, spans, root );
+    }
+
+    /**
+     * Whether this span alone justifies keeping its trace. Override to add other criteria.
+     */
+    protected boolean isInteresting( ResolvedEvent event, boolean root )
+    {
+        Map<String, Object> fields = event.getFields();
+        if ( fields.get( REQUEST_ERROR_FIELD ) != null || fields.get( "error" ) != null )
+        {
+            return true;
+        }
+
+        if ( toLong( fields.get( HTTP_STATUS ) ) >= 500 || toLong( fields.get( STATUS_CODE_FIELD ) ) >= 500 )
+        {
+            return true;
+        }
+
+        return root && toLong( fields.get( DURATION_FIELD ) ) >= configuration.getTailSamplingLatencyThresholdMillis();
+    }
+
+    /**
+     * Random 1-in-rate choice for traces that are neither slow nor failed.
+     */
+    protected boolean keepSampled( String trace, int rate )
+    {
+        return ThreadLocalRandom.current().nextInt( rate ) == 0;
+    }
+
+    private boolean forward( ResolvedEvent event, int decision )
+    {
+        if ( decision == DROP )
+        {
+            dropped.incrementAndGet();
+            return true;
+        }
+
+        kept.incrementAndGet();
+        if ( decision == 1 )
+        {
+            return delegate.submit( event );
+        }
+
+        return delegate.submit( new ResolvedEvent( event.getApiHost(), event.getWriteKey(), event.getDataset(),
+                                                   event.getSampleRate() * decision, event.getTimestamp(),
+                                                   event.getFields(), event.getMetadata(), clock ) );
+    }
+
+    private static long toLong( Object value )
+    {
+        if ( value instanceof Number )
+        {
+            return ( (Number) value ).longValue();
+        }
+        if ( value != null )
+        {
+            try
+            {
+                return Long.parseLong( value.toString().trim() );
+            }
+            catch ( NumberFormatException e )
+            {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private final class Decision
+    {
+        private final int decision;
+
+        private final List<ResolvedEvent> spans;
+
+        private final ResolvedEvent root;
+
+        private Decision( int decision, List<ResolvedEvent> spans, ResolvedEvent root )
+        {
+            this.decision = decision;
+            this.spans = spans;
+            this.root = root;
+        }
+
+        private void forward()
+        {
+            if ( spans != null )
+            {
+                for ( ResolvedEvent span : spans )
+                {
+                    TailSamplingTransport.this.forward( span, decision );
+                }
+            }
+            if ( root != null )
+            {
+                TailSamplingTransport.this.forward( root, decision );
+            }
+        }
+    }
+
+    public long getKeptCount()
+    {
+        return kept.get();
+    }
+
+    public long getDroppedCount()
+    {
+        return dropped.get();
+    }
+
+    public int getPendingTraces()
+    {
+        synchronized ( pending )
+        {
+            return pending.size();
+        }
+    }
+
+    @Override
+    public ResponseObservable getResponseObservable()
+    {
+        return delegate.getResponseObservable();
+    }
+
+    /**
+     * Decides all pending traces (without their roots), forwards the kept ones and closes the delegate.
+     */
+    @Override
+    public void close()
+                    throws Exception
+    {
+        List<Decision> ready = new ArrayList<>();
+        synchronized ( pending )
+        {
+            pending.forEach( ( trace, spans ) -> ready.add( decide( trace, spans, null ) ) );
+            pending.clear();
+            ready.addAll( evicted );
+            evicted.clear();
+        }
+        ready.forEach( Decision::forward );
+        delegate.close();
+    }
+}
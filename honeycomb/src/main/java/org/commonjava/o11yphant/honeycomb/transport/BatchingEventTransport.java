@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.transport;
+
+import io.honeycomb.libhoney.eventdata.ResolvedEvent;
+import io.honeycomb.libhoney.responses.ResponseObservable;
+import io.honeycomb.libhoney.transport.Transport;
+import org.commonjava.o11yphant.honeycomb.config.HoneycombConfiguration;
+import org.commonjava.o11yphant.honeycomb.export.HoneycombBatchExporter;
+import org.commonjava.o11yphant.honeycomb.export.SpanExporter;
+import org.commonjava.o11yphant.metrics.api.Gauge;
+import org.commonjava.o11yphant.metrics.api.Meter;
+import org.commonjava.o11yphant.metrics.api.Metric;
+import org.commonjava.o11yphant.metrics.api.MetricSet;
+import org.commonjava.o11yphant.metrics.api.Timer;
+import org.commonjava.o11yphant.metrics.impl.O11Meter;
+import org.commonjava.o11yphant.metrics.impl.O11Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event transport that never blocks the submitting (request) thread. Events go into a bounded queue; when it is full
+ * they are dropped and counted. A single daemon sender thread drains the queue into batches, sent when
+ * {@link HoneycombConfiguration#getTransportBatchSize()} events are collected or the oldest one has waited
+ * {@link HoneycombConfiguration#getTransportBatchTimeoutMillis()}, and hands them to a {@link SpanExporter} (by default
+ * the Honeycomb batch API). A slow or unreachable backend therefore only fills the queue.
+ * <p>
+ * Queue depth, sent/dropped/failed counts and send latency are exposed as a {@link MetricSet}.
+ */
+public class BatchingEventTransport
+                implements Transport, MetricSet
+{
+    private static final long CLOSE_TIMEOUT_MILLIS = 30000;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final BlockingQueue<ResolvedEvent> queue;
+
+    private final int batchSize;
+
+    private final long batchTimeoutNanos;
+
+    private final SpanExporter exporter;
+
+    private final ResponseObservable responseObservable = new ResponseObservable();
+
+    private final Meter sent = new O11Meter();
+
+    private final Meter dropped = new O11Meter();
+
+    private final Meter failed = new O11Meter();
+
+    private final Timer sendLatency = new O11Timer();
+
+    private final Thread sender;
+
+    private volatile boolean running = true;
+
+    public BatchingEventTransport( HoneycombConfiguration configuration )
+    {
+        this( configuration, new HoneycombBatchExporter( configuration.isTransportGzipEnabled(),
+                                                         configuration.getTransportRequestTimeoutMillis() ) );
+    }
+
+    public BatchingEventTransport( HoneycombConfiguration configuration, SpanExporter exporter )
+    {
+        this( configuration.getTransportQueueCapacity(), configuration.getTransportBatchSize(),
+              configuration.getTransportBatchTimeoutMillis(), exporter );
+    }
+
+    public BatchingEventTransport( int queueCapacity, int batchSize, long batchTimeoutMillis, boolean gzip,
+                                   int requestTimeoutMillis )
+    {
+        this( queueCapacity, batchSize, batchTimeoutMillis, new HoneycombBatchExporter( gzip, requestTimeoutMillis ) );
+    }
+
+    public BatchingEventTransport( int queueCapacity, int batchSize, long batchTimeoutMillis, SpanExporter exporter )
+    {
+        this.queue = new ArrayBlockingQueue<>( queueCapacity );
+        this.batchSize = batchSize;
+        this.batchTimeoutNanos = TimeUnit.MILLISECONDS.toNanos( batchTimeoutMillis );
+        this.exporter = exporter;
+
+        this.sender = new Thread( this::run, "o11yphant-honeycomb-sender" );
+        this.sender.setDaemon( true );
+        this.sender.start();
+    }
+
+    @Override
+    public boolean submit( ResolvedEvent event )
+    {
+        if ( running && queue.offer( event ) )
+        {
+            return true;
+        }
+
+        dropped.mark();
+        return false;
+    }
+
+    @Override
+    public ResponseObservable getResponseObservable()
+    {
+        return responseObservable;
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics()
+    {
+        Map<String, Metric> metrics = new HashMap<>();
+        metrics.put( "queue.depth", (Gauge<Integer>) queue::size );
+        metrics.put( "sent", sent );
+        metrics.put( "dropped", dropped );
+        metrics.put( "failed", failed );
+        metrics.put( "send.latency", sendLatency );
+        return metrics;
+    }
+
+    public int getQueueDepth()
+    {
+        return queue.size();
+    }
+
+    public long getSentCount()
+    {
+        return sent.getCount();
+    }
+
+    public long getDroppedCount()
+    {
+        return dropped.getCount();
+    }
+
+    public long getFailedCount()
+    {
+        return failed.getCount();
+    }
+
+    /**
+     * Stops accepting events, sends what is queued and waits (bounded) for the sender thread to finish.
+     */
+    @Override
+    public void close()
+                    throws Exception
+    {
+        running = false;
+        sender.join( CLOSE_TIMEOUT_MILLIS );
+        exporter.close();
+        responseObservable.close();
+    }
+
+    private void run()
+    {
+        List<ResolvedEvent> batch = new ArrayList<>( batchSize );
+        while ( running || !queue.isEmpty() )
+        {
+            try
+            {
+                ResolvedEvent first = queue.poll( batchTimeoutNanos, TimeUnit.NANOSECONDS );
+                if ( first == null )
+                {
+                    continue;
+                }
+
+                batch.add( first );
+                long deadline = System.nanoTime() + batchTimeoutNanos;
+                while ( batch.size() < batchSize )
+                {
+                    if ( queue.drainTo( batch, batchSize - batch.size() ) > 0 )
+                    {
+                        continue;
+                    }
+
+                    long remaining = deadline - System.nanoTime();
+                    ResolvedEvent next = remaining > 0 ? queue.poll( remaining, TimeUnit.NANOSECONDS ) : null;
+                    if ( next == null )
+                    {
+                        break;
+                    }
+                    batch.add( next );
+                }
+
+                send( batch );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            catch ( RuntimeException e )
+            {
+                logger.warn( "Failed to send Honeycomb events: " + e.getMessage(), e );
+                failed.mark( batch.size() );
+            }
+            finally
+            {
+                batch.clear();
+            }
+        }
+    }
+
+    private void send( List<ResolvedEvent> batch )
+    {
+        long start = System.nanoTime();
+        try
+        {
+            exporter.export( batch );
+            sent.mark( batch.size() );
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Failed to export batch of {} events: {}", batch.size(), e.getMessage() );
+            failed.mark( batch.size() );
+        }
+        finally
+        {
+            sendLatency.update( System.nanoTime() - start, TimeUnit.NANOSECONDS );
+        }
+    }
+}
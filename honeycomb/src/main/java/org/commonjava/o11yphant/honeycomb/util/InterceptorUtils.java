@@ -21,9 +21,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.interceptor.InvocationContext;
-import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
 public class InterceptorUtils
@@ -32,41 +33,75 @@ public class InterceptorUtils
 
     public static final String SAMPLE_OVERRIDE = "honeycomb.sample-override";
 
+    private static final int NAMED = 0;
+
+    private static final int NAMED_AFTER_RUN = 1;
+
+    /**
+     * Index of the {@link MetricWrapperNamed} and {@link MetricWrapperNamedAfterRun} parameter of each intercepted
+     * method (-1 if there is none), so parameter annotations are only scanned once per method.
+     */
+    private static final Map<Method, int[]> NAME_PARAMETERS = new ConcurrentHashMap<>();
+
     public static String getMetricNameFromContext( InvocationContext context )
     {
-        return getMetricNameFromContextInternal( context, MetricWrapperNamed.class );
+        return getMetricNameFromContextInternal( context, NAMED );
     }
 
     public static String getMetricNameFromContextAfterRun( InvocationContext context )
     {
-        return getMetricNameFromContextInternal( context, MetricWrapperNamedAfterRun.class );
+        return getMetricNameFromContextInternal( context, NAMED_AFTER_RUN );
     }
 
-    private static String getMetricNameFromContextInternal( InvocationContext context, Class annotationClass )
+    private static String getMetricNameFromContextInternal( InvocationContext context, int which )
     {
-        String name = null;
         Method method = context.getMethod();
+        int[] indexes = NAME_PARAMETERS.get( method );
+        if ( indexes == null )
+        {
+            indexes = NAME_PARAMETERS.computeIfAbsent( method, InterceptorUtils::findNameParameters );
+        }
+
+        int idx = indexes[which];
+        if ( idx < 0 )
+        {
+            return null;
+        }
+
+        Object pv = context.getParameters()[idx];
+        String name;
+        if ( pv instanceof Supplier )
+        {
+            name = String.valueOf( ( (Supplier) pv ).get() );
+        }
+        else
+        {
+            name = String.valueOf( pv );
+        }
+
+        if ( logger.isTraceEnabled() )
+        {
+            logger.trace( "Found metric name: {}, method: {}", name, method.getName() );
+        }
+        return name;
+    }
+
+    private static int[] findNameParameters( Method method )
+    {
+        int[] indexes = { -1, -1 };
         Parameter[] parameters = method.getParameters();
         for ( int i = 0; i < parameters.length; i++ )
         {
-            Parameter param = parameters[i];
-            Annotation annotation = param.getAnnotation( annotationClass );
-            if ( annotation != null )
+            if ( indexes[NAMED] < 0 && parameters[i].getAnnotation( MetricWrapperNamed.class ) != null )
             {
-                Object pv = context.getParameters()[i];
-                if ( pv instanceof Supplier )
-                {
-                    name = String.valueOf( ( (Supplier) pv ).get() );
-                }
-                else
-                {
-                    name = String.valueOf( pv );
-                }
-
-                break;
+                indexes[NAMED] = i;
+            }
+            if ( indexes[NAMED_AFTER_RUN] < 0
+                            && parameters[i].getAnnotation( MetricWrapperNamedAfterRun.class ) != null )
+            {
+                indexes[NAMED_AFTER_RUN] = i;
             }
         }
-        logger.debug( "Found metric name: {}, annotation: {}", name, annotationClass.getSimpleName() );
-        return name;
+        return indexes;
     }
 }
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb;
+
+import io.honeycomb.beeline.tracing.Span;
+import io.honeycomb.beeline.tracing.propagation.PropagationContext;
+import io.honeycomb.libhoney.transport.batch.impl.SystemClockProvider;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class CachedRootSpanFieldsTest
+{
+    private final CachedRootSpanFields cached = new CachedRootSpanFields();
+
+    @After
+    public void tearDown()
+    {
+        cached.shutdown();
+    }
+
+    @Test
+    public void providersAreCalledPerTheirRefreshInterval()
+    {
+        AtomicInteger everySpan = new AtomicInteger();
+        AtomicInteger once = new AtomicInteger();
+        AtomicInteger periodic = new AtomicInteger();
+
+        cached.register( provider( everySpan, RootSpanFields.EVERY_SPAN, "a" ) );
+        cached.register( provider( once, RootSpanFields.ONCE, "b" ) );
+        cached.register( provider( periodic, 60000, "c" ) );
+
+        Span span = null;
+        for ( int i = 0; i < 10; i++ )
+        {
+            span = span();
+            cached.apply( span );
+        }
+
+        assertThat( everySpan.get(), equalTo( 10 ) );
+        assertThat( once.get(), equalTo( 1 ) );
+        assertThat( periodic.get(), equalTo( 1 ) );
+        assertThat( span.getFields().get( "a" ), equalTo( 10 ) );
+        assertThat( span.getFields().get( "b" ), equalTo( 1 ) );
+        assertThat( span.getFields().get( "c" ), equalTo( 1 ) );
+    }
+
+    private static Span span()
+    {
+        return new Span( "test", "test", "span", new PropagationContext( "trace", "span", null, null ), Collections.emptyMap(),
+                         SystemClockProvider.getInstance() )
+        {
+            @Override
+            protected void closeInternal()
+            {
+            }
+        };
+    }
+
+    private static RootSpanFields provider( AtomicInteger calls, long interval, String key )
+    {
+        return new RootSpanFields()
+        {
+            @Override
+            public long getRefreshIntervalMillis()
+            {
+                return interval;
+            }
+
+            @Override
+            public Map<String, Object> get()
+            {
+                return Collections.singletonMap( key, calls.incrementAndGet() );
+            }
+        };
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb;
+
+import com.codahale.metrics.Timer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class SpanContextTest
+{
+    @Test
+    public void concurrentUpdatesAreNotLost()
+            throws Exception
+    {
+        SpanContext ctx = new SpanContext( "trace", "span", null );
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+            for ( int t = 0; t < 8; t++ )
+            {
+                futures.add( executor.submit( () -> {
+                    for ( int i = 1; i <= 1000; i++ )
+                    {
+                        ctx.getOrCreateTimer( "get" ).update( i );
+                        ctx.getOrCreateMeter( "hits" ).mark();
+                    }
+                } ) );
+            }
+            for ( Future<?> f : futures )
+            {
+                f.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        SpanTimer timer = ctx.getSpanTimer( "get" );
+        assertThat( timer.getCount(), equalTo( 8000L ) );
+        assertThat( timer.getSum(), equalTo( 8 * 500500L ) );
+        assertThat( timer.getMin(), equalTo( 1L ) );
+        assertThat( timer.getMax(), equalTo( 1000L ) );
+        assertThat( timer.getMean(), equalTo( 500.5 ) );
+        assertThat( ctx.getSpanMeter( "hits" ).getCount(), equalTo( 8000L ) );
+    }
+
+    @Test
+    @SuppressWarnings( "deprecation" )
+    public void codahaleViewsRecordIntoSpanMetrics()
+    {
+        SpanContext ctx = new SpanContext( "trace", "span", null );
+        ctx.getOrCreateTimer( "get" ).update( 5 );
+        ctx.getOrCreateMeter( "hits" ).mark();
+
+        Timer timer = ctx.getTimer( "get" );
+        timer.update( 7, TimeUnit.NANOSECONDS );
+        timer.time().stop();
+        ctx.getMeter( "hits" ).mark( 2 );
+
+        assertThat( ctx.getSpanTimer( "get" ).getCount(), equalTo( 3L ) );
+        assertThat( timer.getCount(), equalTo( 3L ) );
+        assertThat( ctx.getSpanMeter( "hits" ).getCount(), equalTo( 3L ) );
+        assertThat( ctx.getTimer( "missing" ), nullValue() );
+
+        Timer foreign = new Timer();
+        ctx.putTimer( "put", foreign );
+        assertThat( ctx.getTimer( "put" ), sameInstance( foreign ) );
+        assertThat( ctx.getForeignTimers().keySet(), equalTo( Collections.singleton( "put" ) ) );
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb;
+
+import io.honeycomb.beeline.tracing.Span;
+import io.honeycomb.beeline.tracing.propagation.PropagationContext;
+import io.honeycomb.libhoney.transport.batch.impl.SystemClockProvider;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class SpanStatisticsTest
+{
+    private final SpanStatistics statistics = new SpanStatistics();
+
+    @Test
+    public void fieldsAreWrittenOnFlush()
+    {
+        Span span = span();
+        statistics.record( span, "get", 10_000_000 );
+        statistics.record( span, "get", 30_000_000 );
+        statistics.record( span, "put", 250_000 );
+
+        assertThat( span.getFields().get( "get.cumulative-count" ), nullValue() );
+
+        statistics.flush( span );
+
+        assertThat( span.getFields().get( "get.cumulative-timings" ), equalTo( 40.0 ) );
+        assertThat( span.getFields().get( "get.cumulative-count" ), equalTo( 2 ) );
+        assertThat( span.getFields().get( "get.max-time-ms" ), equalTo( 30.0 ) );
+        assertThat( span.getFields().get( "get.avg-time-ms" ), equalTo( 20.0 ) );
+        assertThat( span.getFields().get( "get.p99-time-ms" ), equalTo( 30.0 ) );
+        assertThat( span.getFields().get( "put.cumulative-count" ), equalTo( 1 ) );
+        assertThat( span.getFields().get( "put.cumulative-timings" ), equalTo( 0.25 ) );
+    }
+
+    @Test
+    public void lateValuesAfterFlushAreDropped()
+    {
+        Span span = span();
+        statistics.record( span, "get", 10_000_000 );
+        statistics.flush( span );
+
+        // e.g. an async completion reporting after the span closed
+        statistics.record( span, "get", 20_000_000 );
+        statistics.flush( span );
+
+        assertThat( span.getFields().get( "get.cumulative-count" ), equalTo( 1 ) );
+        assertThat( span.getFields().get( "get.cumulative-timings" ), equalTo( 10.0 ) );
+    }
+
+    @Test
+    public void startAndEndRecordPhase()
+    {
+        Span span = span();
+        assertThat( statistics.end( span, "phase", 100 ), equalTo( false ) );
+
+        statistics.start( span, "phase", 1_000 );
+        assertThat( statistics.end( span, "phase", 1_501_000 ), equalTo( true ) );
+        assertThat( statistics.end( span, "phase", 2_000_000 ), equalTo( false ) );
+
+        statistics.flush( span );
+        assertThat( span.getFields().get( "phase.cumulative-count" ), equalTo( 1 ) );
+        assertThat( span.getFields().get( "phase.cumulative-timings" ), equalTo( 1.5 ) );
+        assertThat( span.getFields().get( "phase.p50-time-ms" ), equalTo( 1.5 ) );
+    }
+
+    @Test
+    public void overflowEvictsOnlyTheOldestAccumulators()
+    {
+        Span leaked = span( "leaked" );
+        statistics.record( leaked, "get", 1_000_000 );
+        for ( int i = 1; i < SpanStatistics.MAX_OPEN_SPANS; i++ )
+        {
+            statistics.record( span( "s" + i ), "get", 1_000_000 );
+        }
+
+        Span live = span( "s" + ( SpanStatistics.MAX_OPEN_SPANS - 1 ) );
+        statistics.record( span( "new" ), "get", 1_000_000 );
+
+        statistics.flush( leaked );
+        assertThat( leaked.getFields().get( "get.cumulative-count" ), nullValue() );
+        statistics.flush( live );
+        assertThat( live.getFields().get( "get.cumulative-count" ), equalTo( 1 ) );
+    }
+
+    private static Span span()
+    {
+        return span( "span" );
+    }
+
+    private static Span span( String id )
+    {
+        return new Span( "test", "test", id, new PropagationContext( "trace", "parent", null, null ),
+                         Collections.emptyMap(), SystemClockProvider.getInstance() )
+        {
+            @Override
+            protected void closeInternal()
+            {
+            }
+        };
+    }
+}
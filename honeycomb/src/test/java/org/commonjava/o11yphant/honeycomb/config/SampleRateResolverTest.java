@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.config;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class SampleRateResolverTest
+{
+    @Test
+    public void matchesConfigurationDefaults()
+                    throws Exception
+    {
+        Map<String, Integer> rates = new HashMap<>();
+        rates.put( "content", 5 );
+        rates.put( "maven.remote", 10 );
+        rates.put( "maven.remote.get.timer", 20 );
+        rates.put( "retrieve", 30 );
+        rates.put( "SampleRateResolverTest", 40 );
+
+        TestHoneycombConfiguration config = new TestHoneycombConfiguration();
+        config.setSpanRates( rates );
+        config.setBaseSampleRate( 100 );
+
+        SampleRateResolver resolver = new SampleRateResolver( config );
+
+        String[] classifiers = { "maven.remote.get.timer", "maven.remote.get", "maven.remote", "maven.local",
+                        "npm.content.get", "maven.remote.content", "x.retrieve.content", "other", "", "a.b.c.d.e" };
+        for ( String classifier : classifiers )
+        {
+            int expected = config.getSampleRate( classifier );
+            assertThat( classifier, resolver.getSampleRate( classifier ), equalTo( expected ) );
+            // cached
+            assertThat( classifier, resolver.getSampleRate( classifier ), equalTo( expected ) );
+        }
+
+        Method method = getClass().getMethod( "matchesConfigurationDefaults" );
+        assertThat( resolver.getSampleRate( method ), equalTo( config.getSampleRate( method ) ) );
+        assertThat( resolver.getSampleRate( method ), equalTo( 40 ) );
+    }
+
+    @Test
+    public void rebuildsWhenConfigurationChanges()
+    {
+        TestHoneycombConfiguration config = new TestHoneycombConfiguration();
+        Map<String, Integer> rates = new HashMap<>();
+        rates.put( "maven", 10 );
+        config.setSpanRates( rates );
+
+        SampleRateResolver resolver = new SampleRateResolver( config );
+        assertThat( resolver.getSampleRate( "maven.get" ), equalTo( 10 ) );
+
+        Map<String, Integer> updated = new HashMap<>();
+        updated.put( "maven", 50 );
+        config.setSpanRates( updated );
+        assertThat( resolver.getSampleRate( "maven.get" ), equalTo( 50 ) );
+
+        config.setBaseSampleRate( 7 );
+        assertThat( resolver.getSampleRate( "npm.get" ), equalTo( 7 ) );
+
+        updated.put( "npm", 3 );
+        resolver.reload();
+        assertThat( resolver.getSampleRate( "npm.get" ), equalTo( 3 ) );
+    }
+
+    @Test
+    public void equalRatesAreNotRecompiled()
+    {
+        AtomicInteger calls = new AtomicInteger();
+        TestHoneycombConfiguration config = new TestHoneycombConfiguration()
+        {
+            @Override
+            public Map<String, Integer> getSpanRates()
+            {
+                // a fresh copy per call, like a wrapping config source
+                return new HashMap<>( super.getSpanRates() );
+            }
+
+            @Override
+            public Integer getSampleRate( String classifier )
+            {
+                calls.incrementAndGet();
+                return super.getSampleRate( classifier );
+            }
+        };
+        Map<String, Integer> rates = new HashMap<>();
+        rates.put( "maven", 10 );
+        config.setSpanRates( rates );
+
+        SampleRateResolver resolver = new SampleRateResolver( config );
+        assertThat( resolver.getSampleRate( "maven.get" ), equalTo( 10 ) );
+        assertThat( resolver.getSampleRate( "maven.get" ), equalTo( 10 ) );
+        assertThat( calls.get(), equalTo( 1 ) );
+
+        rates.put( "maven", 30 );
+        assertThat( resolver.getSampleRate( "maven.get" ), equalTo( 30 ) );
+        assertThat( calls.get(), equalTo( 2 ) );
+    }
+
+    @Test
+    public void missingBaseRateKeepsEverything()
+    {
+        TestHoneycombConfiguration config = new TestHoneycombConfiguration();
+        config.setSpanRates( new HashMap<>() );
+        config.setBaseSampleRate( null );
+
+        SampleRateResolver resolver = new SampleRateResolver( config );
+        assertThat( resolver.getSampleRate( "maven.get" ), equalTo( 1 ) );
+    }
+
+    @Test
+    public void delegatesToOverriddenConfigurationMethods()
+                    throws Exception
+    {
+        TestHoneycombConfiguration config = new TestHoneycombConfiguration()
+        {
+            @Override
+            public Integer getSampleRate( String classifier )
+            {
+                return classifier.length();
+            }
+
+            @Override
+            public int getSampleRate( Method method )
+            {
+                return 77;
+            }
+        };
+        config.setSpanRates( new HashMap<>() );
+        config.setBaseSampleRate( 1 );
+
+        SampleRateResolver resolver = new SampleRateResolver( config );
+        assertThat( resolver.getSampleRate( "abc" ), equalTo( 3 ) );
+        assertThat( resolver.getSampleRate( "abcdef", false ), equalTo( 6 ) );
+        assertThat( resolver.getSampleRate( getClass().getMethod( "delegatesToOverriddenConfigurationMethods" ) ),
+                    equalTo( 77 ) );
+    }
+}
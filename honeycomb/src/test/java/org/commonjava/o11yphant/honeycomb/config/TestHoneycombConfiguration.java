@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class TestHoneycombConfiguration
+                implements HoneycombConfiguration
+{
+    private Map<String, Integer> spanRates = new HashMap<>();
+
+    private Integer baseSampleRate = 1;
+
+    private boolean enabled = true;
+
+    public void setSpanRates( Map<String, Integer> spanRates )
+    {
+        this.spanRates = spanRates;
+    }
+
+    public void setBaseSampleRate( Integer baseSampleRate )
+    {
+        this.baseSampleRate = baseSampleRate;
+    }
+
+    public void setEnabled( boolean enabled )
+    {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Map<String, Integer> getSpanRates()
+    {
+        return spanRates;
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    @Override
+    public String getServiceName()
+    {
+        return "test";
+    }
+
+    @Override
+    public String getWriteKey()
+    {
+        return "test";
+    }
+
+    @Override
+    public String getDataset()
+    {
+        return "test";
+    }
+
+    @Override
+    public Integer getBaseSampleRate()
+    {
+        return baseSampleRate;
+    }
+
+    @Override
+    public Set<String> getFieldSet()
+    {
+        return DEFAULT_FIELDS;
+    }
+
+    @Override
+    public String getEnvironmentMappings()
+    {
+        return null;
+    }
+
+    @Override
+    public String getCPNames()
+    {
+        return null;
+    }
+
+    @Override
+    public String getNodeId()
+    {
+        return null;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.export;
+
+import io.honeycomb.libhoney.eventdata.ResolvedEvent;
+import io.honeycomb.libhoney.transport.batch.impl.SystemClockProvider;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class FileSpanExporterTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void writesLengthPrefixedRecordsAndRotates()
+                    throws Exception
+    {
+        File dir = temp.newFolder();
+        FileSpanExporter exporter = new FileSpanExporter( dir.toPath(), "spans", 1, 2 );
+        for ( int i = 0; i < 5; i++ )
+        {
+            exporter.export( Collections.singletonList( event( "span-" + i ) ) );
+        }
+        exporter.close();
+
+        File[] files = dir.listFiles();
+        Arrays.sort( files );
+        assertThat( files.length, equalTo( 2 ) );
+
+        List<String> records = read( files[1] );
+        assertThat( records.size(), equalTo( 1 ) );
+        assertThat( records.get( 0 ), containsString( "\"name\":\"span-4\"" ) );
+    }
+
+    @Test
+    public void appendsUntilSizeLimit()
+                    throws Exception
+    {
+        File dir = temp.newFolder();
+        FileSpanExporter exporter = new FileSpanExporter( dir.toPath(), "spans", 1024 * 1024, 2 );
+        exporter.export( Collections.singletonList( event( "a" ) ) );
+        exporter.export( Arrays.asList( event( "b" ), event( "c" ) ) );
+        exporter.close();
+
+        File[] files = dir.listFiles();
+        assertThat( files.length, equalTo( 1 ) );
+        List<String> records = read( files[0] );
+        assertThat( records.size(), equalTo( 2 ) );
+        assertThat( records.get( 1 ), containsString( "\"name\":\"c\"" ) );
+    }
+
+    private List<String> read( File file )
+                    throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.wrap( Files.readAllBytes( file.toPath() ) );
+        List<String> records = new ArrayList<>();
+        while ( buf.hasRemaining() )
+        {
+            byte[] record = new byte[buf.getInt()];
+            buf.get( record );
+            try (InputStream in = new GZIPInputStream( new ByteArrayInputStream( record ) ))
+            {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] b = new byte[1024];
+                int read;
+                while ( ( read = in.read( b ) ) >= 0 )
+                {
+                    out.write( b, 0, read );
+                }
+                records.add( out.toString( "UTF-8" ) );
+            }
+        }
+        return records;
+    }
+
+    static ResolvedEvent event( String name )
+    {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put( "name", name );
+        fields.put( "service_name", "test" );
+        fields.put( "trace.trace_id", "5b2c1d3e-0f1a-4b2c-9d8e-7f6a5b4c3d2e" );
+        fields.put( "trace.span_id", "1a2b3c4d-5e6f-4a1b-8c2d-3e4f5a6b7c8d" );
+        fields.put( "duration_ms", 12.5 );
+        fields.put( "http-status", 200 );
+        return new ResolvedEvent( URI.create( "http://localhost" ), "key", "dataset", 1, System.currentTimeMillis(),
+                                  fields, Collections.emptyMap(), SystemClockProvider.getInstance() );
+    }
+}
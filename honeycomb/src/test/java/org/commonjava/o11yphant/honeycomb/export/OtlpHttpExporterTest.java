@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.export;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class OtlpHttpExporterTest
+{
+    @Test
+    public void encodesUuidIds()
+    {
+        byte[] traceId = OtlpHttpExporter.id( "5b2c1d3e-0f1a-4b2c-9d8e-7f6a5b4c3d2e", 16 );
+        assertThat( traceId.length, equalTo( 16 ) );
+        assertThat( traceId[0], equalTo( (byte) 0x5b ) );
+        assertThat( traceId[15], equalTo( (byte) 0x2e ) );
+
+        assertArrayEquals( OtlpHttpExporter.id( "not-hex", 8 ), OtlpHttpExporter.id( "not-hex", 8 ) );
+    }
+
+    @Test
+    public void encodesExportRequest()
+    {
+        OtlpHttpExporter exporter = new OtlpHttpExporter( URI.create( "http://localhost:4318/v1/traces" ), null,
+                                                          false, 1000 );
+        byte[] request = exporter.encode( Collections.singletonList( FileSpanExporterTest.event( "span-1" ) ) );
+
+        // field 1 (resource_spans), length-delimited
+        assertThat( request[0], equalTo( (byte) 0x0A ) );
+        String text = new String( request, StandardCharsets.ISO_8859_1 );
+        assertTrue( text.contains( "service.name" ) );
+        assertTrue( text.contains( "span-1" ) );
+        assertTrue( text.contains( "http-status" ) );
+    }
+}
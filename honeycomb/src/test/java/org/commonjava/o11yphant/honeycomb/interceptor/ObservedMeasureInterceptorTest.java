@@ -0,0 +1,279 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.interceptor;
+
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import io.honeycomb.beeline.tracing.Span;
+import io.honeycomb.beeline.tracing.propagation.PropagationContext;
+import io.honeycomb.libhoney.transport.batch.ClockProvider;
+import org.commonjava.o11yphant.honeycomb.HoneycombManager;
+import org.commonjava.o11yphant.honeycomb.config.SampleRateResolver;
+import org.commonjava.o11yphant.honeycomb.config.TestHoneycombConfiguration;
+import org.commonjava.o11yphant.honeycomb.interceptor.flat.FlatObservedMeasureInterceptor;
+import org.commonjava.o11yphant.honeycomb.interceptor.vertical.ObservedMeasureInterceptor;
+import org.commonjava.o11yphant.metrics.DefaultMetricRegistry;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
+import org.commonjava.o11yphant.metrics.annotation.Measure;
+import org.commonjava.o11yphant.metrics.conf.DefaultMetricsConfig;
+import org.commonjava.o11yphant.metrics.instrument.MeasureHandle;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.interceptor.InvocationContext;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ObservedMeasureInterceptorTest
+{
+    private final com.codahale.metrics.MetricRegistry codahale = new com.codahale.metrics.MetricRegistry();
+
+    private final TestHoneycombConfiguration config = new TestHoneycombConfiguration();
+
+    private final StubHoneycombManager honeycombManager = new StubHoneycombManager();
+
+    private DefaultMetricsManager metricsManager;
+
+    @Before
+    public void setup()
+    {
+        // the interceptors must record to the injected manager, not the static binding
+        MeasureHandle.uninstall();
+        metricsManager = new DefaultMetricsManager( new DefaultMetricRegistry( codahale, new HealthCheckRegistry() ) );
+    }
+
+    @Test
+    public void childSpanSharesTheTimerStartAndRecordsTheError()
+            throws Exception
+    {
+        ObservedMeasureInterceptor interceptor =
+                        new ObservedMeasureInterceptor( config, new SampleRateResolver( config ), honeycombManager,
+                                                        metricsManager, new DefaultMetricsConfig() );
+
+        long before = System.nanoTime();
+        assertThat( interceptor.operation( invocation( "work" ) ), equalTo( "done" ) );
+        long after = System.nanoTime();
+
+        Span span = honeycombManager.span;
+        assertThat( honeycombManager.closed, equalTo( true ) );
+        assertThat( span.getStartTime() >= before && span.getStartTime() <= after, equalTo( true ) );
+        assertThat( span.getFields().get( "error" ), nullValue() );
+
+        // the span's duration is measured from the timer's start
+        Timer timer = timer( "work" );
+        assertThat( timer.getCount(), equalTo( 1L ) );
+        honeycombManager.now.set( span.getStartTime() + timer.getSnapshot().getMax() );
+        assertThat( span.elapsedTimeMs(), equalTo( timer.getSnapshot().getMax() / 1000000.0 ) );
+
+        try
+        {
+            interceptor.operation( invocation( "fail" ) );
+            fail( "expected IOException" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+        assertThat( honeycombManager.span.getFields().get( "error" ), equalTo( "IOException" ) );
+        assertThat( honeycombManager.span.getFields().get( "error_detail" ), equalTo( "broken" ) );
+        assertThat( timer( "fail" ).getCount(), equalTo( 1L ) );
+        assertThat( codahale.getMeters().get( "MeasuredService.fail.exception" ).getCount(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void cumulativeFieldsShareTheTimerElapsedAndRecordTheError()
+            throws Exception
+    {
+        FlatObservedMeasureInterceptor interceptor =
+                        new FlatObservedMeasureInterceptor( config, new SampleRateResolver( config ),
+                                                            honeycombManager, metricsManager,
+                                                            new DefaultMetricsConfig() );
+        honeycombManager.span = span();
+
+        interceptor.operation( invocation( "work" ) );
+        assertThat( honeycombManager.cumulative.get( "MeasuredService.work" ),
+                    equalTo( timer( "work" ).getSnapshot().getMax() ) );
+
+        try
+        {
+            interceptor.operation( invocation( "fail" ) );
+            fail( "expected IOException" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+        assertThat( honeycombManager.cumulative.get( "MeasuredService.fail" ),
+                    equalTo( timer( "fail" ).getSnapshot().getMax() ) );
+        assertThat( honeycombManager.span.getFields().get( "MeasuredService.fail.error" ), equalTo( "IOException" ) );
+        assertThat( honeycombManager.span.getFields().get( "MeasuredService.work.error" ), nullValue() );
+    }
+
+    private Timer timer( String method )
+    {
+        return codahale.getTimers().get( "MeasuredService." + method + ".timer" );
+    }
+
+    private Span span()
+    {
+        ClockProvider clock = new ClockProvider()
+        {
+            @Override
+            public long getWallTime()
+            {
+                return System.currentTimeMillis();
+            }
+
+            @Override
+            public long getMonotonicTime()
+            {
+                return honeycombManager.now.get();
+            }
+        };
+        return new Span( "test", "test", "span", new PropagationContext( "trace", "span", null, null ),
+                         Collections.emptyMap(), clock )
+        {
+            @Override
+            protected void closeInternal()
+            {
+                honeycombManager.closed = true;
+            }
+        };
+    }
+
+    private static InvocationContext invocation( String name )
+            throws NoSuchMethodException
+    {
+        MeasuredService target = new MeasuredService();
+        Method method = MeasuredService.class.getMethod( name );
+        return new InvocationContext()
+        {
+            @Override
+            public Object getTarget()
+            {
+                return target;
+            }
+
+            @Override
+            public Object getTimer()
+            {
+                return null;
+            }
+
+            @Override
+            public Method getMethod()
+            {
+                return method;
+            }
+
+            @Override
+            public Constructor<?> getConstructor()
+            {
+                return null;
+            }
+
+            @Override
+            public Object[] getParameters()
+            {
+                return new Object[0];
+            }
+
+            @Override
+            public void setParameters( Object[] params )
+            {
+            }
+
+            @Override
+            public Map<String, Object> getContextData()
+            {
+                return new HashMap<>();
+            }
+
+            @Override
+            public Object proceed()
+                    throws Exception
+            {
+                try
+                {
+                    return method.invoke( target );
+                }
+                catch ( InvocationTargetException e )
+                {
+                    throw (Exception) e.getCause();
+                }
+            }
+        };
+    }
+
+    private class StubHoneycombManager
+            extends HoneycombManager
+    {
+        private final AtomicLong now = new AtomicLong();
+
+        private final Map<String, Long> cumulative = new HashMap<>();
+
+        private Span span;
+
+        private boolean closed;
+
+        @Override
+        public Span startChildSpan( String spanName )
+        {
+            span = span();
+            span.markStart();
+            closed = false;
+            return span;
+        }
+
+        @Override
+        public Span getActiveSpan()
+        {
+            return span;
+        }
+
+        @Override
+        public void addCumulativeNanos( Span span, String name, long elapseNanos )
+        {
+            cumulative.put( name, elapseNanos );
+        }
+    }
+
+    @Measure
+    public static class MeasuredService
+    {
+        public String work()
+        {
+            return "done";
+        }
+
+        public String fail()
+                throws IOException
+        {
+            throw new IOException( "broken" );
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.sampling;
+
+import org.commonjava.o11yphant.honeycomb.config.TestHoneycombConfiguration;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveSamplerTest
+{
+    private long second = 1000;
+
+    @Test
+    public void rateFollowsObservedThroughput()
+    {
+        TestHoneycombConfiguration config = new TestHoneycombConfiguration();
+        AdaptiveSampler sampler = new AdaptiveSampler( config, null )
+        {
+            @Override
+            protected long currentSecond()
+            {
+                return second;
+            }
+        };
+
+        // 5/s is below the default target of 10/s, everything is kept
+        for ( int s = 0; s < 5; s++, second++ )
+        {
+            for ( int i = 0; i < 5; i++ )
+            {
+                assertThat( sampler.sample( "maven", UUID.randomUUID().toString() ), equalTo( 1 ) );
+            }
+        }
+        assertThat( sampler.getRate( "maven" ), equalTo( 1 ) );
+
+        // spike to 1000/s
+        int kept = 0;
+        for ( int s = 0; s < 30; s++, second++ )
+        {
+            for ( int i = 0; i < 1000; i++ )
+            {
+                if ( sampler.sample( "maven", UUID.randomUUID().toString() ) > 0 )
+                {
+                    kept++;
+                }
+            }
+        }
+        sampler.sample( "maven", "x" );
+        assertThat( sampler.getRate( "maven" ), equalTo( 100 ) );
+        // once the window has filled, sampled throughput should hover around the target
+        assertTrue( "kept: " + kept, kept < 30 * 1000 / 4 );
+
+        // other keys are independent
+        assertThat( sampler.sample( "npm", "y" ), equalTo( 1 ) );
+    }
+
+    @Test
+    public void idleSecondsCountTowardsThroughput()
+    {
+        AdaptiveSampler sampler = new AdaptiveSampler( new TestHoneycombConfiguration(), null )
+        {
+            @Override
+            protected long currentSecond()
+            {
+                return second;
+            }
+        };
+
+        for ( int i = 0; i < 300; i++ )
+        {
+            sampler.sample( "maven", UUID.randomUUID().toString() );
+        }
+
+        // one burst of 300 followed by nine idle seconds averages 30/s, three times the default target
+        second += 10;
+        sampler.sample( "maven", "x" );
+        assertThat( sampler.getRate( "maven" ), equalTo( 3 ) );
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.sampling;
+
+import io.honeycomb.libhoney.eventdata.ResolvedEvent;
+import io.honeycomb.libhoney.responses.ResponseObservable;
+import io.honeycomb.libhoney.transport.Transport;
+import io.honeycomb.libhoney.transport.batch.impl.SystemClockProvider;
+import org.commonjava.o11yphant.honeycomb.config.TestHoneycombConfiguration;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.DURATION_FIELD;
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.PARENT_ID_FIELD;
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.SPAN_ID_FIELD;
+import static io.honeycomb.beeline.tracing.utils.TraceFieldConstants.TRACE_ID_FIELD;
+import static org.commonjava.o11yphant.metrics.RequestContextHelper.HTTP_STATUS;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class TailSamplingTransportTest
+{
+    private final List<ResolvedEvent> sent = new ArrayList<>();
+
+    private boolean closed;
+
+    private final Transport capture = new Transport()
+    {
+        @Override
+        public boolean submit( ResolvedEvent event )
+        {
+            sent.add( event );
+            return true;
+        }
+
+        @Override
+        public ResponseObservable getResponseObservable()
+        {
+            return new ResponseObservable();
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+        }
+    };
+
+    @Test
+    public void keepsSlowAndFailedTracesAndSamplesTheRest()
+    {
+        TestHoneycombConfiguration config = new TestHoneycombConfiguration();
+        config.setBaseSampleRate( 1000000 );
+        TailSamplingTransport transport = new TailSamplingTransport( capture, config )
+        {
+            @Override
+            protected boolean keepSampled( String trace, int rate )
+            {
+                return false;
+            }
+        };
+
+        // slow
+        transport.submit( span( "t1", "c1", "r1", 5, null ) );
+        assertThat( sent.size(), equalTo( 0 ) );
+        transport.submit( span( "t1", "r1", null, 1500, null ) );
+        assertThat( sent.size(), equalTo( 2 ) );
+
+        // failed child
+        transport.submit( span( "t2", "c2", "r2", 5, 503 ) );
+        transport.submit( span( "t2", "r2", null, 10, 200 ) );
+        assertThat( sent.size(), equalTo( 4 ) );
+        assertThat( sent.get( 3 ).getSampleRate(), equalTo( 1 ) );
+
+        // fast and healthy, so dropped; late spans follow the decision
+        transport.submit( span( "t3", "c3", "r3", 5, 200 ) );
+        transport.submit( span( "t3", "r3", null, 10, 200 ) );
+        transport.submit( span( "t3", "c4", "r3", 5, 200 ) );
+        assertThat( sent.size(), equalTo( 4 ) );
+        assertThat( transport.getDroppedCount(), equalTo( 3L ) );
+        assertThat( transport.getPendingTraces(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void adjustsSampleRateOfSampledTraces()
+    {
+        TestHoneycombConfiguration config = new TestHoneycombConfiguration();
+        config.setBaseSampleRate( 10 );
+        TailSamplingTransport transport = new TailSamplingTransport( capture, config )
+        {
+            @Override
+            protected boolean keepSampled( String trace, int rate )
+            {
+                return true;
+            }
+        };
+
+        transport.submit( span( "t4", "c4", "r4", 5, 200 ) );
+        transport.submit( span( "t4", "r4", null, 10, 200 ) );
+        assertThat( sent.size(), equalTo( 2 ) );
+        assertThat( sent.get( 0 ).getSampleRate(), equalTo( 10 ) );
+        assertThat( sent.get( 1 ).getSampleRate(), equalTo( 10 ) );
+    }
+
+    @Test
+    public void markedLocalRootDecidesAndEvictionsAreForwarded()
+    {
+        TestHoneycombConfiguration config = new TestHoneycombConfiguration()
+        {
+            @Override
+            public int getTailSamplingMaxTraces()
+            {
+                return 1;
+            }
+        };
+        config.setBaseSampleRate( 1000000 );
+        TailSamplingTransport transport = new TailSamplingTransport( capture, config );
+
+        // root continuing a remote trace
+        transport.markRoot( "r5" );
+        transport.submit( span( "t5", "c5", "r5", 5, 503 ) );
+        transport.submit( span( "t5", "r5", "remote", 10, 200 ) );
+        assertThat( sent.size(), equalTo( 2 ) );
+
+        // t6 is evicted by t7 and decided without its root; its failed span keeps it
+        transport.submit( span( "t6", "c6", "r6", 5, 500 ) );
+        transport.submit( span( "t7", "c7", "r7", 5, 200 ) );
+        assertThat( sent.size(), equalTo( 3 ) );
+        assertThat( transport.getPendingTraces(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void closeForwardsPendingTracesWithoutRoots()
+                    throws Exception
+    {
+        TestHoneycombConfiguration config = new TestHoneycombConfiguration();
+        config.setBaseSampleRate( 1000000 );
+        TailSamplingTransport transport = new TailSamplingTransport( capture, config )
+        {
+            @Override
+            protected boolean keepSampled( String trace, int rate )
+            {
+                return false;
+            }
+        };
+
+        // t8 is kept for its failed span, t9 is healthy and dropped
+        transport.submit( span( "t8", "c8", "r8", 5, 500 ) );
+        transport.submit( span( "t8", "d8", "r8", 5, 200 ) );
+        transport.submit( span( "t9", "c9", "r9", 5, 200 ) );
+        assertThat( sent.size(), equalTo( 0 ) );
+
+        transport.close();
+        assertThat( sent.size(), equalTo( 2 ) );
+        assertThat( sent.get( 0 ).getFields().get( TRACE_ID_FIELD ), equalTo( "t8" ) );
+        assertThat( sent.get( 1 ).getFields().get( TRACE_ID_FIELD ), equalTo( "t8" ) );
+        assertThat( transport.getDroppedCount(), equalTo( 1L ) );
+        assertThat( transport.getPendingTraces(), equalTo( 0 ) );
+        assertThat( closed, equalTo( true ) );
+    }
+
+    private ResolvedEvent span( String trace, String spanId, String parent, long duration, Integer status )
+    {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put( TRACE_ID_FIELD, trace );
+        fields.put( SPAN_ID_FIELD, spanId );
+        if ( parent != null )
+        {
+            fields.put( PARENT_ID_FIELD, parent );
+        }
+        fields.put( DURATION_FIELD, duration );
+        if ( status != null )
+        {
+            fields.put( HTTP_STATUS, String.valueOf( status ) );
+        }
+        return new ResolvedEvent( URI.create( "http://localhost" ), "key", "dataset", 1, System.currentTimeMillis(),
+                                  fields, new HashMap<>(), SystemClockProvider.getInstance() );
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.honeycomb.transport;
+
+import com.sun.net.httpserver.HttpServer;
+import io.honeycomb.libhoney.eventdata.ResolvedEvent;
+import io.honeycomb.libhoney.transport.batch.impl.SystemClockProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class BatchingEventTransportTest
+{
+    private HttpServer server;
+
+    private final List<String> bodies = new CopyOnWriteArrayList<>();
+
+    private final List<String> paths = new CopyOnWriteArrayList<>();
+
+    private volatile CountDownLatch block = new CountDownLatch( 0 );
+
+    @Before
+    public void start()
+                    throws IOException
+    {
+        server = HttpServer.create( new InetSocketAddress( "localhost", 0 ), 0 );
+        server.createContext( "/1/batch/", exchange -> {
+            try
+            {
+                block.await( 10, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            paths.add( exchange.getRequestURI().getPath() + " " + exchange.getRequestHeaders()
+                                                                          .getFirst( "X-Honeycomb-Team" ) );
+            InputStream in = exchange.getRequestBody();
+            if ( "gzip".equals( exchange.getRequestHeaders().getFirst( "Content-Encoding" ) ) )
+            {
+                in = new GZIPInputStream( in );
+            }
+            bodies.add( read( in ) );
+
+            byte[] response = "[{\"status\":202}]".getBytes();
+            exchange.sendResponseHeaders( 200, response.length );
+            exchange.getResponseBody().write( response );
+            exchange.close();
+        } );
+        server.start();
+    }
+
+    @After
+    public void stop()
+    {
+        block.countDown();
+        server.stop( 0 );
+    }
+
+    @Test
+    public void sendsGzippedBatches()
+                    throws Exception
+    {
+        BatchingEventTransport transport = new BatchingEventTransport( 100, 10, 50, true, 5000 );
+        for ( int i = 0; i < 25; i++ )
+        {
+            assertTrue( transport.submit( event( "e" + i ) ) );
+        }
+        transport.close();
+
+        assertThat( transport.getSentCount(), equalTo( 25L ) );
+        assertThat( transport.getDroppedCount(), equalTo( 0L ) );
+        assertTrue( "batches: " + bodies.size(), bodies.size() >= 3 );
+        assertThat( paths.get( 0 ), equalTo( "/1/batch/test-dataset test-key" ) );
+        assertThat( String.join( "", bodies ), containsString( "\"name\":\"e24\"" ) );
+    }
+
+    @Test
+    public void dropsInsteadOfBlockingWhenBackendIsSlow()
+                    throws Exception
+    {
+        block = new CountDownLatch( 1 );
+        BatchingEventTransport transport = new BatchingEventTransport( 5, 1, 10, false, 5000 );
+
+        long start = System.nanoTime();
+        for ( int i = 0; i < 100; i++ )
+        {
+            transport.submit( event( "e" + i ) );
+        }
+        assertTrue( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) < 1000 );
+        assertTrue( "dropped: " + transport.getDroppedCount(), transport.getDroppedCount() >= 90 );
+
+        block.countDown();
+        transport.close();
+        assertThat( transport.getSentCount() + transport.getDroppedCount(), equalTo( 100L ) );
+    }
+
+    private ResolvedEvent event( String name )
+    {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put( "name", name );
+        return new ResolvedEvent( URI.create( "http://localhost:" + server.getAddress().getPort() ), "test-key",
+                                  "test-dataset", 1, System.currentTimeMillis(), fields, Collections.emptyMap(),
+                                  SystemClockProvider.getInstance() );
+    }
+
+    private static String read( InputStream in )
+                    throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int read;
+        while ( ( read = in.read( buf ) ) >= 0 )
+        {
+            out.write( buf, 0, read );
+        }
+        return out.toString( "UTF-8" );
+    }
+}
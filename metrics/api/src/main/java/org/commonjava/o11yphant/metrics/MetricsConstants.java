@@ -35,6 +35,12 @@ public class MetricsConstants
 
     public static final String MAX_TIME_MS = "max-time-ms";
 
+    public static final String P50_TIME_MS = "p50-time-ms";
+
+    public static final String P90_TIME_MS = "p90-time-ms";
+
+    public static final String P99_TIME_MS = "p99-time-ms";
+
     public static final double NANOS_PER_MILLISECOND = 1E6;
 
 }
@@ -15,6 +15,7 @@
  */
 package org.commonjava.o11yphant.metrics;
 
+import org.commonjava.o11yphant.metrics.api.Clock;
 import org.commonjava.o11yphant.metrics.api.Gauge;
 import org.commonjava.o11yphant.metrics.api.Meter;
 import org.commonjava.o11yphant.metrics.api.MetricRegistry;
@@ -47,4 +48,20 @@ public interface MetricsManager
     void addGauges( Class<?> className, String method, Map<String, Gauge<Integer>> gauges );
 
     MetricRegistry getMetricRegistry();
+
+    /**
+     * The clock timings recorded by this manager are read from.
+     */
+    default Clock getClock()
+    {
+        return Clock.SYSTEM;
+    }
+
+    /**
+     * The clock the named timer or meter is read from, which may be coarser than {@link #getClock()} for hot metrics.
+     */
+    default Clock getClock( String name )
+    {
+        return getClock();
+    }
 }
@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.api;
+
+/**
+ * Source of time readings for timers and meters. Implementations trade precision for cost, so hot code paths can pick
+ * a clock that matches the resolution they actually need.
+ */
+public interface Clock
+{
+    /**
+     * Reads {@link System#nanoTime()} and {@link System#currentTimeMillis()} on every call.
+     */
+    Clock SYSTEM = new Clock()
+    {
+        @Override
+        public long getTick()
+        {
+            return System.nanoTime();
+        }
+
+        @Override
+        public long getTime()
+        {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * Monotonic reading in nanoseconds, only meaningful relative to another reading of the same clock.
+     */
+    long getTick();
+
+    /**
+     * Wall-clock time in milliseconds since the epoch.
+     */
+    long getTime();
+}
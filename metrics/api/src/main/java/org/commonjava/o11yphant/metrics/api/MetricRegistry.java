@@ -31,7 +31,25 @@ public interface MetricRegistry
 
     Meter meter( String name );
 
+    /**
+     * Get or create a meter whose rates tick with the given clock. The clock only applies if the meter is created.
+     * Registries without clock support return {@link #meter(String)}.
+     */
+    default Meter meter( String name, Clock clock )
+    {
+        return meter( name );
+    }
+
     Timer timer( String name );
 
+    /**
+     * Get a timer whose contexts measure with the given clock. If the timer is created, its rates tick with it too.
+     * Registries without clock support return {@link #timer(String)}.
+     */
+    default Timer timer( String name, Clock clock )
+    {
+        return timer( name );
+    }
+
     <T> Gauge<T> gauge( String name, Gauge<T> o );
 }
@@ -15,6 +15,9 @@
  */
 package org.commonjava.o11yphant.metrics.conf;
 
+import java.util.Collections;
+import java.util.Set;
+
 public interface MetricsConfig
 {
     String REPORTER_GRAPHITE = "graphite";
@@ -36,4 +39,60 @@ public interface MetricsConfig
     ELKConfig getELKConfig();
 
     int getMeterRatio();
+
+    /**
+     * Time only one in this many calls of each timer, per thread. Counts and rates still cover every call.
+     * Values of 1 or less time every call.
+     */
+    default int getTimerSampleRatio()
+    {
+        return 1;
+    }
+
+    /**
+     * Resolution of the cached clock used for the timers and meters named in {@link #getCoarseClockMetricPrefixes()},
+     * in milliseconds. Values of 0 or less read the system clock on every call.
+     */
+    default int getClockResolutionMillis()
+    {
+        return 0;
+    }
+
+    /**
+     * Name prefixes of hot timers and meters which may trade precision for a cheaper clock read, see
+     * {@link #getClockResolutionMillis()}. All other metrics keep reading the system clock, so short calls are not
+     * rounded to zero.
+     */
+    default Set<String> getCoarseClockMetricPrefixes()
+    {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Name prefixes of hot timers and meters which should aggregate updates per thread, and only fold them into the
+     * shared metric every {@link #getAggregationIntervalMillis()} or when read.
+     */
+    default Set<String> getAggregatedMetricPrefixes()
+    {
+        return Collections.emptySet();
+    }
+
+    default int getAggregationIntervalMillis()
+    {
+        return 1000;
+    }
+
+    /**
+     * Number of timers whose histograms are kept off-heap, in a shared arena of about 2KiB per timer allocated
+     * up front. Timers created once the arena is full use heap reservoirs. Values of 0 or less disable the arena.
+     * <p>
+     * Unlike the default exponentially decaying reservoir, an off-heap histogram never decays: its percentiles, mean,
+     * min and max cover every update since the timer was created, at bucket precision. A long-running process will
+     * therefore be slow to show a latency change in them; the rates are unaffected. Enable this only for timers whose
+     * distribution is watched through the reporter's deltas or rates rather than through recent percentiles.
+     */
+    default int getOffHeapHistogramSlots()
+    {
+        return 0;
+    }
 }
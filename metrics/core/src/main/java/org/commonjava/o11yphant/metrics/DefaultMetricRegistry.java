@@ -16,7 +16,9 @@
 package org.commonjava.o11yphant.metrics;
 
 import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
 import com.codahale.metrics.health.HealthCheckRegistry;
+import org.commonjava.o11yphant.metrics.api.Clock;
 import org.commonjava.o11yphant.metrics.api.Gauge;
 import org.commonjava.o11yphant.metrics.api.healthcheck.HealthCheck;
 import org.commonjava.o11yphant.metrics.api.Meter;
@@ -24,12 +26,21 @@ import org.commonjava.o11yphant.metrics.api.Metric;
 import org.commonjava.o11yphant.metrics.api.MetricRegistry;
 import org.commonjava.o11yphant.metrics.api.MetricSet;
 import org.commonjava.o11yphant.metrics.api.Timer;
+import org.commonjava.o11yphant.metrics.impl.AggregatingMeter;
+import org.commonjava.o11yphant.metrics.impl.AggregatingTimer;
+import org.commonjava.o11yphant.metrics.impl.MetricAggregator;
 import org.commonjava.o11yphant.metrics.impl.O11Meter;
 import org.commonjava.o11yphant.metrics.impl.O11Timer;
+import org.commonjava.o11yphant.metrics.impl.OffHeapHistogramArena;
+import org.commonjava.o11yphant.metrics.impl.OffHeapTimer;
+import org.commonjava.o11yphant.metrics.impl.SampledTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -41,6 +52,8 @@ import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
 public class DefaultMetricRegistry
                 implements MetricRegistry
 {
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
     /**
      * This only contains metric registered via {@link #register(String, Metric)} and {@link #register(String, MetricSet)}
      */
@@ -50,6 +63,14 @@ public class DefaultMetricRegistry
 
     private final HealthCheckRegistry healthCheckRegistry;
 
+    private volatile int timerSampleRatio = 1;
+
+    private volatile Collection<String> aggregatedPrefixes = Collections.emptySet();
+
+    private volatile MetricAggregator aggregator;
+
+    private volatile OffHeapHistogramArena arena;
+
     @Inject
     public DefaultMetricRegistry( com.codahale.metrics.MetricRegistry registry,
                                   HealthCheckRegistry healthCheckRegistry )
@@ -128,13 +149,94 @@ public class DefaultMetricRegistry
     @Override
     public Meter meter( String name )
     {
-        return new O11Meter( registry.meter( name ) );
+        return meter( name, Clock.SYSTEM );
+    }
+
+    @Override
+    public Meter meter( String name, Clock clock )
+    {
+        return new O11Meter( registry.meter( name, () -> {
+            MetricAggregator aggregator = aggregatorFor( name );
+            if ( aggregator != null )
+            {
+                return aggregator.register( new AggregatingMeter( toCodahale( clock ) ) );
+            }
+            return new com.codahale.metrics.Meter( toCodahale( clock ) );
+        } ) );
     }
 
     @Override
     public Timer timer( String name )
     {
-        return new O11Timer( registry.timer( name ) );
+        return timer( name, Clock.SYSTEM );
+    }
+
+    @Override
+    public Timer timer( String name, Clock clock )
+    {
+        int ratio = timerSampleRatio;
+        com.codahale.metrics.Timer timer = registry.timer( name, () -> {
+            MetricAggregator aggregator = aggregatorFor( name );
+            if ( aggregator != null )
+            {
+                return aggregator.register(
+                                new AggregatingTimer( new ExponentiallyDecayingReservoir(), toCodahale( clock ) ) );
+            }
+            if ( ratio > 1 )
+            {
+                return new SampledTimer( ratio, new ExponentiallyDecayingReservoir(), toCodahale( clock ) );
+            }
+            OffHeapHistogramArena arena = this.arena;
+            int slot = arena == null ? -1 : arena.allocate();
+            if ( slot >= 0 )
+            {
+                return new OffHeapTimer( arena, slot, toCodahale( clock ) );
+            }
+            return new com.codahale.metrics.Timer( new ExponentiallyDecayingReservoir(), toCodahale( clock ) );
+        } );
+        return new O11Timer( timer, clock );
+    }
+
+    private MetricAggregator aggregatorFor( String name )
+    {
+        MetricAggregator current = aggregator;
+        if ( current != null && aggregatedPrefixes.stream().anyMatch( name::startsWith ) )
+        {
+            return current;
+        }
+        return null;
+    }
+
+    private static com.codahale.metrics.Clock toCodahale( Clock clock )
+    {
+        if ( clock == Clock.SYSTEM )
+        {
+            return com.codahale.metrics.Clock.defaultClock();
+        }
+
+        return new com.codahale.metrics.Clock()
+        {
+            @Override
+            public long getTick()
+            {
+                return clock.getTick();
+            }
+
+            @Override
+            public long getTime()
+            {
+                return clock.getTime();
+            }
+        };
+    }
+
+    /**
+     * Time only one in <code>ratio</code> calls of the timers created from now on, see {@link SampledTimer}. Timers
+     * which already exist under a name keep their mode.
+     */
+    public void setTimerSampleRatio( int ratio )
+    {
+        this.timerSampleRatio = Math.max( ratio, 1 );
     }
 
     @Override
@@ -144,6 +246,54 @@ public class DefaultMetricRegistry
         return o;
     }
 
+    /**
+     * Stop merging aggregated metrics and shut the aggregation thread down. Metrics created from now on are not
+     * aggregated.
+     */
+    public void stopAggregation()
+    {
+        setAggregation( null, 0 );
+    }
+
+    /**
+     * Aggregate updates per thread for the timers and meters created from now on whose names start with one of the
+     * given prefixes, see {@link AggregatingTimer}. Buffers are merged every <code>intervalMillis</code>.
+     */
+    public synchronized void setAggregation( Collection<String> prefixes, long intervalMillis )
+    {
+        if ( aggregator != null )
+        {
+            aggregator.close();
+            aggregator = null;
+        }
+
+        aggregatedPrefixes = prefixes == null ? Collections.emptySet() : prefixes;
+        if ( !aggregatedPrefixes.isEmpty() )
+        {
+            aggregator = new MetricAggregator( intervalMillis, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    /**
+     * Keep the histograms of up to <code>slots</code> timers created from now on in a shared off-heap arena, see
+     * {@link OffHeapTimer}. Aggregated and sampled timers keep their heap reservoirs.
+     */
+    public void setOffHeapHistograms( int slots )
+    {
+        if ( slots <= 0 )
+        {
+            arena = null;
+        }
+        else if ( OffHeapHistogramArena.isSupported() )
+        {
+            arena = new OffHeapHistogramArena( slots );
+        }
+        else
+        {
+            logger.warn( "Off-heap histograms are not supported on this JVM, using heap reservoirs" );
+        }
+    }
+
     protected com.codahale.metrics.MetricRegistry getRegistry()
     {
         return registry;
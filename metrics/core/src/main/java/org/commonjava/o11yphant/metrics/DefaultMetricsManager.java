@@ -21,6 +21,7 @@ import org.commonjava.o11yphant.metrics.annotation.MetricWrapper;
 import org.commonjava.o11yphant.metrics.annotation.MetricWrapperEnd;
 import org.commonjava.o11yphant.metrics.annotation.MetricWrapperNamed;
 import org.commonjava.o11yphant.metrics.annotation.MetricWrapperStart;
+import org.commonjava.o11yphant.metrics.api.Clock;
 import org.commonjava.o11yphant.metrics.api.Gauge;
 import org.commonjava.o11yphant.metrics.api.healthcheck.HealthCheck;
 import org.commonjava.o11yphant.metrics.api.Meter;
@@ -29,21 +30,25 @@ import org.commonjava.o11yphant.metrics.api.Timer;
 import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
 import org.commonjava.o11yphant.metrics.api.healthcheck.CompoundHealthCheck;
 import org.commonjava.o11yphant.metrics.healthcheck.impl.AbstractHealthCheck;
+import org.commonjava.o11yphant.metrics.impl.CoarseClock;
+import org.commonjava.o11yphant.metrics.instrument.MeasureHandle;
 import org.commonjava.o11yphant.metrics.jvm.JVMInstrumentation;
 import org.commonjava.o11yphant.metrics.util.NameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import static org.commonjava.o11yphant.metrics.MetricsConstants.CUMULATIVE_COUNT;
@@ -53,8 +58,10 @@ import static org.commonjava.o11yphant.metrics.MetricsConstants.EXCEPTION;
 import static org.commonjava.o11yphant.metrics.MetricsConstants.NANOS_PER_MILLISECOND;
 import static org.commonjava.o11yphant.metrics.MetricsConstants.SKIP_METRIC;
 import static org.commonjava.o11yphant.metrics.MetricsConstants.TIMER;
-import static org.commonjava.o11yphant.metrics.util.NameUtils.getDefaultName;
 import static org.commonjava.o11yphant.metrics.RequestContextHelper.IS_METERED;
+import static org.commonjava.o11yphant.metrics.util.AsyncUtils.isAsync;
+import static org.commonjava.o11yphant.metrics.util.AsyncUtils.onCompletion;
+import static org.commonjava.o11yphant.metrics.util.NameUtils.getDefaultName;
 import static org.commonjava.o11yphant.metrics.util.HealthCheckUtils.wrap;
 import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
 
@@ -88,6 +95,12 @@ public class DefaultMetricsManager
 
     private Random random = new Random();
 
+    private volatile CoarseClock coarseClock;
+
+    private Set<String> coarseClockPrefixes;
+
+    private final Map<String, Boolean> coarseClockNames = new ConcurrentHashMap<>();
+
     public DefaultMetricsManager()
     {
     }
@@ -98,6 +111,28 @@ public class DefaultMetricsManager
         this.metricRegistry = metricRegistry;
     }
 
+    /**
+     * Stop the coarse clock's ticker thread and the registry's aggregation executor, and detach the
+     * {@link MeasureHandle}s from this manager, so none of them outlive (and pin) the deployment.
+     */
+    @PreDestroy
+    public void stop()
+    {
+        MeasureHandle.uninstall( this );
+
+        CoarseClock coarse = coarseClock;
+        if ( coarse != null )
+        {
+            coarseClock = null;
+            coarse.close();
+        }
+
+        if ( metricRegistry instanceof DefaultMetricRegistry )
+        {
+            ( (DefaultMetricRegistry) metricRegistry ).stopAggregation();
+        }
+    }
+
     @PostConstruct
     public void init()
     {
@@ -111,6 +146,26 @@ public class DefaultMetricsManager
 
         jvmInstrumentation.registerJvmMetric( config.getNodePrefix() );
 
+        Set<String> prefixes = config.getCoarseClockMetricPrefixes();
+        if ( config.getClockResolutionMillis() > 0 && prefixes != null && !prefixes.isEmpty() )
+        {
+            coarseClockPrefixes = prefixes;
+            coarseClock = new CoarseClock( config.getClockResolutionMillis(), TimeUnit.MILLISECONDS );
+            logger.info( "Using coarse metrics clock for {}, resolution: {}ms", prefixes,
+                         config.getClockResolutionMillis() );
+        }
+
+        if ( metricRegistry instanceof DefaultMetricRegistry )
+        {
+            DefaultMetricRegistry registry = (DefaultMetricRegistry) metricRegistry;
+            registry.setTimerSampleRatio( config.getTimerSampleRatio() );
+            registry.setAggregation( config.getAggregatedMetricPrefixes(), config.getAggregationIntervalMillis() );
+            registry.setOffHeapHistograms( config.getOffHeapHistogramSlots() );
+        }
+
+        // Statically instrumented @Measure methods (generated wrappers, agent) report through this manager
+        MeasureHandle.install( this, config );
+
         // Health checks
         healthChecks.forEach( hc -> {
             logger.info( "Registering health check: {}", hc.getName() );
@@ -157,7 +212,7 @@ public class DefaultMetricsManager
 
     private Timer.Context startTimerInternal( String name )
     {
-        Timer.Context tctx = metricRegistry.timer( name ).time();
+        Timer.Context tctx = metricRegistry.timer( name, getClock( name ) ).time();
         ThreadContext ctx = ThreadContext.getContext( true );
         ctx.put( TIMER + name, tctx );
         return tctx;
@@ -188,7 +243,7 @@ public class DefaultMetricsManager
 
     public Meter getMeter( String name )
     {
-        return metricRegistry.meter( name );
+        return metricRegistry.meter( name, getClock( name ) );
     }
 
     public void accumulate( String name, final double elapsed )
@@ -230,35 +285,61 @@ public class DefaultMetricsManager
 
         String timerName = name( metricName, TIMER );
         String errorName = name( name, EXCEPTION );
-        String eClassName = null;
-
-        Timer.Context timer = startTimerInternal( timerName );
-        logger.trace( "START: {} ({})", metricName, timer );
+        logger.trace( "START: {}", metricName );
 
-        long start = System.nanoTime();
+        // one clock reading on each side feeds the timer as well as the cumulative timings
+        Clock clock = getClock( timerName );
+        long start = clock.getTick();
+        boolean async = false;
         try
         {
             mark( Arrays.asList( startName ) );
 
-            return method.get();
+            T result = method.get();
+            if ( isAsync( result ) )
+            {
+                // measure until the returned stage completes, not until it's created
+                async = true;
+                onCompletion( result, error -> {
+                    if ( error != null )
+                    {
+                        markError( name, errorName, error );
+                    }
+                    finishStandardMetrics( metricName, timerName, clock, start );
+                } );
+            }
+            return result;
         }
         catch ( Throwable e )
         {
-            eClassName = name( name, EXCEPTION, e.getClass().getSimpleName() );
-            mark( Arrays.asList( errorName, eClassName ) );
+            markError( name, errorName, e );
 
             throw e;
         }
         finally
         {
-            stopTimers( Collections.singletonMap( timerName, timer ) );
-            mark( Arrays.asList( metricName ) );
-
-            double elapsed = ( System.nanoTime() - start ) / NANOS_PER_MILLISECOND;
-            accumulate( metricName, elapsed );
+            if ( !async )
+            {
+                finishStandardMetrics( metricName, timerName, clock, start );
+            }
         }
     }
 
+    private void markError( String name, String errorName, Throwable e )
+    {
+        String eClassName = name( name, EXCEPTION, e.getClass().getSimpleName() );
+        mark( Arrays.asList( errorName, eClassName ) );
+    }
+
+    private void finishStandardMetrics( String metricName, String timerName, Clock clock, long start )
+    {
+        long elapsed = clock.getTick() - start;
+        metricRegistry.timer( timerName, clock ).update( elapsed, TimeUnit.NANOSECONDS );
+        mark( Arrays.asList( metricName ) );
+
+        accumulate( metricName, elapsed / NANOS_PER_MILLISECOND );
+    }
+
     public boolean checkMetered()
     {
         return checkMetered( null );
@@ -271,7 +352,19 @@ public class DefaultMetricsManager
             ctx = ThreadContext.getContext( false );
         }
 
-        return ( ctx == null || ( (Boolean) ctx.getOrDefault( IS_METERED, Boolean.TRUE ) ) );
+        if ( ctx == null )
+        {
+            return true;
+        }
+
+        RequestContext requestContext = RequestContext.getRequestContext( ctx, false );
+        if ( requestContext != null && !requestContext.isMetered() )
+        {
+            return false;
+        }
+
+        // callers may still put the flag straight into the ThreadContext
+        return !Boolean.FALSE.equals( ctx.get( IS_METERED ) );
     }
 
     public void stopTimers( final Map<String, Timer.Context> timers )
@@ -303,6 +396,24 @@ public class DefaultMetricsManager
         return metricRegistry;
     }
 
+    /**
+     * The coarse clock for names matching {@link MetricsConfig#getCoarseClockMetricPrefixes()}, if one is configured,
+     * and the system clock for everything else.
+     */
+    @Override
+    public Clock getClock( String name )
+    {
+        CoarseClock coarse = coarseClock;
+        if ( coarse == null )
+        {
+            return Clock.SYSTEM;
+        }
+
+        boolean matches = coarseClockNames.computeIfAbsent( name, n -> coarseClockPrefixes.stream()
+                                                                                           .anyMatch( n::startsWith ) );
+        return matches ? coarse : Clock.SYSTEM;
+    }
+
     public MetricsConfig getConfig()
     {
         return config;
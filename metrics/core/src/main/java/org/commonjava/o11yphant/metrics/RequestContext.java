@@ -0,0 +1,294 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics;
+
+import org.commonjava.cdi.util.weft.ThreadContext;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+/**
+ * Typed holder for the well-known request values declared in {@link RequestContextHelper}. Each key gets a fixed slot,
+ * so readers pay an array access instead of a string-keyed map lookup. Values are kept exactly as they were set;
+ * numeric slots such as {@link RequestContextHelper#END_NANOS} can be read through {@link #getLong(Slot, long)}
+ * without caring about the boxed type.
+ *
+ * One instance is stored in the weft {@link ThreadContext} under {@link #REQUEST_CONTEXT}, so it follows the
+ * ThreadContext to child threads and is discarded with it. Since the ThreadContext is shared by reference with those
+ * threads, the slots are an atomic array and may be read and written from any of them. Keys that don't have a slot
+ * stay in the ThreadContext.
+ */
+public final class RequestContext
+{
+    public static final String REQUEST_CONTEXT = "o11yphant-request-context";
+
+    public enum Slot
+    {
+        TRACE_ID( RequestContextHelper.TRACE_ID, true, false ),
+        REQUEST_PARENT_SPAN( RequestContextHelper.REQUEST_PARENT_SPAN, true, false ),
+        INTERNAL_ID( RequestContextHelper.INTERNAL_ID, true, false ),
+        COMPONENT_ID( RequestContextHelper.COMPONENT_ID, true, false ),
+        CONTENT_TRACKING_ID( RequestContextHelper.CONTENT_TRACKING_ID, true, false ),
+        ACCESS_CHANNEL( RequestContextHelper.ACCESS_CHANNEL, true, false ),
+        CLIENT_ADDR( RequestContextHelper.CLIENT_ADDR, true, false ),
+        HTTP_METHOD( RequestContextHelper.HTTP_METHOD, true, false ),
+        HTTP_REQUEST_URI( RequestContextHelper.HTTP_REQUEST_URI, true, false ),
+        HTTP_STATUS( RequestContextHelper.HTTP_STATUS, true, false ),
+        PATH( RequestContextHelper.PATH, true, false ),
+        REST_CLASS_PATH( RequestContextHelper.REST_CLASS_PATH, true, false ),
+        REST_METHOD_PATH( RequestContextHelper.REST_METHOD_PATH, true, false ),
+        REST_ENDPOINT_PATH( RequestContextHelper.REST_ENDPOINT_PATH, true, false ),
+        REST_CLASS( RequestContextHelper.REST_CLASS, true, false ),
+        PACKAGE_TYPE( RequestContextHelper.PACKAGE_TYPE, true, false ),
+        METADATA_CONTENT( RequestContextHelper.METADATA_CONTENT, true, false ),
+        CONTENT_ENTRY_POINT( RequestContextHelper.CONTENT_ENTRY_POINT, true, false ),
+        REQUEST_PHASE( RequestContextHelper.REQUEST_PHASE, true, false ),
+        REQUEST_LATENCY_NS( RequestContextHelper.REQUEST_LATENCY_NS, true, true ),
+        REQUEST_LATENCY_MILLIS( RequestContextHelper.REQUEST_LATENCY_MILLIS, false, false ),
+        END_NANOS( RequestContextHelper.END_NANOS, false, true ),
+        RAW_IO_WRITE_NANOS( RequestContextHelper.RAW_IO_WRITE_NANOS, false, true ),
+        RAW_IO_READ_NANOS( RequestContextHelper.RAW_IO_READ_NANOS, false, true ),
+        FORCE_METERED( RequestContextHelper.FORCE_METERED, false, false ),
+        IS_METERED( RequestContextHelper.IS_METERED, false, false ),
+        CACHED_FUNCTIONS( TrafficClassifier.CACHED_FUNCTIONS, false, false );
+
+        private final String key;
+
+        private final boolean mdc;
+
+        private final boolean numeric;
+
+        Slot( String key, boolean mdc, boolean numeric )
+        {
+            this.key = key;
+            this.mdc = mdc;
+            this.numeric = numeric;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+
+        /**
+         * @return whether this value belongs in the logging MDC
+         */
+        public boolean isMdc()
+        {
+            return mdc;
+        }
+
+        public boolean isNumeric()
+        {
+            return numeric;
+        }
+    }
+
+    private static final Slot[] SLOTS = Slot.values();
+
+    private static final Map<String, Slot> SLOTS_BY_KEY = new HashMap<>();
+
+    static
+    {
+        for ( Slot slot : SLOTS )
+        {
+            SLOTS_BY_KEY.put( slot.key, slot );
+        }
+    }
+
+    private final AtomicReferenceArray<Object> values = new AtomicReferenceArray<>( SLOTS.length );
+
+    /**
+     * @return the slot for a well-known key, or null if the key is not one of them
+     */
+    public static Slot slotFor( String key )
+    {
+        return SLOTS_BY_KEY.get( key );
+    }
+
+    /**
+     * Get the request context for the current thread.
+     * @param create whether to create the request context (and the underlying ThreadContext) if missing
+     */
+    public static RequestContext getRequestContext( boolean create )
+    {
+        return getRequestContext( ThreadContext.getContext( create ), create );
+    }
+
+    public static RequestContext getRequestContext( ThreadContext ctx, boolean create )
+    {
+        if ( ctx == null )
+        {
+            return null;
+        }
+
+        if ( create )
+        {
+            return (RequestContext) ctx.computeIfAbsent( REQUEST_CONTEXT, k -> new RequestContext() );
+        }
+
+        return (RequestContext) ctx.get( REQUEST_CONTEXT );
+    }
+
+    public Object get( Slot slot )
+    {
+        return values.get( slot.ordinal() );
+    }
+
+    /**
+     * String-keyed read, for callers that don't know in advance whether a key has a slot.
+     * @return the value, or null if the key has no slot or the slot is empty
+     */
+    public Object get( String key )
+    {
+        Slot slot = slotFor( key );
+        return slot == null ? null : get( slot );
+    }
+
+    public boolean isSet( Slot slot )
+    {
+        return values.get( slot.ordinal() ) != null;
+    }
+
+    public void set( Slot slot, Object value )
+    {
+        values.set( slot.ordinal(), value );
+    }
+
+    /**
+     * Matches the first-write-wins behavior of {@link RequestContextHelper#setContext(String, Object)}, atomically.
+     * @return whether the value was set
+     */
+    public boolean setIfAbsent( Slot slot, Object value )
+    {
+        return values.compareAndSet( slot.ordinal(), null, value );
+    }
+
+    public void clear( Slot slot )
+    {
+        values.set( slot.ordinal(), null );
+    }
+
+    public long getLong( Slot slot, long defaultValue )
+    {
+        Object v = values.get( slot.ordinal() );
+        if ( v instanceof Number )
+        {
+            return ( (Number) v ).longValue();
+        }
+        return defaultValue;
+    }
+
+    public void setLong( Slot slot, long value )
+    {
+        values.set( slot.ordinal(), value );
+    }
+
+    public String getString( Slot slot )
+    {
+        Object v = get( slot );
+        return v == null ? null : String.valueOf( v );
+    }
+
+    public String getTraceId()
+    {
+        return getString( Slot.TRACE_ID );
+    }
+
+    /**
+     * @return the HTTP status as an int, or -1 if it is not set or can't be parsed
+     */
+    public int getHttpStatus()
+    {
+        Object v = values.get( Slot.HTTP_STATUS.ordinal() );
+        if ( v instanceof Number )
+        {
+            return ( (Number) v ).intValue();
+        }
+        else if ( v != null )
+        {
+            try
+            {
+                return Integer.parseInt( String.valueOf( v ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return false only if {@link RequestContextHelper#IS_METERED} was explicitly set to false
+     */
+    public boolean isMetered()
+    {
+        return !Boolean.FALSE.equals( values.get( Slot.IS_METERED.ordinal() ) );
+    }
+
+    public long getEndNanos( long defaultValue )
+    {
+        return getLong( Slot.END_NANOS, defaultValue );
+    }
+
+    /**
+     * Visit every populated slot, in slot order.
+     */
+    public void forEach( BiConsumer<String, Object> consumer )
+    {
+        for ( Slot slot : SLOTS )
+        {
+            if ( isSet( slot ) )
+            {
+                consumer.accept( slot.key, get( slot ) );
+            }
+        }
+    }
+
+    /**
+     * Format the MDC-scoped slots as strings. This is the only place the values get stringified, so it should only be
+     * called when a log event actually needs them.
+     */
+    public Map<String, String> getMdcValues()
+    {
+        Map<String, String> ret = new HashMap<>();
+        for ( Slot slot : SLOTS )
+        {
+            if ( slot.mdc && isSet( slot ) )
+            {
+                ret.put( slot.key, String.valueOf( get( slot ) ) );
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder( "RequestContext{" );
+        forEach( ( k, v ) -> {
+            if ( sb.length() > "RequestContext{".length() )
+            {
+                sb.append( ", " );
+            }
+            sb.append( k ).append( '=' ).append( v );
+        } );
+        return sb.append( '}' ).toString();
+    }
+}
@@ -25,16 +25,61 @@ import static java.lang.annotation.RetentionPolicy.SOURCE;
 
 /**
  * The scope annotations (Thread, Header, MDC) tell where the constant is available/used. The static methods are used
- * to manage contextual state in both MDC and ThreadContext.
+ * to manage contextual state in both MDC and ThreadContext. Well-known keys are kept in typed slots of the
+ * {@link RequestContext} (see {@link RequestContext.Slot}); any other key goes into the ThreadContext as-is.
+ *
+ * In lazy MDC mode (system property {@link #LAZY_MDC_PROPERTY}, or {@link #setLazyMdc(boolean)}), well-known keys are
+ * not copied into the MDC on write. Log patterns should then use
+ * {@link org.commonjava.o11yphant.metrics.logback.RequestContextConverter}, which formats them only when an event is
+ * rendered.
  */
 public class RequestContextHelper
 {
     public static final String HEADER_COMPONENT_ID = "component-id";
 
+    public static final String LAZY_MDC_PROPERTY = "o11yphant.mdc.lazy";
+
+    private static volatile boolean lazyMdc = Boolean.getBoolean( LAZY_MDC_PROPERTY );
+
+    public static void setLazyMdc( boolean lazy )
+    {
+        lazyMdc = lazy;
+    }
+
+    public static boolean isLazyMdc()
+    {
+        return lazyMdc;
+    }
+
     public static void setContext( final String key, final Object value )
     {
-        org.slf4j.MDC.put( key, String.valueOf( value ) );
-        ThreadContext.getContext( true ).computeIfAbsent( key, k -> value );
+        RequestContext.Slot slot = RequestContext.slotFor( key );
+        if ( slot != null )
+        {
+            if ( !lazyMdc )
+            {
+                org.slf4j.MDC.put( key, String.valueOf( value ) );
+            }
+            RequestContext.getRequestContext( true ).setIfAbsent( slot, value );
+        }
+        else
+        {
+            org.slf4j.MDC.put( key, String.valueOf( value ) );
+            ThreadContext.getContext( true ).computeIfAbsent( key, k -> value );
+        }
+    }
+
+    /**
+     * Copy the MDC-scoped request values into the MDC. Only needed in lazy MDC mode, right before handing log events
+     * to something that renders them on another thread (e.g. an AsyncAppender) or that reads the MDC directly.
+     */
+    public static void materializeMdc()
+    {
+        RequestContext requestContext = RequestContext.getRequestContext( false );
+        if ( requestContext != null )
+        {
+            requestContext.getMdcValues().forEach( org.slf4j.MDC::put );
+        }
     }
 
     public static <T> T getContext( final String key )
@@ -47,7 +92,22 @@ public class RequestContextHelper
         ThreadContext ctx = ThreadContext.getContext( false );
         if ( ctx != null )
         {
-            Object v = ctx.get( key );
+            Object v;
+            RequestContext.Slot slot = RequestContext.slotFor( key );
+            if ( slot != null )
+            {
+                RequestContext requestContext = RequestContext.getRequestContext( ctx, false );
+                v = requestContext == null ? null : requestContext.get( slot );
+                if ( v == null )
+                {
+                    // written straight into the ThreadContext, bypassing setContext()
+                    v = ctx.get( key );
+                }
+            }
+            else
+            {
+                v = ctx.get( key );
+            }
             return v == null ? defaultValue : (T) v;
         }
 
@@ -61,6 +121,17 @@ public class RequestContextHelper
         ThreadContext ctx = ThreadContext.getContext( false );
         if ( ctx != null )
         {
+            RequestContext.Slot slot = RequestContext.slotFor( key );
+            if ( slot != null )
+            {
+                RequestContext requestContext = RequestContext.getRequestContext( ctx, false );
+                if ( requestContext != null )
+                {
+                    requestContext.clear( slot );
+                }
+            }
+
+            // also drop any raw value, which getContext() would otherwise fall back to
             ctx.remove( key );
         }
     }
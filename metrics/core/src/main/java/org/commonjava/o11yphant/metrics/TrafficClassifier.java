@@ -16,22 +16,86 @@
 package org.commonjava.o11yphant.metrics;
 
 import org.commonjava.cdi.util.weft.ThreadContext;
+import org.commonjava.o11yphant.metrics.api.Gauge;
+import org.commonjava.o11yphant.metrics.api.Meter;
+import org.commonjava.o11yphant.metrics.api.Metric;
+import org.commonjava.o11yphant.metrics.api.MetricSet;
+import org.commonjava.o11yphant.metrics.impl.O11Meter;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableList;
 
+/**
+ * Classifies requests into the functions tracked by the golden signals metrics. Results are cached in the current
+ * ThreadContext for the rest of the request. Subclasses can also enable a process-wide cache via
+ * {@link #isGlobalCacheEnabled()}, so a route is only classified once no matter how many requests hit it. The global
+ * cache is keyed on {@link #getRouteTemplate(String)}, is read without locking, and reports its hits, misses and size
+ * through {@link MetricSetProvider}.
+ */
 public abstract class TrafficClassifier
+                implements MetricSetProvider
 {
     public static final String CACHED_FUNCTIONS = "cached-functions";
 
     public static final Set<String> MODIFY_METHODS = new HashSet<>( asList( "POST", "PUT", "DELETE" ) );
 
+    public static final int DEFAULT_GLOBAL_CACHE_SIZE = 1024;
+
+    private static final String CACHE_METRICS_NAME = "traffic-classifier.cache";
+
+    /**
+     * Created on first use, so that {@link #getGlobalCacheSize()} overrides see the subclass fully set up.
+     */
+    private volatile Map<String, List<String>> globalCache;
+
+    private volatile int globalCacheSize;
+
+    private final Meter cacheHits = new O11Meter();
+
+    private final Meter cacheMisses = new O11Meter();
+
     protected abstract List<String> calculateCachedFunctionClassifiers( String restPath, String method );
 
+    /**
+     * Override to turn on the process-wide classification cache. It is off by default, since it is only correct if
+     * {@link #calculateCachedFunctionClassifiers(String, String)} depends on nothing but the route template and
+     * method.
+     */
+    protected boolean isGlobalCacheEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * Maximum number of distinct routes held in the process-wide cache. Route templates are few, so this is only a
+     * safety bound: once it is reached, an arbitrary entry is evicted for each new one. If it is less than 1, nothing
+     * is cached.
+     */
+    protected int getGlobalCacheSize()
+    {
+        return DEFAULT_GLOBAL_CACHE_SIZE;
+    }
+
+    /**
+     * Normalize a request path to the route template that determines its classification, e.g. by dropping the
+     * artifact path below a repository. Paths that normalize to the same template share one global cache entry.
+     * Returning null classifies the request without the global cache, which is the default: raw paths would make the
+     * key space unbounded, so subclasses that enable the cache must override this.
+     */
+    protected String getRouteTemplate( String restPath )
+    {
+        return null;
+    }
+
     public List<String> classifyFunctions( String restPath, String method )
     {
         Optional<List<String>> cached = getCachedFunctionClassifiers();
@@ -40,18 +104,120 @@ public abstract class TrafficClassifier
             return cached.get();
         }
 
-        List<String> result = calculateCachedFunctionClassifiers( restPath, method );
+        List<String> result;
+        if ( isGlobalCacheEnabled() )
+        {
+            result = classifyFunctionsGlobal( restPath, method );
+        }
+        else
+        {
+            result = calculateCachedFunctionClassifiers( restPath, method );
+        }
 
         putCachedFunctionClassifiers( result );
         return result;
     }
 
+    private List<String> classifyFunctionsGlobal( String restPath, String method )
+    {
+        Map<String, List<String>> cache = getGlobalCache();
+        String template = cache == null ? null : getRouteTemplate( restPath );
+        if ( template == null )
+        {
+            return calculateCachedFunctionClassifiers( restPath, method );
+        }
+
+        String key = method + " " + template;
+        List<String> result = cache.get( key );
+        if ( result != null )
+        {
+            cacheHits.mark();
+            return result;
+        }
+
+        cacheMisses.mark();
+        result = unmodifiableList( calculateCachedFunctionClassifiers( restPath, method ) );
+        if ( cache.size() >= globalCacheSize )
+        {
+            Iterator<String> keys = cache.keySet().iterator();
+            if ( keys.hasNext() )
+            {
+                keys.next();
+                keys.remove();
+            }
+        }
+
+        List<String> existing = cache.putIfAbsent( key, result );
+        return existing == null ? result : existing;
+    }
+
+    private Map<String, List<String>> getGlobalCache()
+    {
+        Map<String, List<String>> cache = globalCache;
+        if ( cache == null )
+        {
+            int size = getGlobalCacheSize();
+            if ( size < 1 )
+            {
+                return null;
+            }
+
+            synchronized ( this )
+            {
+                cache = globalCache;
+                if ( cache == null )
+                {
+                    cache = new ConcurrentHashMap<>();
+                    globalCacheSize = size;
+                    globalCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    public void clearGlobalCache()
+    {
+        Map<String, List<String>> cache = globalCache;
+        if ( cache != null )
+        {
+            cache.clear();
+        }
+    }
+
+    @Override
+    public MetricSet getMetricSet()
+    {
+        return () -> {
+            Map<String, Metric> metrics = new HashMap<>();
+            metrics.put( "hits", cacheHits );
+            metrics.put( "misses", cacheMisses );
+            metrics.put( "size", (Gauge<Integer>) () -> {
+                Map<String, List<String>> cache = globalCache;
+                return cache == null ? 0 : cache.size();
+            } );
+            return metrics;
+        };
+    }
+
+    @Override
+    public String getName()
+    {
+        return CACHE_METRICS_NAME;
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return isGlobalCacheEnabled();
+    }
+
     public Optional<List<String>> getCachedFunctionClassifiers()
     {
-        ThreadContext ctx = ThreadContext.getContext( false );
+        RequestContext ctx = RequestContext.getRequestContext( false );
         if ( ctx != null )
         {
-            Object cached = ctx.get( CACHED_FUNCTIONS );
+            Object cached = ctx.get( RequestContext.Slot.CACHED_FUNCTIONS );
             if ( cached != null )
             {
                 return Optional.of( (List<String>) cached );
@@ -66,7 +232,7 @@ public abstract class TrafficClassifier
         ThreadContext ctx = ThreadContext.getContext( false );
         if ( ctx != null )
         {
-            ctx.put( CACHED_FUNCTIONS, result );
+            RequestContext.getRequestContext( ctx, true ).set( RequestContext.Slot.CACHED_FUNCTIONS, result );
         }
     }
 
@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.context;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Propagates observability state (weft ThreadContext, MDC, active trace span, ...) across thread hops that don't go
+ * through a weft-managed pool: plain executors, {@link CompletableFuture} chains, reactive pipelines, or one thread per
+ * task. The state is captured when a task is wrapped and attached only for the duration of the task, so pooled threads
+ * are left as they were found.
+ *
+ * For CompletableFuture chains, wrap the executor once and pass it to every *Async stage:
+ * <pre>
+ * Executor executor = ContextPropagation.wrap( pool );
+ * CompletableFuture.supplyAsync( this::load, executor ).thenApplyAsync( this::transform, executor );
+ * </pre>
+ *
+ * The ThreadContext propagator is always registered; other modules add theirs via {@link #register(ContextPropagator)}.
+ */
+public final class ContextPropagation
+{
+    private static final Logger logger = LoggerFactory.getLogger( ContextPropagation.class );
+
+    private static final List<ContextPropagator> PROPAGATORS = new CopyOnWriteArrayList<>();
+
+    static
+    {
+        PROPAGATORS.add( new ThreadContextPropagator() );
+    }
+
+    private ContextPropagation()
+    {
+    }
+
+    public static void register( ContextPropagator propagator )
+    {
+        ( (CopyOnWriteArrayList<ContextPropagator>) PROPAGATORS ).addIfAbsent( propagator );
+    }
+
+    public static void unregister( ContextPropagator propagator )
+    {
+        PROPAGATORS.remove( propagator );
+    }
+
+    /**
+     * Capture the current thread's state, to be attached later on another thread.
+     */
+    public static Snapshot capture()
+    {
+        ContextPropagator[] propagators = PROPAGATORS.toArray( new ContextPropagator[0] );
+        Object[] captured = new Object[propagators.length];
+        for ( int i = 0; i < propagators.length; i++ )
+        {
+            captured[i] = propagators[i].capture();
+        }
+        return new Snapshot( propagators, captured );
+    }
+
+    public static Runnable wrap( Runnable runnable )
+    {
+        Snapshot snapshot = capture();
+        return () -> {
+            try (Scope ignored = snapshot.attach())
+            {
+                runnable.run();
+            }
+        };
+    }
+
+    public static <T> Callable<T> wrap( Callable<T> callable )
+    {
+        Snapshot snapshot = capture();
+        return () -> {
+            try (Scope ignored = snapshot.attach())
+            {
+                return callable.call();
+            }
+        };
+    }
+
+    public static <T> Supplier<T> wrap( Supplier<T> supplier )
+    {
+        Snapshot snapshot = capture();
+        return () -> {
+            try (Scope ignored = snapshot.attach())
+            {
+                return supplier.get();
+            }
+        };
+    }
+
+    public static <T, R> Function<T, R> wrap( Function<T, R> function )
+    {
+        Snapshot snapshot = capture();
+        return t -> {
+            try (Scope ignored = snapshot.attach())
+            {
+                return function.apply( t );
+            }
+        };
+    }
+
+    public static <T> Consumer<T> wrap( Consumer<T> consumer )
+    {
+        Snapshot snapshot = capture();
+        return t -> {
+            try (Scope ignored = snapshot.attach())
+            {
+                consumer.accept( t );
+            }
+        };
+    }
+
+    /**
+     * Wrap an executor so every task submitted to it runs with the submitter's state attached. The state is captured
+     * at submission time, not when this method is called.
+     */
+    public static Executor wrap( Executor executor )
+    {
+        return command -> executor.execute( wrap( command ) );
+    }
+
+    public static <T> CompletableFuture<T> supplyAsync( Supplier<T> supplier, Executor executor )
+    {
+        return CompletableFuture.supplyAsync( wrap( supplier ), executor );
+    }
+
+    public static CompletableFuture<Void> runAsync( Runnable runnable, Executor executor )
+    {
+        return CompletableFuture.runAsync( wrap( runnable ), executor );
+    }
+
+    /**
+     * Closing the scope restores the previous thread state.
+     */
+    public interface Scope
+                    extends AutoCloseable
+    {
+        @Override
+        void close();
+    }
+
+    public static final class Snapshot
+    {
+        private final ContextPropagator[] propagators;
+
+        private final Object[] captured;
+
+        private Snapshot( ContextPropagator[] propagators, Object[] captured )
+        {
+            this.propagators = propagators;
+            this.captured = captured;
+        }
+
+        public Scope attach()
+        {
+            Object[] previous = new Object[propagators.length];
+            int attached = 0;
+            try
+            {
+                for ( ; attached < propagators.length; attached++ )
+                {
+                    previous[attached] = propagators[attached].attach( captured[attached] );
+                }
+            }
+            catch ( RuntimeException e )
+            {
+                logger.error( "Failed to attach propagated context: " + e.getMessage(), e );
+            }
+
+            final int count = attached;
+            return () -> {
+                for ( int i = count - 1; i >= 0; i-- )
+                {
+                    try
+                    {
+                        propagators[i].detach( captured[i], previous[i] );
+                    }
+                    catch ( RuntimeException e )
+                    {
+                        logger.error( "Failed to detach propagated context: " + e.getMessage(), e );
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.context;
+
+/**
+ * Carries one kind of thread-bound state (ThreadContext, active span, etc.) from the thread that submits work to the
+ * thread that runs it. Implementations are registered with {@link ContextPropagation}.
+ */
+public interface ContextPropagator
+{
+    /**
+     * Capture the state of the current thread. Called on the submitting thread.
+     * @return the captured state, or null if there is nothing to propagate
+     */
+    Object capture();
+
+    /**
+     * Install previously captured state on the current thread. Called on the executing thread.
+     * @return whatever {@link #detach(Object, Object)} needs to restore the thread's previous state
+     */
+    Object attach( Object captured );
+
+    /**
+     * Restore the executing thread to the state it had before {@link #attach(Object)}.
+     */
+    void detach( Object captured, Object previous );
+}
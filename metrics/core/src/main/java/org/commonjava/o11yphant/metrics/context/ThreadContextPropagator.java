@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.context;
+
+import org.commonjava.cdi.util.weft.ThreadContext;
+import org.slf4j.MDC;
+
+import java.util.Map;
+
+/**
+ * Shares the weft {@link ThreadContext} (and with it the {@link org.commonjava.o11yphant.metrics.RequestContext},
+ * timers and cumulative metrics) and the logging MDC with the executing thread.
+ */
+public class ThreadContextPropagator
+                implements ContextPropagator
+{
+    @Override
+    public Object capture()
+    {
+        return new Captured( ThreadContext.getContext( false ), MDC.getCopyOfContextMap() );
+    }
+
+    @Override
+    public Object attach( Object captured )
+    {
+        Captured c = (Captured) captured;
+        Previous prev = new Previous( MDC.getCopyOfContextMap() );
+
+        if ( c.ctx != null && ThreadContext.getContext( false ) != c.ctx )
+        {
+            prev.ctx = ThreadContext.setContext( c.ctx );
+            prev.swapped = true;
+        }
+
+        if ( c.mdc != null )
+        {
+            MDC.setContextMap( c.mdc );
+        }
+
+        return prev;
+    }
+
+    @Override
+    public void detach( Object captured, Object previous )
+    {
+        Previous prev = (Previous) previous;
+        if ( prev.swapped )
+        {
+            if ( prev.ctx != null )
+            {
+                ThreadContext.setContext( prev.ctx );
+            }
+            else
+            {
+                ThreadContext.clearContext();
+            }
+        }
+
+        if ( prev.mdc != null )
+        {
+            MDC.setContextMap( prev.mdc );
+        }
+        else
+        {
+            MDC.clear();
+        }
+    }
+
+    private static final class Captured
+    {
+        private final ThreadContext ctx;
+
+        private final Map<String, String> mdc;
+
+        Captured( ThreadContext ctx, Map<String, String> mdc )
+        {
+            this.ctx = ctx;
+            this.mdc = mdc;
+        }
+    }
+
+    private static final class Previous
+    {
+        private final Map<String, String> mdc;
+
+        private ThreadContext ctx;
+
+        private boolean swapped;
+
+        Previous( Map<String, String> mdc )
+        {
+            this.mdc = mdc;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.impl;
+
+import com.codahale.metrics.Clock;
+
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codahale meter which counts marks per thread and folds them into the shared count and rates on
+ * {@link #merge()}, the same way as {@link AggregatingTimer}.
+ */
+public class AggregatingMeter
+                extends com.codahale.metrics.Meter
+                implements MetricAggregator.Mergeable
+{
+    private final Set<Buffer> buffers = ConcurrentHashMap.newKeySet();
+
+    private final ThreadLocal<Buffer> local = ThreadLocal.withInitial( () -> {
+        Buffer buffer = new Buffer();
+        buffers.add( buffer );
+        return buffer;
+    } );
+
+    public AggregatingMeter()
+    {
+        this( Clock.defaultClock() );
+    }
+
+    public AggregatingMeter( Clock clock )
+    {
+        super( clock );
+    }
+
+    @Override
+    public void mark()
+    {
+        mark( 1 );
+    }
+
+    @Override
+    public void mark( long n )
+    {
+        local.get().add( n );
+    }
+
+    @Override
+    public void merge()
+    {
+        for ( Buffer buffer : buffers )
+        {
+            drain( buffer );
+            if ( buffer.isOrphaned() )
+            {
+                buffers.remove( buffer );
+                drain( buffer );
+            }
+        }
+    }
+
+    @Override
+    public long getCount()
+    {
+        merge();
+        return super.getCount();
+    }
+
+    @Override
+    public double getFifteenMinuteRate()
+    {
+        merge();
+        return super.getFifteenMinuteRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate()
+    {
+        merge();
+        return super.getFiveMinuteRate();
+    }
+
+    @Override
+    public double getMeanRate()
+    {
+        merge();
+        return super.getMeanRate();
+    }
+
+    @Override
+    public double getOneMinuteRate()
+    {
+        merge();
+        return super.getOneMinuteRate();
+    }
+
+    private void drain( Buffer buffer )
+    {
+        long n = buffer.take();
+        if ( n > 0 )
+        {
+            super.mark( n );
+        }
+    }
+
+    private static final class Buffer
+    {
+        private final WeakReference<Thread> owner = new WeakReference<>( Thread.currentThread() );
+
+        private long pending;
+
+        synchronized void add( long n )
+        {
+            pending += n;
+        }
+
+        synchronized long take()
+        {
+            long n = pending;
+            pending = 0;
+            return n;
+        }
+
+        boolean isOrphaned()
+        {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.impl;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Codahale timer which buffers durations per thread and only touches the shared meter and reservoir when a buffer
+ * is merged: by the owning thread once its buffer is full, by {@link MetricAggregator} periodically, or by any reader
+ * before it reads. Updates on a hot path therefore stay on the updating core, at the price of rates which trail
+ * behind by up to one aggregation interval.
+ */
+public class AggregatingTimer
+                extends com.codahale.metrics.Timer
+                implements MetricAggregator.Mergeable
+{
+    private static final int CAPACITY = 256;
+
+    private final Set<Buffer> buffers = ConcurrentHashMap.newKeySet();
+
+    private final ThreadLocal<Buffer> local = ThreadLocal.withInitial( () -> {
+        Buffer buffer = new Buffer();
+        buffers.add( buffer );
+        return buffer;
+    } );
+
+    public AggregatingTimer()
+    {
+        this( new ExponentiallyDecayingReservoir(), Clock.defaultClock() );
+    }
+
+    public AggregatingTimer( Reservoir reservoir, Clock clock )
+    {
+        super( reservoir, clock );
+    }
+
+    @Override
+    public void update( long duration, TimeUnit unit )
+    {
+        long[] full = local.get().add( unit.toNanos( duration ) );
+        if ( full != null )
+        {
+            record( full, full.length );
+        }
+    }
+
+    @Override
+    public void merge()
+    {
+        for ( Buffer buffer : buffers )
+        {
+            buffer.drain();
+            if ( buffer.isOrphaned() )
+            {
+                buffers.remove( buffer );
+                // a last update may have slipped in between
+                buffer.drain();
+            }
+        }
+    }
+
+    @Override
+    public long getCount()
+    {
+        merge();
+        return super.getCount();
+    }
+
+    @Override
+    public double getFifteenMinuteRate()
+    {
+        merge();
+        return super.getFifteenMinuteRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate()
+    {
+        merge();
+        return super.getFiveMinuteRate();
+    }
+
+    @Override
+    public double getMeanRate()
+    {
+        merge();
+        return super.getMeanRate();
+    }
+
+    @Override
+    public double getOneMinuteRate()
+    {
+        merge();
+        return super.getOneMinuteRate();
+    }
+
+    @Override
+    public Snapshot getSnapshot()
+    {
+        merge();
+        return super.getSnapshot();
+    }
+
+    private void record( long[] samples, int size )
+    {
+        for ( int i = 0; i < size; i++ )
+        {
+            super.update( samples[i], TimeUnit.NANOSECONDS );
+        }
+    }
+
+    private final class Buffer
+    {
+        private final WeakReference<Thread> owner = new WeakReference<>( Thread.currentThread() );
+
+        private long[] samples = new long[CAPACITY];
+
+        private int size;
+
+        /**
+         * @return the filled sample array if this update filled it, for the caller to record outside the lock
+         */
+        synchronized long[] add( long nanos )
+        {
+            samples[size++] = nanos;
+            if ( size < CAPACITY )
+            {
+                return null;
+            }
+
+            long[] full = samples;
+            samples = new long[CAPACITY];
+            size = 0;
+            return full;
+        }
+
+        void drain()
+        {
+            long[] drained;
+            int drainedSize;
+            synchronized ( this )
+            {
+                if ( size == 0 )
+                {
+                    return;
+                }
+                drained = samples;
+                drainedSize = size;
+                samples = new long[CAPACITY];
+                size = 0;
+            }
+            record( drained, drainedSize );
+        }
+
+        boolean isOrphaned()
+        {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.impl;
+
+import org.commonjava.o11yphant.metrics.api.Clock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Clock whose readings are refreshed by a daemon thread at a fixed resolution, so reading it is a single volatile
+ * load. Durations measured with it are multiples of the resolution (often 0 for short calls); use it for meters and
+ * timers where call rates matter more than sub-resolution timings.
+ */
+public final class CoarseClock
+                implements Clock, AutoCloseable
+{
+    private final long resolutionNanos;
+
+    private final Thread updater;
+
+    private volatile long tick;
+
+    private volatile long time;
+
+    private volatile boolean running = true;
+
+    public CoarseClock( long resolution, TimeUnit unit )
+    {
+        this.resolutionNanos = Math.max( unit.toNanos( resolution ), TimeUnit.MICROSECONDS.toNanos( 100 ) );
+        update();
+
+        updater = new Thread( this::run, "o11yphant-coarse-clock" );
+        updater.setDaemon( true );
+        updater.start();
+    }
+
+    @Override
+    public long getTick()
+    {
+        return tick;
+    }
+
+    @Override
+    public long getTime()
+    {
+        return time;
+    }
+
+    public long getResolution( TimeUnit unit )
+    {
+        return unit.convert( resolutionNanos, TimeUnit.NANOSECONDS );
+    }
+
+    @Override
+    public void close()
+    {
+        running = false;
+        LockSupport.unpark( updater );
+    }
+
+    private void run()
+    {
+        while ( running )
+        {
+            LockSupport.parkNanos( this, resolutionNanos );
+            update();
+        }
+    }
+
+    private void update()
+    {
+        tick = System.nanoTime();
+        time = System.currentTimeMillis();
+    }
+}
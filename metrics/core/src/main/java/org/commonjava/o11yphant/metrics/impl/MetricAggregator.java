@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically folds the per-thread buffers of {@link AggregatingTimer} and {@link AggregatingMeter} instances into
+ * their shared codahale state. Readers merge on demand as well, so the interval only bounds how stale the shared
+ * state gets between reads (and how much memory the buffers of idle threads hold).
+ */
+public class MetricAggregator
+                implements AutoCloseable
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Set<Mergeable> metrics = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService executor;
+
+    public MetricAggregator( long interval, TimeUnit unit )
+    {
+        executor = Executors.newSingleThreadScheduledExecutor( r -> {
+            Thread t = new Thread( r, "o11yphant-metric-aggregator" );
+            t.setDaemon( true );
+            return t;
+        } );
+        executor.scheduleWithFixedDelay( this::mergeAll, interval, interval, unit );
+    }
+
+    public <T extends Mergeable> T register( T metric )
+    {
+        metrics.add( metric );
+        return metric;
+    }
+
+    public void mergeAll()
+    {
+        for ( Mergeable metric : metrics )
+        {
+            try
+            {
+                metric.merge();
+            }
+            catch ( RuntimeException e )
+            {
+                logger.warn( "Failed to merge per-thread metric buffers", e );
+            }
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdownNow();
+        mergeAll();
+    }
+
+    /**
+     * A metric that buffers updates per thread until {@link #merge()} folds them into its shared state.
+     */
+    public interface Mergeable
+    {
+        void merge();
+    }
+}
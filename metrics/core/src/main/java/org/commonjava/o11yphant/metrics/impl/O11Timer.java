@@ -15,6 +15,7 @@
  */
 package org.commonjava.o11yphant.metrics.impl;
 
+import org.commonjava.o11yphant.metrics.api.Clock;
 import org.commonjava.o11yphant.metrics.api.Snapshot;
 import org.commonjava.o11yphant.metrics.api.Timer;
 
@@ -25,14 +26,28 @@ public class O11Timer
 {
     private com.codahale.metrics.Timer codahaleTimer;
 
+    private final Clock clock;
+
+    private final SampledTimer sampled;
+
     public O11Timer()
     {
-        codahaleTimer = new com.codahale.metrics.Timer();
+        this( new com.codahale.metrics.Timer() );
     }
 
     public O11Timer( com.codahale.metrics.Timer timer )
     {
-        codahaleTimer = timer;
+        this( timer, Clock.SYSTEM );
+    }
+
+    /**
+     * @param clock the clock read by contexts returned from {@link #time()}
+     */
+    public O11Timer( com.codahale.metrics.Timer timer, Clock clock )
+    {
+        this.codahaleTimer = timer;
+        this.clock = clock;
+        this.sampled = timer instanceof SampledTimer ? (SampledTimer) timer : null;
     }
 
     @Override
@@ -68,7 +83,11 @@ public class O11Timer
     @Override
     public Context time()
     {
-        return new O11Context( codahaleTimer.time() );
+        if ( sampled != null && !sampled.sample() )
+        {
+            return UNSAMPLED;
+        }
+        return new ClockContext( clock.getTick() );
     }
 
     @Override
@@ -150,6 +169,62 @@ public class O11Timer
         }
     }
 
+    /**
+     * Context of a call which {@link SampledTimer} counted but chose not to time. It reads no clock and its
+     * {@link #stop()} returns 0.
+     */
+    private static final Context UNSAMPLED = new Context()
+    {
+        @Override
+        public long stop()
+        {
+            return 0;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    };
+
+    private final class ClockContext
+                    implements Context
+    {
+        private final long start;
+
+        private ClockContext( long start )
+        {
+            this.start = start;
+        }
+
+        @Override
+        public long stop()
+        {
+            long elapsed = clock.getTick() - start;
+            if ( sampled != null )
+            {
+                // already counted by sample()
+                sampled.record( elapsed );
+            }
+            else
+            {
+                codahaleTimer.update( elapsed, TimeUnit.NANOSECONDS );
+            }
+            return elapsed;
+        }
+
+        @Override
+        public void close()
+        {
+            stop();
+        }
+    }
+
+    public Clock getClock()
+    {
+        return clock;
+    }
+
     public com.codahale.metrics.Timer getCodahaleTimer()
     {
         return codahaleTimer;
@@ -0,0 +1,309 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.impl;
+
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared direct memory holding the histograms of {@link OffHeapTimer} instances, one fixed-size slot per timer.
+ *
+ * A slot holds count, sum, min and max followed by {@link #BUCKETS} log-linear buckets: values below 4 get a bucket
+ * each, every power of two above is split into 4 buckets, so any recorded value is reported within 25% of itself.
+ * Recording is a handful of atomic adds (and CAS loops for min / max) on the slot, readers read the slot in place.
+ * Slots are never freed; the memory goes away with the arena once it's no longer referenced.
+ * <p>
+ * The slots are accessed through {@code sun.misc.Unsafe}, which is looked up reflectively (and bound into method
+ * handles) rather than imported, so compiling against it needs no internal API.
+ */
+public final class OffHeapHistogramArena
+{
+    public static final int BUCKETS = 252;
+
+    private static final int COUNT = 0;
+
+    private static final int SUM = 8;
+
+    private static final int MIN = 16;
+
+    private static final int MAX = 24;
+
+    private static final int BUCKETS_OFFSET = 32;
+
+    public static final int SLOT_BYTES = BUCKETS_OFFSET + BUCKETS * 8;
+
+    private static final Object UNSAFE = loadUnsafe();
+
+    private static final MethodHandle GET_AND_ADD_LONG =
+                    unsafeMethod( "getAndAddLong", Object.class, long.class, long.class );
+
+    private static final MethodHandle GET_LONG_VOLATILE = unsafeMethod( "getLongVolatile", Object.class, long.class );
+
+    private static final MethodHandle PUT_LONG_VOLATILE =
+                    unsafeMethod( "putLongVolatile", Object.class, long.class, long.class );
+
+    private static final MethodHandle COMPARE_AND_SWAP_LONG =
+                    unsafeMethod( "compareAndSwapLong", Object.class, long.class, long.class, long.class );
+
+    private static final MethodHandle GET_LONG = unsafeMethod( "getLong", Object.class, long.class );
+
+    private static final MethodHandle OBJECT_FIELD_OFFSET = unsafeMethod( "objectFieldOffset", Field.class );
+
+    private final ByteBuffer memory;
+
+    private final long address;
+
+    private final int slots;
+
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    public OffHeapHistogramArena( int slots )
+    {
+        if ( !isSupported() )
+        {
+            throw new IllegalStateException( "Off-heap histograms need sun.misc.Unsafe, which is not available" );
+        }
+
+        this.slots = slots;
+        this.memory = ByteBuffer.allocateDirect( Math.multiplyExact( slots, SLOT_BYTES ) );
+        this.address = bufferAddress( memory );
+    }
+
+    public static boolean isSupported()
+    {
+        return GET_AND_ADD_LONG != null && GET_LONG_VOLATILE != null && PUT_LONG_VOLATILE != null
+                        && COMPARE_AND_SWAP_LONG != null && GET_LONG != null && OBJECT_FIELD_OFFSET != null;
+    }
+
+    /**
+     * Reserve a slot, or return -1 when the arena is full.
+     */
+    public int allocate()
+    {
+        int slot = allocated.getAndIncrement();
+        if ( slot >= slots )
+        {
+            allocated.decrementAndGet();
+            return -1;
+        }
+
+        putVolatile( base( slot ) + MIN, Long.MAX_VALUE );
+        return slot;
+    }
+
+    public int getSlots()
+    {
+        return slots;
+    }
+
+    public int getAllocated()
+    {
+        return Math.min( allocated.get(), slots );
+    }
+
+    public void record( int slot, long value )
+    {
+        if ( value < 0 )
+        {
+            value = 0;
+        }
+
+        long base = base( slot );
+        getAndAdd( base + BUCKETS_OFFSET + 8L * bucketOf( value ), 1 );
+        getAndAdd( base + SUM, value );
+
+        long min;
+        do
+        {
+            min = getVolatile( base + MIN );
+        }
+        while ( value < min && !compareAndSwap( base + MIN, min, value ) );
+
+        long max;
+        do
+        {
+            max = getVolatile( base + MAX );
+        }
+        while ( value > max && !compareAndSwap( base + MAX, max, value ) );
+
+        // last, so a reader seeing the count also sees the bucket it stands for
+        getAndAdd( base + COUNT, 1 );
+    }
+
+    public long getCount( int slot )
+    {
+        return getVolatile( base( slot ) + COUNT );
+    }
+
+    public long getSum( int slot )
+    {
+        return getVolatile( base( slot ) + SUM );
+    }
+
+    public long getMin( int slot )
+    {
+        long min = getVolatile( base( slot ) + MIN );
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    public long getMax( int slot )
+    {
+        return getVolatile( base( slot ) + MAX );
+    }
+
+    public long getBucketCount( int slot, int bucket )
+    {
+        return getVolatile( base( slot ) + BUCKETS_OFFSET + 8L * bucket );
+    }
+
+    static int bucketOf( long value )
+    {
+        if ( value < 4 )
+        {
+            return (int) value;
+        }
+
+        int msb = 63 - Long.numberOfLeadingZeros( value );
+        int sub = (int) ( value >>> ( msb - 2 ) ) & 3;
+        return 4 * ( msb - 1 ) + sub;
+    }
+
+    /**
+     * Midpoint of the values falling into the given bucket.
+     */
+    static long bucketValue( int bucket )
+    {
+        if ( bucket < 4 )
+        {
+            return bucket;
+        }
+
+        int msb = bucket / 4 + 1;
+        long width = 1L << ( msb - 2 );
+        long lower = ( 4L + bucket % 4 ) * width;
+        return lower + ( width - 1 ) / 2;
+    }
+
+    private long base( int slot )
+    {
+        return address + (long) slot * SLOT_BYTES;
+    }
+
+    private static long getAndAdd( long address, long delta )
+    {
+        try
+        {
+            return (long) GET_AND_ADD_LONG.invokeExact( (Object) null, address, delta );
+        }
+        catch ( Throwable e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static long getVolatile( long address )
+    {
+        try
+        {
+            return (long) GET_LONG_VOLATILE.invokeExact( (Object) null, address );
+        }
+        catch ( Throwable e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static void putVolatile( long address, long value )
+    {
+        try
+        {
+            PUT_LONG_VOLATILE.invokeExact( (Object) null, address, value );
+        }
+        catch ( Throwable e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static boolean compareAndSwap( long address, long expected, long value )
+    {
+        try
+        {
+            return (boolean) COMPARE_AND_SWAP_LONG.invokeExact( (Object) null, address, expected, value );
+        }
+        catch ( Throwable e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static long bufferAddress( ByteBuffer buffer )
+    {
+        try
+        {
+            long offset = (long) OBJECT_FIELD_OFFSET.invokeExact( Buffer.class.getDeclaredField( "address" ) );
+            return (long) GET_LONG.invokeExact( (Object) buffer, offset );
+        }
+        catch ( Throwable e )
+        {
+            throw new IllegalStateException( "Cannot locate direct buffer address", e );
+        }
+    }
+
+    private static Object loadUnsafe()
+    {
+        try
+        {
+            Field field = Class.forName( "sun.misc.Unsafe" ).getDeclaredField( "theUnsafe" );
+            field.setAccessible( true );
+            return field.get( null );
+        }
+        catch ( ReflectiveOperationException | RuntimeException e )
+        {
+            LoggerFactory.getLogger( OffHeapHistogramArena.class )
+                         .debug( "sun.misc.Unsafe not available, off-heap histograms disabled", e );
+            return null;
+        }
+    }
+
+    private static MethodHandle unsafeMethod( String name, Class<?>... parameterTypes )
+    {
+        if ( UNSAFE == null )
+        {
+            return null;
+        }
+
+        try
+        {
+            Method method = UNSAFE.getClass().getMethod( name, parameterTypes );
+            MethodHandle handle = MethodHandles.lookup().unreflect( method );
+            return handle.bindTo( UNSAFE );
+        }
+        catch ( ReflectiveOperationException | RuntimeException e )
+        {
+            LoggerFactory.getLogger( OffHeapHistogramArena.class )
+                         .debug( "sun.misc.Unsafe.{} not available, off-heap histograms disabled", name, e );
+            return null;
+        }
+    }
+}
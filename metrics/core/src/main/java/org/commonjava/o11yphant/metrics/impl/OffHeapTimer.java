@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.impl;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformSnapshot;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Codahale timer whose histogram lives in a slot of an {@link OffHeapHistogramArena} instead of a heap reservoir.
+ * Only the rates are kept on the heap, by the inherited meter. Snapshots read the slot in place, so they see
+ * the all-time distribution at bucket precision rather than a decaying sample, see
+ * {@link org.commonjava.o11yphant.metrics.conf.MetricsConfig#getOffHeapHistogramSlots()}.
+ */
+public class OffHeapTimer
+                extends com.codahale.metrics.Timer
+{
+    private static final Snapshot EMPTY_SNAPSHOT = new UniformSnapshot( new long[0] );
+
+    private static final Reservoir NO_RESERVOIR = new Reservoir()
+    {
+        @Override
+        public int size()
+        {
+            return 0;
+        }
+
+        @Override
+        public void update( long value )
+        {
+        }
+
+        @Override
+        public Snapshot getSnapshot()
+        {
+            // only reachable through the inherited histogram; the timer's own snapshot reads the arena
+            return EMPTY_SNAPSHOT;
+        }
+    };
+
+    private final OffHeapHistogramArena arena;
+
+    private final int slot;
+
+    /**
+     * @param slot a slot obtained from {@link OffHeapHistogramArena#allocate()}
+     */
+    public OffHeapTimer( OffHeapHistogramArena arena, int slot, Clock clock )
+    {
+        super( NO_RESERVOIR, clock );
+        this.arena = arena;
+        this.slot = slot;
+    }
+
+    @Override
+    public void update( long duration, TimeUnit unit )
+    {
+        if ( duration >= 0 )
+        {
+            arena.record( slot, unit.toNanos( duration ) );
+            // marks the rates; the histogram behind it records into NO_RESERVOIR
+            super.update( duration, unit );
+        }
+    }
+
+    @Override
+    public long getCount()
+    {
+        return arena.getCount( slot );
+    }
+
+    @Override
+    public Snapshot getSnapshot()
+    {
+        return new ArenaSnapshot();
+    }
+
+    private final class ArenaSnapshot
+                    extends Snapshot
+    {
+        @Override
+        public double getValue( double quantile )
+        {
+            if ( quantile < 0.0 || quantile > 1.0 || Double.isNaN( quantile ) )
+            {
+                throw new IllegalArgumentException( quantile + " is not in [0..1]" );
+            }
+
+            long count = arena.getCount( slot );
+            if ( count == 0 )
+            {
+                return 0.0;
+            }
+
+            long rank = Math.max( 1, (long) Math.ceil( quantile * count ) );
+            long seen = 0;
+            for ( int i = 0; i < OffHeapHistogramArena.BUCKETS; i++ )
+            {
+                seen += arena.getBucketCount( slot, i );
+                if ( seen >= rank )
+                {
+                    return clamp( OffHeapHistogramArena.bucketValue( i ) );
+                }
+            }
+            return getMax();
+        }
+
+        /**
+         * One representative value per non-empty bucket; the bucket counts are not expanded.
+         */
+        @Override
+        public long[] getValues()
+        {
+            long[] values = new long[OffHeapHistogramArena.BUCKETS];
+            int n = 0;
+            for ( int i = 0; i < OffHeapHistogramArena.BUCKETS; i++ )
+            {
+                if ( arena.getBucketCount( slot, i ) > 0 )
+                {
+                    values[n++] = clamp( OffHeapHistogramArena.bucketValue( i ) );
+                }
+            }
+            return Arrays.copyOf( values, n );
+        }
+
+        @Override
+        public int size()
+        {
+            return (int) Math.min( arena.getCount( slot ), Integer.MAX_VALUE );
+        }
+
+        @Override
+        public long getMax()
+        {
+            return arena.getMax( slot );
+        }
+
+        @Override
+        public double getMean()
+        {
+            long count = arena.getCount( slot );
+            return count == 0 ? 0.0 : (double) arena.getSum( slot ) / count;
+        }
+
+        @Override
+        public long getMin()
+        {
+            return arena.getMin( slot );
+        }
+
+        @Override
+        public double getStdDev()
+        {
+            long count = 0;
+            double sum = 0;
+            double squares = 0;
+            for ( int i = 0; i < OffHeapHistogramArena.BUCKETS; i++ )
+            {
+                long c = arena.getBucketCount( slot, i );
+                if ( c > 0 )
+                {
+                    double v = clamp( OffHeapHistogramArena.bucketValue( i ) );
+                    count += c;
+                    sum += c * v;
+                    squares += c * v * v;
+                }
+            }
+            if ( count <= 1 )
+            {
+                return 0.0;
+            }
+
+            double mean = sum / count;
+            return Math.sqrt( Math.max( 0.0, ( squares - count * mean * mean ) / ( count - 1 ) ) );
+        }
+
+        @Override
+        public void dump( OutputStream output )
+        {
+            try (PrintWriter out = new PrintWriter( new OutputStreamWriter( output, StandardCharsets.UTF_8 ) ))
+            {
+                for ( long value : getValues() )
+                {
+                    out.printf( "%d%n", value );
+                }
+            }
+        }
+
+        private long clamp( long value )
+        {
+            return Math.max( getMin(), Math.min( value, getMax() ) );
+        }
+    }
+}
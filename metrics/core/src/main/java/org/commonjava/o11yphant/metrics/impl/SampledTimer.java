@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.impl;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Reservoir;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Codahale timer which only records one in <code>ratio</code> calls into its reservoir, per thread.
+ *
+ * Clock reads and reservoir updates dominate the cost of timing microsecond-scale methods, while the distribution of
+ * a uniform 1-in-N sample is the distribution of the whole population. So the snapshot is built from samples only,
+ * but {@link #getCount()} comes from a striped counter bumped on every call and the rates are marked with the number
+ * of calls each thread made since its previous sample. Rates may therefore lag by less than <code>ratio</code> calls
+ * per thread, counts never do.
+ *
+ * Use {@link O11Timer#time()} on top of this to skip the clock reads as well; {@link #time()} inherited from codahale
+ * always reads the clock and only saves the reservoir update.
+ */
+public class SampledTimer
+                extends com.codahale.metrics.Timer
+{
+    private final int ratio;
+
+    private final LongAdder count = new LongAdder();
+
+    private final Meter meter;
+
+    private final ThreadLocal<int[]> calls = ThreadLocal.withInitial( () -> new int[1] );
+
+    public SampledTimer( int ratio )
+    {
+        this( ratio, new ExponentiallyDecayingReservoir(), Clock.defaultClock() );
+    }
+
+    public SampledTimer( int ratio, Reservoir reservoir, Clock clock )
+    {
+        super( reservoir, clock );
+        this.ratio = Math.max( ratio, 1 );
+        this.meter = new Meter( clock );
+    }
+
+    public int getRatio()
+    {
+        return ratio;
+    }
+
+    /**
+     * Count one call and decide whether it should be timed. A call answered with true must be followed by
+     * {@link #record(long)} once its duration is known.
+     */
+    public boolean sample()
+    {
+        count.increment();
+
+        int[] c = calls.get();
+        int n = ++c[0];
+        if ( n < ratio )
+        {
+            return false;
+        }
+
+        c[0] = 0;
+        meter.mark( n );
+        return true;
+    }
+
+    /**
+     * Record the duration of a call for which {@link #sample()} returned true. The call is already counted.
+     */
+    public void record( long nanos )
+    {
+        super.update( nanos, TimeUnit.NANOSECONDS );
+    }
+
+    @Override
+    public void update( long duration, TimeUnit unit )
+    {
+        if ( sample() )
+        {
+            record( unit.toNanos( duration ) );
+        }
+    }
+
+    @Override
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    @Override
+    public double getFifteenMinuteRate()
+    {
+        return meter.getFifteenMinuteRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate()
+    {
+        return meter.getFiveMinuteRate();
+    }
+
+    @Override
+    public double getMeanRate()
+    {
+        return meter.getMeanRate();
+    }
+
+    @Override
+    public double getOneMinuteRate()
+    {
+        return meter.getOneMinuteRate();
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.instrument;
+
+import org.commonjava.o11yphant.metrics.MetricsManager;
+import org.commonjava.o11yphant.metrics.api.Meter;
+import org.commonjava.o11yphant.metrics.api.MetricRegistry;
+import org.commonjava.o11yphant.metrics.api.Timer;
+import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
+import org.commonjava.o11yphant.metrics.util.NameUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.o11yphant.metrics.MetricsConstants.DEFAULT;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.EXCEPTION;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.METER;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.NANOS_PER_MILLISECOND;
+import static org.commonjava.o11yphant.metrics.MetricsConstants.TIMER;
+import static org.commonjava.o11yphant.metrics.util.AsyncUtils.isAsync;
+import static org.commonjava.o11yphant.metrics.util.AsyncUtils.onCompletion;
+import static org.commonjava.o11yphant.metrics.util.NameUtils.getName;
+import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
+
+/**
+ * Precomputed instrumentation handle for one {@link org.commonjava.o11yphant.metrics.annotation.Measure} method, used
+ * by statically generated wrappers (and woven bytecode) instead of the CDI interceptor. It records the same metrics as
+ * {@link org.commonjava.o11yphant.metrics.interceptor.DefaultMetricsInterceptor}: the timer, the call and start
+ * meters, the exception meters, and the cumulative timing.
+ * <p>
+ * Handles are created once per method (usually in a static field) and resolve their timer and meters lazily against
+ * the {@link MetricsManager} passed to {@link #install(MetricsManager, MetricsConfig)}. Until something is installed,
+ * {@link #start()} is a no-op. Callers that hold their own manager (e.g. CDI interceptors) pass it to
+ * {@link #start(MetricsManager, MetricsConfig, long)} instead of relying on the installed one.
+ * <pre>
+ * MeasureHandle.Scope scope = HANDLE.start();
+ * try { return scope.complete( doWork() ); }
+ * catch ( Throwable t ) { scope.failed( t ); scope.close(); throw t; }
+ * </pre>
+ * Methods returning a primitive or nothing can simply {@link Scope#close()} the scope in a {@code finally} block.
+ * <p>
+ * Like the interceptor, handles are named after the declaring class and method name only, so overloads of a method
+ * share one timer and one set of meters. This is intentional: the metric names stay the same whether a method is
+ * measured by the interceptor, a generated wrapper or woven bytecode.
+ */
+public final class MeasureHandle
+{
+    private static volatile Binding binding;
+
+    private final String defaultName;
+
+    private volatile Metrics metrics;
+
+    private MeasureHandle( String defaultName )
+    {
+        this.defaultName = defaultName;
+    }
+
+    /**
+     * Handle for the given method name; all overloads of the method resolve to the same metrics.
+     */
+    public static MeasureHandle of( Class<?> declaringClass, String method )
+    {
+        return new MeasureHandle( NameUtils.getDefaultName( declaringClass, method ) );
+    }
+
+    /**
+     * Route all handles to the given manager. {@link org.commonjava.o11yphant.metrics.DefaultMetricsManager} installs
+     * itself when it is initialized; code running outside CDI can call this directly.
+     */
+    public static synchronized void install( MetricsManager manager, MetricsConfig config )
+    {
+        binding = new Binding( manager, config );
+    }
+
+    public static synchronized void uninstall()
+    {
+        binding = null;
+    }
+
+    /**
+     * Stop routing handles to the given manager, if it is still the installed one. A manager that is shutting down
+     * calls this so handles don't keep recording into (and pinning) its registry, without clobbering a manager that
+     * has been installed since.
+     */
+    public static synchronized void uninstall( MetricsManager manager )
+    {
+        Binding b = binding;
+        if ( b != null && b.manager == manager )
+        {
+            binding = null;
+        }
+    }
+
+    public String getDefaultName()
+    {
+        return defaultName;
+    }
+
+    public Scope start()
+    {
+        return start( System.nanoTime() );
+    }
+
+    /**
+     * Start a scope with a clock reading taken by the caller, so the same reading can be shared with other
+     * instrumentation (e.g. tracing). Complete it with {@link Scope#stop(long)}.
+     */
+    public Scope start( long startNanos )
+    {
+        Binding b = binding;
+        if ( b == null )
+        {
+            return Scope.NOOP;
+        }
+        return start( b.manager, b.config, startNanos );
+    }
+
+    /**
+     * Same as {@link #start(long)}, recording to the given manager rather than the installed one.
+     */
+    public Scope start( MetricsManager manager, MetricsConfig config, long startNanos )
+    {
+        if ( manager == null || config == null || !config.isEnabled() || !manager.checkMetered() )
+        {
+            return Scope.NOOP;
+        }
+
+        Metrics m = metrics;
+        if ( m == null || !m.binding.matches( manager, config ) )
+        {
+            m = new Metrics( new Binding( manager, config ), defaultName );
+            metrics = m;
+        }
+
+        m.starts.mark();
+        return new Scope( m, startNanos );
+    }
+
+    private static final class Binding
+    {
+        private final MetricsManager manager;
+
+        private final MetricsConfig config;
+
+        private Binding( MetricsManager manager, MetricsConfig config )
+        {
+            this.manager = manager;
+            this.config = config;
+        }
+
+        private boolean matches( MetricsManager manager, MetricsConfig config )
+        {
+            return this.manager == manager && this.config == config;
+        }
+    }
+
+    /**
+     * Metrics resolved for one binding. Names follow {@link org.commonjava.o11yphant.metrics.interceptor.DefaultMetricsInterceptor}.
+     */
+    private static final class Metrics
+    {
+        private final Binding binding;
+
+        private final String defaultName;
+
+        private final Timer timer;
+
+        private final Meter meter;
+
+        private final Meter starts;
+
+        private final Meter exceptions;
+
+        private final String exceptionName;
+
+        private Metrics( Binding binding, String defaultName )
+        {
+            this.binding = binding;
+            this.defaultName = defaultName;
+
+            String nodePrefix = binding.config.getNodePrefix();
+            MetricRegistry registry = binding.manager.getMetricRegistry();
+
+            String meterName = getName( nodePrefix, DEFAULT, defaultName, METER );
+            this.exceptionName = getName( nodePrefix, DEFAULT, defaultName, EXCEPTION );
+            this.timer = registry.timer( getName( nodePrefix, DEFAULT, defaultName, TIMER ) );
+            this.meter = registry.meter( meterName );
+            this.starts = registry.meter( name( meterName, "starts" ) );
+            this.exceptions = registry.meter( exceptionName );
+        }
+    }
+
+    public static final class Scope
+            implements AutoCloseable
+    {
+        static final Scope NOOP = new Scope( null, 0 );
+
+        private final Metrics metrics;
+
+        private final long start;
+
+        private Scope( Metrics metrics, long start )
+        {
+            this.metrics = metrics;
+            this.start = start;
+        }
+
+        public void failed( Throwable error )
+        {
+            if ( metrics != null )
+            {
+                metrics.exceptions.mark();
+                metrics.binding.manager.getMetricRegistry()
+                                       .meter( name( metrics.exceptionName, error.getClass().getSimpleName() ) )
+                                       .mark();
+            }
+        }
+
+        /**
+         * Record the call as ending at the given {@link System#nanoTime()} reading.
+         */
+        public void stop( long endNanos )
+        {
+            if ( metrics != null )
+            {
+                long elapsed = endNanos - start;
+                metrics.timer.update( elapsed, TimeUnit.NANOSECONDS );
+                metrics.meter.mark();
+                metrics.binding.manager.accumulate( metrics.defaultName, elapsed / NANOS_PER_MILLISECOND );
+            }
+        }
+
+        /**
+         * Complete the scope for a call that returned normally. If the result is a
+         * {@link java.util.concurrent.CompletionStage}, the scope is closed when the stage completes (and marked
+         * failed if it completes exceptionally), so the timer covers the whole asynchronous operation; otherwise it
+         * is closed right away.
+         *
+         * @return the result, unchanged
+         */
+        public <T> T complete( T result )
+        {
+            if ( metrics != null && isAsync( result ) )
+            {
+                onCompletion( result, error -> {
+                    if ( error != null )
+                    {
+                        failed( error );
+                    }
+                    close();
+                } );
+            }
+            else
+            {
+                close();
+            }
+            return result;
+        }
+
+        @Override
+        public void close()
+        {
+            if ( metrics != null )
+            {
+                stop( System.nanoTime() );
+            }
+        }
+    }
+}
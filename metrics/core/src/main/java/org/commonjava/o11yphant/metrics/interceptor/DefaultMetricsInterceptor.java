@@ -16,7 +16,7 @@
 package org.commonjava.o11yphant.metrics.interceptor;
 
 import org.commonjava.o11yphant.metrics.annotation.Measure;
-import org.commonjava.o11yphant.metrics.api.Timer;
+import org.commonjava.o11yphant.metrics.api.Clock;
 import org.commonjava.o11yphant.metrics.conf.MetricsConfig;
 import org.commonjava.o11yphant.metrics.MetricsManager;
 import org.slf4j.Logger;
@@ -28,9 +28,8 @@ import javax.interceptor.Interceptor;
 import javax.interceptor.InvocationContext;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.codahale.metrics.MetricRegistry.name;
@@ -39,6 +38,8 @@ import static org.commonjava.o11yphant.metrics.MetricsConstants.EXCEPTION;
 import static org.commonjava.o11yphant.metrics.MetricsConstants.METER;
 import static org.commonjava.o11yphant.metrics.MetricsConstants.NANOS_PER_MILLISECOND;
 import static org.commonjava.o11yphant.metrics.MetricsConstants.TIMER;
+import static org.commonjava.o11yphant.metrics.util.AsyncUtils.isAsync;
+import static org.commonjava.o11yphant.metrics.util.AsyncUtils.onCompletion;
 import static org.commonjava.o11yphant.metrics.util.NameUtils.getDefaultName;
 import static org.commonjava.o11yphant.metrics.util.NameUtils.getName;
 
@@ -77,42 +78,71 @@ public class DefaultMetricsInterceptor
         String defaultName = getDefaultName( context.getMethod().getDeclaringClass(), context.getMethod().getName() );
         logger.trace( "Gathering metrics for: {} using context: {}", defaultName, context.getContextData() );
 
-        Map<String, Timer.Context> timers = initTimers( defaultName );
+        List<String> timers = initTimers( defaultName );
         List<String> exceptionMeters = initMeters( measure, EXCEPTION, defaultName );
         List<String> meters = initMeters( measure, METER, defaultName );
 
         List<String> startMeters = meters.stream().map( name -> name( name, "starts" ) ).collect( Collectors.toList() );
 
-        long start = System.nanoTime();
+        // one clock reading on each side feeds the timers as well as the cumulative timings
+        Clock clock = metricsManager.getClock( timers.get( 0 ) );
+        long start = clock.getTick();
 
+        boolean async = false;
         try
         {
             metricsManager.mark( startMeters );
 
-            return context.proceed();
+            Object result = context.proceed();
+            if ( isAsync( result ) )
+            {
+                // measure until the returned stage completes, not until it's created
+                async = true;
+                onCompletion( result, error -> {
+                    if ( error != null )
+                    {
+                        markExceptions( exceptionMeters, error );
+                    }
+                    finish( defaultName, timers, meters, clock, start );
+                } );
+            }
+            return result;
         }
         catch ( Exception e )
         {
-            metricsManager.mark( exceptionMeters );
-
-            List<String> eClassMeters = exceptionMeters.stream()
-                                                       .map( name -> name( name, e.getClass().getSimpleName() ) )
-                                                       .filter( name -> !exceptionMeters.contains( name ) )
-                                                       .collect( Collectors.toList() );
-
-            metricsManager.mark( eClassMeters );
-
+            markExceptions( exceptionMeters, e );
             throw e;
         }
         finally
         {
-            metricsManager.stopTimers( timers );
-            metricsManager.mark( meters );
+            if ( !async )
+            {
+                finish( defaultName, timers, meters, clock, start );
+            }
+        }
+    }
 
-            double elapsed = (System.nanoTime() - start) / NANOS_PER_MILLISECOND;
+    private void markExceptions( List<String> exceptionMeters, Throwable e )
+    {
+        metricsManager.mark( exceptionMeters );
 
-            metricsManager.accumulate( defaultName, elapsed );
-        }
+        List<String> eClassMeters = exceptionMeters.stream()
+                                                   .map( name -> name( name, e.getClass().getSimpleName() ) )
+                                                   .filter( name -> !exceptionMeters.contains( name ) )
+                                                   .collect( Collectors.toList() );
+
+        metricsManager.mark( eClassMeters );
+    }
+
+    private void finish( String defaultName, List<String> timers, List<String> meters, Clock clock, long start )
+    {
+        long elapsed = clock.getTick() - start;
+        timers.forEach( name -> metricsManager.getMetricRegistry()
+                                              .timer( name, clock )
+                                              .update( elapsed, TimeUnit.NANOSECONDS ) );
+        metricsManager.mark( meters );
+
+        metricsManager.accumulate( defaultName, elapsed / NANOS_PER_MILLISECOND );
     }
 
     private List<String> initMeters( final Measure measure, String classifier,
@@ -127,13 +157,11 @@ public class DefaultMetricsInterceptor
         return meters;
     }
 
-    private Map<String, Timer.Context> initTimers( String defaultName )
+    private List<String> initTimers( String defaultName )
     {
-        Map<String, Timer.Context> timers = new HashMap<>();
+        List<String> timers = new ArrayList<>();
 
-        String name = getName( config.getNodePrefix(), DEFAULT, defaultName, TIMER );
-        timers.put(name,
-                metricsManager.startTimer( name ) );
+        timers.add( getName( config.getNodePrefix(), DEFAULT, defaultName, TIMER ) );
 
         return timers;
     }
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.logback;
+
+import ch.qos.logback.classic.pattern.ClassicConverter;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import org.commonjava.o11yphant.metrics.RequestContext;
+
+import java.util.Map;
+
+/**
+ * Renders {@link RequestContext} values into log lines when (and only when) an event is actually written, which is
+ * what makes lazy MDC mode in {@link org.commonjava.o11yphant.metrics.RequestContextHelper} viable. Register it in
+ * logback.xml and use it in place of <code>%X{key}</code>:
+ * <pre>
+ * &lt;conversionRule conversionWord="rctx" converterClass="org.commonjava.o11yphant.metrics.logback.RequestContextConverter"/&gt;
+ * ...
+ * &lt;pattern&gt;%d [%rctx{trace-id}] %msg%n&lt;/pattern&gt;
+ * </pre>
+ * Values already in the event's MDC take precedence. Without a key, all MDC-scoped request values are rendered.
+ *
+ * NOTE: The request context is read from the rendering thread, so with an AsyncAppender the values must be copied
+ * into the MDC first via {@link org.commonjava.o11yphant.metrics.RequestContextHelper#materializeMdc()}.
+ */
+public class RequestContextConverter
+                extends ClassicConverter
+{
+    private String key;
+
+    private RequestContext.Slot slot;
+
+    @Override
+    public void start()
+    {
+        key = getFirstOption();
+        if ( key != null )
+        {
+            slot = RequestContext.slotFor( key );
+        }
+        super.start();
+    }
+
+    @Override
+    public String convert( ILoggingEvent event )
+    {
+        Map<String, String> mdc = event.getMDCPropertyMap();
+        if ( key != null && mdc != null )
+        {
+            String v = mdc.get( key );
+            if ( v != null )
+            {
+                return v;
+            }
+        }
+
+        RequestContext ctx = RequestContext.getRequestContext( false );
+        if ( ctx == null )
+        {
+            return "";
+        }
+
+        if ( key == null )
+        {
+            return ctx.getMdcValues().toString();
+        }
+
+        if ( slot != null )
+        {
+            Object v = ctx.get( slot );
+            if ( v != null )
+            {
+                return String.valueOf( v );
+            }
+        }
+
+        return "";
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.commonjava.o11yphant.metrics.sli;
 
+import org.commonjava.o11yphant.metrics.api.Gauge;
 import org.commonjava.o11yphant.metrics.api.healthcheck.HealthCheck;
 import org.commonjava.o11yphant.metrics.api.Meter;
 import org.commonjava.o11yphant.metrics.api.Metric;
@@ -27,6 +28,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 public class GoldenSignalsFunctionMetrics
 {
@@ -40,13 +43,37 @@ public class GoldenSignalsFunctionMetrics
 
     private final Meter throughput;
 
+    private final Timer queueWait;
+
+    /**
+     * Striped so that concurrent enter() / close() calls on a hot function don't contend on a single cell.
+     */
+    private final LongAdder inFlight = new LongAdder();
+
+    private final Gauge<Long> inFlightGauge = inFlight::sum;
+
+    private final Gauge<Double> saturationGauge = this::getSaturation;
+
+    private final int capacity;
+
     public GoldenSignalsFunctionMetrics( String name )
+    {
+        this( name, 0 );
+    }
+
+    /**
+     * @param capacity the number of concurrent calls this function is sized for. Saturation is reported as in-flight
+     * calls divided by this value. If it is less than 1, saturation is not calculated.
+     */
+    public GoldenSignalsFunctionMetrics( String name, int capacity )
     {
         this.name = name;
+        this.capacity = capacity;
         this.load = new O11Meter();
         this.errors = new O11Meter();
         this.throughput = new O11Meter();
         this.latency = new O11Timer();
+        this.queueWait = new O11Timer();
     }
 
     public Map<String, Metric> getMetrics()
@@ -56,6 +83,12 @@ public class GoldenSignalsFunctionMetrics
         metrics.put( name + ".errors", errors );
         metrics.put( name + ".throughput", throughput );
         metrics.put( name + ".load", load );
+        metrics.put( name + ".inflight", inFlightGauge );
+        metrics.put( name + ".queue", queueWait );
+        if ( capacity > 0 )
+        {
+            metrics.put( name + ".saturation", saturationGauge );
+        }
 
         return metrics;
     }
@@ -89,6 +122,71 @@ public class GoldenSignalsFunctionMetrics
         return this;
     }
 
+    /**
+     * Like {@link #started()}, and also count the call as in flight until the returned handle is closed. Use it in
+     * a try-with-resources block so failed calls don't leak in-flight slots.
+     */
+    public InFlightCall enter()
+    {
+        started();
+        inFlight.increment();
+        return new InFlightCall();
+    }
+
+    /**
+     * Record how long a call waited (in a thread pool queue, for a connection, etc.) before it started executing.
+     */
+    public GoldenSignalsFunctionMetrics queued( long duration )
+    {
+        queueWait.update( duration, TimeUnit.NANOSECONDS );
+        return this;
+    }
+
+    public long getInFlight()
+    {
+        return inFlight.sum();
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return in-flight calls as a fraction of the configured capacity, or 0 if no capacity is configured
+     */
+    public double getSaturation()
+    {
+        if ( capacity < 1 )
+        {
+            return 0;
+        }
+
+        return (double) inFlight.sum() / capacity;
+    }
+
+    /**
+     * In-flight slot of a call started with {@link #enter()}. Closing it more than once releases the slot only once.
+     */
+    public final class InFlightCall
+                    implements AutoCloseable
+    {
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private InFlightCall()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+            if ( closed.compareAndSet( false, true ) )
+            {
+                inFlight.decrement();
+            }
+        }
+    }
+
     final class GSFunctionHealthCheck
                     implements HealthCheck
     {
@@ -96,11 +194,24 @@ public class GoldenSignalsFunctionMetrics
         public Result check() throws Exception
         {
             // FIXME: We need need to incorporate the SLO targets to determine whether health / unhealthy.
-            return new HealthCheckResult( true )
+            HealthCheckResult result = new HealthCheckResult( true )
                                     .withDetail( "latency", latency.getSnapshot().get99thPercentile() )
                                     .withDetail( "errors", errors.getOneMinuteRate() )
                                     .withDetail( "throughput", throughput.getOneMinuteRate() )
-                                    .withDetail( "load", load.getOneMinuteRate() );
+                                    .withDetail( "load", load.getOneMinuteRate() )
+                                    .withDetail( "inflight", inFlight.sum() );
+
+            if ( queueWait.getCount() > 0 )
+            {
+                result.withDetail( "queue", queueWait.getSnapshot().get99thPercentile() );
+            }
+
+            if ( capacity > 0 )
+            {
+                result.withDetail( "saturation", getSaturation() );
+            }
+
+            return result;
         }
     }
 }
@@ -40,10 +40,19 @@ public abstract class GoldenSignalsMetricSet
     {
         getFunctions().forEach( function -> {
             logger.info( "Wiring SLI metrics for: {}", function );
-            functionMetrics.put( function, new GoldenSignalsFunctionMetrics( function ) );
+            functionMetrics.put( function, new GoldenSignalsFunctionMetrics( function, getCapacity( function ) ) );
         } );
     }
 
+    /**
+     * Override to supply the number of concurrent calls a function is sized for (thread pool size, connection pool
+     * size, etc.). This enables the saturation signal for that function. The default of 0 disables it.
+     */
+    protected int getCapacity( String function )
+    {
+        return 0;
+    }
+
     @Override
     public Map<String, Metric> getMetrics()
     {
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.util;
+
+import org.commonjava.o11yphant.metrics.context.ContextPropagation;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Helpers for instrumentation of methods returning a {@link CompletionStage}: those must be measured until the stage
+ * completes, not until it is returned.
+ */
+public final class AsyncUtils
+{
+    private AsyncUtils()
+    {
+    }
+
+    public static boolean isAsync( Object result )
+    {
+        return result instanceof CompletionStage;
+    }
+
+    /**
+     * Run the callback when the stage completes, with the caller's context (see {@link ContextPropagation}) attached,
+     * so ThreadContext based bookkeeping sees the same request. The callback receives the failure (unwrapped from
+     * {@link CompletionException}) or null. The stage itself is not replaced; callers should keep returning it.
+     */
+    public static void onCompletion( Object stage, Consumer<Throwable> callback )
+    {
+        ContextPropagation.Snapshot snapshot = ContextPropagation.capture();
+        ( (CompletionStage<?>) stage ).whenComplete( ( result, error ) -> {
+            try (ContextPropagation.Scope ignored = snapshot.attach())
+            {
+                callback.accept( unwrap( error ) );
+            }
+        } );
+    }
+
+    private static Throwable unwrap( Throwable error )
+    {
+        while ( ( error instanceof CompletionException || error instanceof ExecutionException )
+                        && error.getCause() != null )
+        {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
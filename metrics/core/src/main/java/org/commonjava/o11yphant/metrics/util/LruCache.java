@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Small, thread-safe, size-bounded cache that evicts the least-recently-used entry when full. Intended for memoizing
+ * per-route / per-name calculations where the number of distinct keys is modest but not strictly bounded.
+ */
+public class LruCache<K, V>
+{
+    private final Map<K, V> map;
+
+    public LruCache( final int maxSize )
+    {
+        this.map = new LinkedHashMap<K, V>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<K, V> eldest )
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public synchronized V get( K key )
+    {
+        return map.get( key );
+    }
+
+    public synchronized void put( K key, V value )
+    {
+        map.put( key, value );
+    }
+
+    public synchronized V remove( K key )
+    {
+        return map.remove( key );
+    }
+
+    public synchronized V computeIfAbsent( K key, Function<? super K, ? extends V> fn )
+    {
+        return map.computeIfAbsent( key, fn );
+    }
+
+    public synchronized int size()
+    {
+        return map.size();
+    }
+
+    public synchronized void clear()
+    {
+        map.clear();
+    }
+}
@@ -24,10 +24,13 @@ import org.commonjava.o11yphant.metrics.system.SystemGaugesSet;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
 
+import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
 
 public class DefaultMetricRegistryTest
@@ -90,4 +93,29 @@ public class DefaultMetricRegistryTest
         } );
     }
 
+    @Test
+    public void stopAggregationEndsTheAggregatorThread()
+                    throws Exception
+    {
+        defaultMetricRegistry.setAggregation( Collections.singleton( "agg" ), 1000 );
+        defaultMetricRegistry.timer( "agg.timer" ).update( 1, TimeUnit.MILLISECONDS );
+        assertTrue( aggregatorThreadAlive() );
+
+        defaultMetricRegistry.stopAggregation();
+        long deadline = System.currentTimeMillis() + 5000;
+        while ( aggregatorThreadAlive() && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+        assertFalse( aggregatorThreadAlive() );
+        assertTrue( defaultMetricRegistry.timer( "agg.timer" ).getCount() == 1 );
+    }
+
+    private static boolean aggregatorThreadAlive()
+    {
+        return Thread.getAllStackTraces()
+                     .keySet()
+                     .stream()
+                     .anyMatch( t -> t.isAlive() && t.getName().equals( "o11yphant-metric-aggregator" ) );
+    }
 }
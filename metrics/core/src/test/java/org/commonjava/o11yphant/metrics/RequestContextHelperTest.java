@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics;
+
+import org.commonjava.cdi.util.weft.ThreadContext;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.commonjava.o11yphant.metrics.RequestContextHelper.END_NANOS;
+import static org.commonjava.o11yphant.metrics.RequestContextHelper.HTTP_STATUS;
+import static org.commonjava.o11yphant.metrics.RequestContextHelper.IS_METERED;
+import static org.commonjava.o11yphant.metrics.RequestContextHelper.RAW_IO_WRITE_NANOS;
+import static org.commonjava.o11yphant.metrics.RequestContextHelper.TRACE_ID;
+import static org.commonjava.o11yphant.metrics.RequestContextHelper.getContext;
+import static org.commonjava.o11yphant.metrics.RequestContextHelper.getRawIoWriteNanos;
+import static org.commonjava.o11yphant.metrics.RequestContextHelper.getRequestEndNanos;
+import static org.commonjava.o11yphant.metrics.RequestContextHelper.setContext;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class RequestContextHelperTest
+{
+    @After
+    public void tearDown()
+    {
+        ThreadContext.clearContext();
+    }
+
+    @Test
+    public void wellKnownKeysUseTypedSlots()
+    {
+        setContext( TRACE_ID, "abc" );
+        setContext( HTTP_STATUS, 404 );
+        setContext( END_NANOS, 12345L );
+        setContext( IS_METERED, Boolean.FALSE );
+        setContext( "custom", "value" );
+
+        ThreadContext ctx = ThreadContext.getContext( false );
+        assertNull( ctx.get( TRACE_ID ) );
+        assertEquals( "value", ctx.get( "custom" ) );
+
+        RequestContext requestContext = RequestContext.getRequestContext( false );
+        assertEquals( "abc", requestContext.getTraceId() );
+        assertEquals( 404, requestContext.getHttpStatus() );
+        assertEquals( 12345L, RequestContextHelper.getRequestEndNanos() );
+        assertFalse( requestContext.isMetered() );
+
+        assertEquals( "abc", getContext( TRACE_ID ) );
+        assertEquals( Long.valueOf( 12345L ), getContext( END_NANOS ) );
+        // boxed type is preserved
+        assertEquals( Integer.valueOf( 404 ), getContext( HTTP_STATUS ) );
+        assertEquals( "value", getContext( "custom" ) );
+    }
+
+    @Test
+    public void firstWriteWinsAndClear()
+    {
+        setContext( TRACE_ID, "first" );
+        setContext( TRACE_ID, "second" );
+        assertEquals( "first", getContext( TRACE_ID ) );
+
+        RequestContextHelper.clearContext( TRACE_ID );
+        assertNull( getContext( TRACE_ID ) );
+    }
+
+    @Test
+    public void rawThreadContextWritesAreStillSeen()
+    {
+        ThreadContext.getContext( true ).put( IS_METERED, Boolean.FALSE );
+        ThreadContext.getContext( false ).put( TRACE_ID, "raw" );
+
+        assertFalse( new DefaultMetricsManager().checkMetered() );
+        assertEquals( "raw", getContext( TRACE_ID ) );
+    }
+
+    @Test
+    public void rawNanosWritesAreStillSeen()
+    {
+        ThreadContext.getContext( true ).put( END_NANOS, 42L );
+        ThreadContext.getContext( false ).put( RAW_IO_WRITE_NANOS, 7L );
+
+        assertEquals( 42L, getRequestEndNanos() );
+        assertEquals( 7L, getRawIoWriteNanos() );
+    }
+
+    @Test
+    public void clearRemovesSlotAndRawValue()
+    {
+        setContext( TRACE_ID, "slot" );
+        ThreadContext.getContext( false ).put( TRACE_ID, "raw" );
+
+        RequestContextHelper.clearContext( TRACE_ID );
+        assertNull( getContext( TRACE_ID ) );
+    }
+
+    @Test
+    public void firstWriteWinsAcrossThreads()
+                    throws Exception
+    {
+        RequestContext requestContext = RequestContext.getRequestContext( true );
+        int threads = 8;
+        AtomicInteger winners = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch( 1 );
+        ExecutorService pool = Executors.newFixedThreadPool( threads );
+        for ( int t = 0; t < threads; t++ )
+        {
+            String value = "t" + t;
+            pool.execute( () -> {
+                try
+                {
+                    start.await();
+                }
+                catch ( InterruptedException e )
+                {
+                    return;
+                }
+                if ( requestContext.setIfAbsent( RequestContext.Slot.TRACE_ID, value ) )
+                {
+                    winners.incrementAndGet();
+                }
+            } );
+        }
+        start.countDown();
+        pool.shutdown();
+        pool.awaitTermination( 10, TimeUnit.SECONDS );
+
+        assertEquals( 1, winners.get() );
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics;
+
+import org.commonjava.o11yphant.metrics.api.Gauge;
+import org.commonjava.o11yphant.metrics.api.Meter;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class TrafficClassifierTest
+{
+    @Test
+    public void globalCacheClassifiesEachRouteOnce()
+    {
+        AtomicInteger calculations = new AtomicInteger();
+        TrafficClassifier classifier = new TrafficClassifier()
+        {
+            @Override
+            protected List<String> calculateCachedFunctionClassifiers( String restPath, String method )
+            {
+                calculations.incrementAndGet();
+                return Collections.singletonList( "content" );
+            }
+
+            @Override
+            protected boolean isGlobalCacheEnabled()
+            {
+                return true;
+            }
+
+            @Override
+            protected String getRouteTemplate( String restPath )
+            {
+                return restPath.substring( 0, restPath.indexOf( "/org/" ) );
+            }
+        };
+
+        classifier.classifyFunctions( "/api/content/maven/remote/central/org/foo/1.0/foo-1.0.jar", "GET" );
+        classifier.classifyFunctions( "/api/content/maven/remote/central/org/bar/2.0/bar-2.0.pom", "GET" );
+        classifier.classifyFunctions( "/api/content/maven/remote/central/org/bar/2.0/bar-2.0.pom", "PUT" );
+
+        assertEquals( 2, calculations.get() );
+        assertEquals( 1, ( (Meter) classifier.getMetricSet().getMetrics().get( "hits" ) ).getCount() );
+        assertEquals( 2, ( (Meter) classifier.getMetricSet().getMetrics().get( "misses" ) ).getCount() );
+    }
+
+    @Test
+    public void globalCacheSizeMayComeFromSubclassState()
+    {
+        AtomicInteger calculations = new AtomicInteger();
+        TrafficClassifier classifier = new SizedClassifier( 1, calculations );
+
+        classifier.classifyFunctions( "/a", "GET" );
+        classifier.classifyFunctions( "/a", "GET" );
+        classifier.classifyFunctions( "/b", "GET" );
+        classifier.classifyFunctions( "/a", "GET" );
+
+        assertEquals( 3, calculations.get() );
+        assertEquals( 1, ( (Gauge) classifier.getMetricSet().getMetrics().get( "size" ) ).getValue() );
+    }
+
+    @Test
+    public void zeroSizeDisablesGlobalCache()
+    {
+        AtomicInteger calculations = new AtomicInteger();
+        TrafficClassifier classifier = new SizedClassifier( 0, calculations );
+
+        classifier.classifyFunctions( "/a", "GET" );
+        classifier.classifyFunctions( "/a", "GET" );
+
+        assertEquals( 2, calculations.get() );
+    }
+
+    @Test
+    public void pathsWithoutRouteTemplateBypassGlobalCache()
+    {
+        AtomicInteger calculations = new AtomicInteger();
+        TrafficClassifier classifier = new SizedClassifier( 10, calculations )
+        {
+            @Override
+            protected String getRouteTemplate( String restPath )
+            {
+                return restPath.startsWith( "/api/" ) ? "/api" : null;
+            }
+        };
+
+        classifier.classifyFunctions( "/api/a", "GET" );
+        classifier.classifyFunctions( "/api/b", "GET" );
+        classifier.classifyFunctions( "/other/a", "GET" );
+        classifier.classifyFunctions( "/other/b", "GET" );
+
+        assertEquals( 3, calculations.get() );
+        assertEquals( 1, ( (Gauge) classifier.getMetricSet().getMetrics().get( "size" ) ).getValue() );
+    }
+
+    private static class SizedClassifier
+                    extends TrafficClassifier
+    {
+        // assigned after the superclass constructor ran, like injected config
+        private final int size;
+
+        private final AtomicInteger calculations;
+
+        private SizedClassifier( int size, AtomicInteger calculations )
+        {
+            this.size = size;
+            this.calculations = calculations;
+        }
+
+        @Override
+        protected List<String> calculateCachedFunctionClassifiers( String restPath, String method )
+        {
+            calculations.incrementAndGet();
+            return Collections.singletonList( "content" );
+        }
+
+        @Override
+        protected boolean isGlobalCacheEnabled()
+        {
+            return true;
+        }
+
+        @Override
+        protected int getGlobalCacheSize()
+        {
+            return size;
+        }
+
+        @Override
+        protected String getRouteTemplate( String restPath )
+        {
+            return restPath;
+        }
+    }
+}
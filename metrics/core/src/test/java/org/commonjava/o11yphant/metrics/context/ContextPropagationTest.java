@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.context;
+
+import org.commonjava.cdi.util.weft.ThreadContext;
+import org.commonjava.o11yphant.metrics.RequestContextHelper;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.commonjava.o11yphant.metrics.RequestContextHelper.TRACE_ID;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ContextPropagationTest
+{
+    @After
+    public void tearDown()
+    {
+        ThreadContext.clearContext();
+    }
+
+    @Test
+    public void contextVisibleInTaskAndRemovedAfter()
+                    throws Exception
+    {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try
+        {
+            RequestContextHelper.setContext( TRACE_ID, "trace-1" );
+            MDC.put( "user", "alice" );
+
+            String[] seen = new String[2];
+            ContextPropagation.runAsync( () -> {
+                seen[0] = RequestContextHelper.getContext( TRACE_ID );
+                seen[1] = MDC.get( "user" );
+            }, pool ).get();
+
+            assertThat( seen[0], equalTo( "trace-1" ) );
+            assertThat( seen[1], equalTo( "alice" ) );
+
+            Future<String> after = pool.submit( () -> RequestContextHelper.getContext( TRACE_ID ) );
+            assertThat( after.get(), nullValue() );
+            assertThat( pool.submit( () -> MDC.get( "user" ) ).get(), nullValue() );
+        }
+        finally
+        {
+            MDC.clear();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void wrappedExecutorCapturesAtSubmission()
+                    throws Exception
+    {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try
+        {
+            RequestContextHelper.setContext( TRACE_ID, "trace-2" );
+            String traceId = CompletableFuture.supplyAsync( () -> RequestContextHelper.<String>getContext( TRACE_ID ),
+                                                            ContextPropagation.wrap( pool ) )
+                                              .thenApplyAsync( t -> t + "/" + RequestContextHelper.getContext( TRACE_ID ),
+                                                               ContextPropagation.wrap( pool ) )
+                                              .get();
+            assertThat( traceId, equalTo( "trace-2/trace-2" ) );
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+}
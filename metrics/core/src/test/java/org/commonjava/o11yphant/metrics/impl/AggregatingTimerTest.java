@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.impl;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.SlidingWindowReservoir;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class AggregatingTimerTest
+{
+    @Test
+    public void readersSeeAllBufferedUpdates()
+                    throws Exception
+    {
+        // keep every sample so the snapshot is exact
+        AggregatingTimer timer = new AggregatingTimer( new SlidingWindowReservoir( 4000 ), Clock.defaultClock() );
+        AggregatingMeter meter = new AggregatingMeter();
+
+        ExecutorService pool = Executors.newFixedThreadPool( 4 );
+        for ( int t = 0; t < 4; t++ )
+        {
+            pool.execute( () -> {
+                for ( int i = 0; i < 1000; i++ )
+                {
+                    timer.update( i, TimeUnit.MICROSECONDS );
+                    meter.mark();
+                }
+            } );
+        }
+        pool.shutdown();
+        pool.awaitTermination( 10, TimeUnit.SECONDS );
+
+        assertEquals( 4000, timer.getCount() );
+        assertEquals( 4000, meter.getCount() );
+        assertEquals( TimeUnit.MICROSECONDS.toNanos( 999 ), timer.getSnapshot().getMax() );
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.impl;
+
+import org.commonjava.o11yphant.metrics.api.Clock;
+import org.commonjava.o11yphant.metrics.api.Timer;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CoarseClockTest
+{
+    @Test
+    public void readingsAdvanceInTheBackground()
+                    throws Exception
+    {
+        try (CoarseClock clock = new CoarseClock( 1, TimeUnit.MILLISECONDS ))
+        {
+            long tick = clock.getTick();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos( 5 );
+            while ( clock.getTick() == tick && System.nanoTime() < deadline )
+            {
+                Thread.sleep( 1 );
+            }
+
+            assertTrue( clock.getTick() > tick );
+            assertTrue( clock.getTime() > 0 );
+        }
+    }
+
+    @Test
+    public void timerMeasuresWithItsOwnClock()
+                    throws Exception
+    {
+        long[] now = { 0 };
+        Clock manual = new Clock()
+        {
+            @Override
+            public long getTick()
+            {
+                return now[0];
+            }
+
+            @Override
+            public long getTime()
+            {
+                return now[0] / 1000000;
+            }
+        };
+
+        Timer timer = new O11Timer( new com.codahale.metrics.Timer(), manual );
+        Timer.Context context = timer.time();
+        now[0] = 42;
+
+        assertEquals( 42, context.stop() );
+        assertEquals( 1, timer.getCount() );
+        assertEquals( 42, timer.getSnapshot().getMax() );
+    }
+}
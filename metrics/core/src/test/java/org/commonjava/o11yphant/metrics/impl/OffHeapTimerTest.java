@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.impl;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Snapshot;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapTimerTest
+{
+    @Test
+    public void recordsIntoArenaSlots()
+    {
+        OffHeapHistogramArena arena = new OffHeapHistogramArena( 2 );
+        OffHeapTimer timer = new OffHeapTimer( arena, arena.allocate(), Clock.defaultClock() );
+        OffHeapTimer other = new OffHeapTimer( arena, arena.allocate(), Clock.defaultClock() );
+        assertEquals( -1, arena.allocate() );
+
+        for ( int i = 1; i <= 100; i++ )
+        {
+            timer.update( i, TimeUnit.MILLISECONDS );
+        }
+        other.update( 5, TimeUnit.SECONDS );
+
+        Snapshot snapshot = timer.getSnapshot();
+        assertEquals( 100, timer.getCount() );
+        assertEquals( TimeUnit.MILLISECONDS.toNanos( 1 ), snapshot.getMin() );
+        assertEquals( TimeUnit.MILLISECONDS.toNanos( 100 ), snapshot.getMax() );
+        assertEquals( TimeUnit.MICROSECONDS.toNanos( 50500 ), snapshot.getMean(), 1 );
+
+        double median = snapshot.getMedian();
+        assertTrue( "median: " + median, Math.abs( median - TimeUnit.MILLISECONDS.toNanos( 50 ) ) < 0.25 * median );
+
+        assertEquals( 1, other.getCount() );
+        assertEquals( TimeUnit.SECONDS.toNanos( 5 ), other.getSnapshot().getMax() );
+    }
+
+    @Test
+    public void bucketsStayWithinAQuarter()
+    {
+        for ( long v = 1; v > 0 && v < Long.MAX_VALUE / 2; v = v * 3 + 1 )
+        {
+            long representative = OffHeapHistogramArena.bucketValue( OffHeapHistogramArena.bucketOf( v ) );
+            assertTrue( v + " -> " + representative, Math.abs( representative - v ) <= v / 4 );
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.impl;
+
+import org.commonjava.o11yphant.metrics.api.Timer;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class SampledTimerTest
+{
+    @Test
+    public void countsEveryCallButSamplesOneInN()
+                    throws Exception
+    {
+        SampledTimer sampled = new SampledTimer( 10 );
+        Timer timer = new O11Timer( sampled );
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            try (Timer.Context ignored = timer.time())
+            {
+                // nothing to time
+            }
+        }
+
+        assertEquals( 1000, timer.getCount() );
+        assertEquals( 100, sampled.getSnapshot().size() );
+    }
+
+    @Test
+    public void updateIsSampledToo()
+    {
+        SampledTimer sampled = new SampledTimer( 4 );
+        for ( int i = 1; i <= 8; i++ )
+        {
+            sampled.update( i, TimeUnit.MILLISECONDS );
+        }
+
+        assertEquals( 8, sampled.getCount() );
+        assertEquals( 2, sampled.getSnapshot().size() );
+        assertEquals( TimeUnit.MILLISECONDS.toNanos( 8 ), sampled.getSnapshot().getMax() );
+    }
+}
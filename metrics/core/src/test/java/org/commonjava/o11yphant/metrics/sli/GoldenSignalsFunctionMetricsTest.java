@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.sli;
+
+import org.commonjava.o11yphant.metrics.api.Gauge;
+import org.commonjava.o11yphant.metrics.api.Metric;
+import org.commonjava.o11yphant.metrics.api.healthcheck.HealthCheck;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GoldenSignalsFunctionMetricsTest
+{
+    @Test
+    public void inFlightAndSaturation() throws Exception
+    {
+        GoldenSignalsFunctionMetrics metrics = new GoldenSignalsFunctionMetrics( "test", 4 );
+        metrics.enter();
+        metrics.enter();
+        GoldenSignalsFunctionMetrics.InFlightCall call = metrics.enter();
+        call.close();
+        call.close();
+
+        // plain started() doesn't hold an in-flight slot
+        metrics.started();
+
+        assertEquals( 2, metrics.getInFlight() );
+        assertEquals( 0.5, metrics.getSaturation(), 0.0001 );
+
+        Map<String, Metric> ms = metrics.getMetrics();
+        assertEquals( 2L, ( (Gauge) ms.get( "test.inflight" ) ).getValue() );
+        assertEquals( 0.5, ( (Gauge) ms.get( "test.saturation" ) ).getValue() );
+
+        HealthCheck.Result result = metrics.getHealthCheck().check();
+        assertEquals( 2L, result.getDetails().get( "inflight" ) );
+        assertEquals( 0.5, result.getDetails().get( "saturation" ) );
+        assertFalse( result.getDetails().containsKey( "queue" ) );
+
+        metrics.queued( 1000 );
+        assertTrue( metrics.getHealthCheck().check().getDetails().containsKey( "queue" ) );
+    }
+
+    @Test
+    public void noSaturationWithoutCapacity()
+    {
+        GoldenSignalsFunctionMetrics metrics = new GoldenSignalsFunctionMetrics( "test" );
+        metrics.enter();
+
+        assertEquals( 0, metrics.getSaturation(), 0.0001 );
+        assertFalse( metrics.getMetrics().containsKey( "test.saturation" ) );
+        assertTrue( metrics.getMetrics().containsKey( "test.inflight" ) );
+    }
+}
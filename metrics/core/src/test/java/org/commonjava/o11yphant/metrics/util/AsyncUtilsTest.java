@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class AsyncUtilsTest
+{
+    @Test
+    public void callbackRunsOnCompletion()
+    {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        AtomicReference<Throwable> seen = new AtomicReference<>( new Throwable( "not called" ) );
+
+        assertThat( AsyncUtils.isAsync( future ), equalTo( true ) );
+        AsyncUtils.onCompletion( future, seen::set );
+        assertThat( seen.get().getMessage(), equalTo( "not called" ) );
+
+        future.complete( "done" );
+        assertThat( seen.get(), nullValue() );
+    }
+
+    @Test
+    public void failureIsUnwrapped()
+    {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        AtomicReference<Throwable> seen = new AtomicReference<>();
+
+        AsyncUtils.onCompletion( future.thenApply( s -> s + "!" ), seen::set );
+        future.completeExceptionally( new IllegalStateException() );
+
+        assertThat( seen.get(), instanceOf( IllegalStateException.class ) );
+    }
+}
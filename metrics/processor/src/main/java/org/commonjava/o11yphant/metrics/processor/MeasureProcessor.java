@@ -0,0 +1,381 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Generates static instrumentation wrappers for {@code @Measure} classes, as an alternative to the CDI
+ * {@code DefaultMetricsInterceptor}. For each class {@code Foo} that has {@code @Measure} on the type or on some of its
+ * methods, a subclass {@code Foo_Measured} is generated in the same package. It overrides every measured method to
+ * call {@code super} inside a {@code MeasureHandle} scope; the handles are static final fields, so there is no proxy,
+ * no InvocationContext and no reflection per call, and the JIT can inline the instrumentation. Like the interceptor,
+ * methods returning a {@code CompletionStage} are measured until the stage completes.
+ * <p>
+ * Methods that cannot be overridden (private, static, final) and final classes are reported as warnings and skipped.
+ * Constructors are mirrored, so {@code new Foo_Measured( ... )} is a drop-in replacement for {@code new Foo( ... )}.
+ * <p>
+ * When CDI is on the compile classpath the wrapper is {@code @Vetoed}. Scope annotations are inherited, so otherwise
+ * it would become a second bean with the same types as {@code Foo} and make every {@code @Inject Foo} ambiguous.
+ * <p>
+ * The wrappers only record metrics through {@code MeasureHandle}; they don't create Honeycomb spans. Only
+ * {@code @Measure} is handled: {@code @MetricWrapper}, {@code @MetricWrapperStart} and {@code @MetricWrapperEnd}
+ * methods, and tracing of measured methods, still go through the CDI interceptors.
+ */
+public class MeasureProcessor
+        extends AbstractProcessor
+{
+    static final String MEASURE = "org.commonjava.o11yphant.metrics.annotation.Measure";
+
+    static final String HANDLE = "org.commonjava.o11yphant.metrics.instrument.MeasureHandle";
+
+    static final String VETOED = "javax.enterprise.inject.Vetoed";
+
+    static final String SUFFIX = "_Measured";
+
+    private Messager messager;
+
+    private Filer filer;
+
+    @Override
+    public synchronized void init( ProcessingEnvironment processingEnv )
+    {
+        super.init( processingEnv );
+        this.messager = processingEnv.getMessager();
+        this.filer = processingEnv.getFiler();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes()
+    {
+        return Collections.singleton( MEASURE );
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process( Set<? extends TypeElement> annotations, RoundEnvironment roundEnv )
+    {
+        TypeElement measure = processingEnv.getElementUtils().getTypeElement( MEASURE );
+        if ( measure == null )
+        {
+            return false;
+        }
+
+        Set<TypeElement> types = new LinkedHashSet<>();
+        for ( Element e : roundEnv.getElementsAnnotatedWith( measure ) )
+        {
+            if ( e.getKind() == ElementKind.CLASS )
+            {
+                types.add( (TypeElement) e );
+            }
+            else if ( e.getKind() == ElementKind.METHOD && e.getEnclosingElement().getKind() == ElementKind.CLASS )
+            {
+                types.add( (TypeElement) e.getEnclosingElement() );
+            }
+        }
+
+        for ( TypeElement type : types )
+        {
+            generate( type, measure );
+        }
+
+        return false;
+    }
+
+    private void generate( TypeElement type, TypeElement measure )
+    {
+        if ( type.getModifiers().contains( Modifier.FINAL ) || type.getModifiers().contains( Modifier.PRIVATE ) )
+        {
+            warn( type, "@Measure class is final or private, no wrapper is generated" );
+            return;
+        }
+        if ( type.getNestingKind() != NestingKind.TOP_LEVEL && ( type.getNestingKind() != NestingKind.MEMBER
+                        || !type.getModifiers().contains( Modifier.STATIC ) ) )
+        {
+            warn( type, "@Measure on local, anonymous or inner (non-static) classes is not supported" );
+            return;
+        }
+
+        boolean typeMeasured = isAnnotated( type, measure );
+        List<ExecutableElement> methods = new ArrayList<>();
+        for ( ExecutableElement method : ElementFilter.methodsIn( type.getEnclosedElements() ) )
+        {
+            if ( !typeMeasured && !isAnnotated( method, measure ) )
+            {
+                continue;
+            }
+
+            Set<Modifier> mods = method.getModifiers();
+            if ( mods.contains( Modifier.PRIVATE ) || mods.contains( Modifier.STATIC ) || mods.contains(
+                            Modifier.FINAL ) || mods.contains( Modifier.ABSTRACT ) )
+            {
+                if ( !typeMeasured )
+                {
+                    warn( method, "@Measure method is private, static, final or abstract and cannot be wrapped" );
+                }
+                continue;
+            }
+            methods.add( method );
+        }
+
+        if ( methods.isEmpty() )
+        {
+            return;
+        }
+
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf( type );
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName( type ).toString();
+        String simpleName = ( packageName.isEmpty() ? binaryName : binaryName.substring( packageName.length() + 1 ) )
+                        .replace( '$', '_' ) + SUFFIX;
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+
+        try
+        {
+            JavaFileObject file = filer.createSourceFile( qualifiedName, type );
+            try (Writer writer = file.openWriter())
+            {
+                writer.write( source( type, packageName, simpleName, methods ) );
+            }
+        }
+        catch ( IOException e )
+        {
+            messager.printMessage( Diagnostic.Kind.ERROR, "Cannot write " + qualifiedName + ": " + e.getMessage(),
+                                   type );
+        }
+    }
+
+    private String source( TypeElement type, String packageName, String simpleName, List<ExecutableElement> methods )
+    {
+        String superName = type.getQualifiedName().toString();
+        String typeParams = typeParameters( type.getTypeParameters(), true );
+        String typeArgs = typeParameters( type.getTypeParameters(), false );
+
+        StringBuilder sb = new StringBuilder();
+        if ( !packageName.isEmpty() )
+        {
+            sb.append( "package " ).append( packageName ).append( ";\n\n" );
+        }
+        sb.append( "/**\n * Generated by " )
+          .append( getClass().getName() )
+          .append( " from {@link " )
+          .append( superName )
+          .append( "}. Do not edit.\n */\n" );
+        if ( processingEnv.getElementUtils().getTypeElement( VETOED ) != null )
+        {
+            sb.append( '@' ).append( VETOED ).append( '\n' );
+        }
+        sb.append( "public class " ).append( simpleName ).append( typeParams );
+        sb.append( "\n        extends " ).append( superName ).append( typeArgs ).append( "\n{\n" );
+
+        for ( int i = 0; i < methods.size(); i++ )
+        {
+            sb.append( "    private static final " )
+              .append( HANDLE )
+              .append( " HANDLE_" )
+              .append( i )
+              .append( " =\n                    " )
+              .append( HANDLE )
+              .append( ".of( " )
+              .append( superName )
+              .append( ".class, \"" )
+              .append( methods.get( i ).getSimpleName() )
+              .append( "\" );\n\n" );
+        }
+
+        for ( ExecutableElement ctor : ElementFilter.constructorsIn( type.getEnclosedElements() ) )
+        {
+            if ( ctor.getModifiers().contains( Modifier.PRIVATE ) )
+            {
+                continue;
+            }
+            sb.append( "    " ).append( visibility( ctor ) );
+            sb.append( typeParameters( ctor.getTypeParameters(), true ) );
+            if ( !ctor.getTypeParameters().isEmpty() )
+            {
+                sb.append( ' ' );
+            }
+            sb.append( simpleName ).append( "( " ).append( parameters( ctor ) ).append( " )" );
+            sb.append( throwsClause( ctor ) ).append( "\n    {\n" );
+            sb.append( "        super( " ).append( arguments( ctor ) ).append( " );\n    }\n\n" );
+        }
+
+        for ( int i = 0; i < methods.size(); i++ )
+        {
+            ExecutableElement method = methods.get( i );
+            boolean isVoid = method.getReturnType().getKind() == TypeKind.VOID;
+            // only reference results can be a CompletionStage, measured until it completes
+            boolean completes = !isVoid && !method.getReturnType().getKind().isPrimitive();
+
+            sb.append( "    @Override\n    " ).append( visibility( method ) );
+            String methodTypeParams = typeParameters( method.getTypeParameters(), true );
+            if ( !methodTypeParams.isEmpty() )
+            {
+                sb.append( methodTypeParams ).append( ' ' );
+            }
+            sb.append( method.getReturnType() ).append( ' ' ).append( method.getSimpleName() );
+            sb.append( "( " ).append( parameters( method ) ).append( " )" );
+            sb.append( throwsClause( method ) ).append( "\n    {\n" );
+            sb.append( "        final " ).append( HANDLE ).append( ".Scope o11yScope = HANDLE_" ).append( i );
+            sb.append( ".start();\n" );
+            sb.append( "        try\n        {\n            " );
+            String call = "super." + method.getSimpleName() + "( " + arguments( method ) + " )";
+            if ( completes )
+            {
+                sb.append( "return o11yScope.complete( " ).append( call ).append( " );\n        }\n" );
+                sb.append( "        catch ( final Throwable o11yError )\n        {\n" );
+                sb.append( "            o11yScope.failed( o11yError );\n            o11yScope.close();\n" );
+                sb.append( "            throw o11yError;\n        }\n    }\n\n" );
+            }
+            else
+            {
+                if ( !isVoid )
+                {
+                    sb.append( "return " );
+                }
+                sb.append( call ).append( ";\n        }\n" );
+                sb.append( "        catch ( final Throwable o11yError )\n        {\n" );
+                sb.append( "            o11yScope.failed( o11yError );\n            throw o11yError;\n        }\n" );
+                sb.append( "        finally\n        {\n            o11yScope.close();\n        }\n    }\n\n" );
+            }
+        }
+
+        sb.append( "}\n" );
+        return sb.toString();
+    }
+
+    private boolean isAnnotated( Element element, TypeElement annotation )
+    {
+        return element.getAnnotationMirrors()
+                      .stream()
+                      .anyMatch( m -> m.getAnnotationType().asElement().equals( annotation ) );
+    }
+
+    private static String visibility( Element element )
+    {
+        Set<Modifier> mods = element.getModifiers();
+        if ( mods.contains( Modifier.PUBLIC ) )
+        {
+            return "public ";
+        }
+        if ( mods.contains( Modifier.PROTECTED ) )
+        {
+            return "protected ";
+        }
+        return "";
+    }
+
+    private static String typeParameters( List<? extends TypeParameterElement> params, boolean withBounds )
+    {
+        if ( params.isEmpty() )
+        {
+            return "";
+        }
+
+        return params.stream().map( p -> {
+            if ( !withBounds )
+            {
+                return p.getSimpleName().toString();
+            }
+            List<String> bounds = p.getBounds()
+                                   .stream()
+                                   .map( TypeMirror::toString )
+                                   .filter( b -> !"java.lang.Object".equals( b ) )
+                                   .collect( Collectors.toList() );
+            return bounds.isEmpty() ? p.getSimpleName().toString() : p.getSimpleName() + " extends " + String.join(
+                            " & ", bounds );
+        } ).collect( Collectors.joining( ", ", "<", ">" ) );
+    }
+
+    private static String parameters( ExecutableElement executable )
+    {
+        List<? extends VariableElement> params = executable.getParameters();
+        List<String> result = new ArrayList<>( params.size() );
+        for ( int i = 0; i < params.size(); i++ )
+        {
+            TypeMirror t = params.get( i ).asType();
+            String typeName;
+            if ( executable.isVarArgs() && i == params.size() - 1 && t.getKind() == TypeKind.ARRAY )
+            {
+                typeName = ( (ArrayType) t ).getComponentType() + "...";
+            }
+            else
+            {
+                typeName = t.toString();
+            }
+            result.add( "final " + typeName + " " + params.get( i ).getSimpleName() );
+        }
+        return String.join( ", ", result );
+    }
+
+    private static String arguments( ExecutableElement executable )
+    {
+        return executable.getParameters()
+                         .stream()
+                         .map( p -> p.getSimpleName().toString() )
+                         .collect( Collectors.joining( ", " ) );
+    }
+
+    private static String throwsClause( ExecutableElement executable )
+    {
+        if ( executable.getThrownTypes().isEmpty() )
+        {
+            return "";
+        }
+        return executable.getThrownTypes()
+                         .stream()
+                         .map( TypeMirror::toString )
+                         .collect( Collectors.joining( ", ", "\n            throws ", "" ) );
+    }
+
+    private void warn( Element element, String message )
+    {
+        messager.printMessage( Diagnostic.Kind.WARNING, message, element );
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2020 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.o11yphant.metrics.processor;
+
+import com.codahale.metrics.health.HealthCheckRegistry;
+import org.commonjava.o11yphant.metrics.DefaultMetricRegistry;
+import org.commonjava.o11yphant.metrics.DefaultMetricsManager;
+import org.commonjava.o11yphant.metrics.api.MetricRegistry;
+import org.commonjava.o11yphant.metrics.conf.DefaultMetricsConfig;
+import org.commonjava.o11yphant.metrics.instrument.MeasureHandle;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.enterprise.inject.Vetoed;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MeasureProcessorTest
+{
+    private static final String SOURCE = "package sample;\n" //
+                    + "import org.commonjava.o11yphant.metrics.annotation.Measure;\n" //
+                    + "public class Worker<T> {\n" //
+                    + "  private final String prefix;\n" //
+                    + "  public Worker( String prefix ) { this.prefix = prefix; }\n" //
+                    + "  @Measure public String join( String... parts ) { return prefix + String.join( \",\", parts ); }\n" //
+                    + "  @Measure public <E extends Exception> void fail( E e ) throws E { throw e; }\n" //
+                    + "  @Measure public java.util.concurrent.CompletableFuture<T> later( java.util.concurrent.CompletableFuture<T> f ) { return f; }\n" //
+                    + "  public int notMeasured() { return 1; }\n" //
+                    + "}\n";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @After
+    public void tearDown()
+    {
+        MeasureHandle.uninstall();
+    }
+
+    @Test
+    public void generatedWrapperRecordsMetrics()
+            throws Exception
+    {
+        Path src = temp.newFolder( "src", "sample" ).toPath();
+        File out = temp.newFolder( "out" );
+        Path source = Files.write( src.resolve( "Worker.java" ), SOURCE.getBytes( StandardCharsets.UTF_8 ) );
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int result = compiler.run( null, null, err, "-classpath", System.getProperty( "java.class.path" ),
+                                   "-processor", MeasureProcessor.class.getName(), "-d", out.getPath(), "-s",
+                                   out.getPath(), source.toString() );
+        assertThat( err.toString(), result, equalTo( 0 ) );
+
+        MetricRegistry registry =
+                        new DefaultMetricRegistry( new com.codahale.metrics.MetricRegistry(), new HealthCheckRegistry() );
+        MeasureHandle.install( new DefaultMetricsManager( registry ), new DefaultMetricsConfig() );
+
+        try (URLClassLoader loader = new URLClassLoader( new URL[] { out.toURI().toURL() },
+                                                         getClass().getClassLoader() ))
+        {
+            Class<?> wrapper = loader.loadClass( "sample.Worker_Measured" );
+            // must not become a second CDI bean for Worker
+            assertThat( wrapper.isAnnotationPresent( Vetoed.class ), equalTo( true ) );
+            Object worker = wrapper.getConstructor( String.class ).newInstance( ">" );
+
+            Method join = wrapper.getMethod( "join", String[].class );
+            assertThat( join.invoke( worker, (Object) new String[] { "a", "b" } ), equalTo( ">a,b" ) );
+            join.invoke( worker, (Object) new String[0] );
+
+            try
+            {
+                wrapper.getMethod( "fail", Exception.class ).invoke( worker, new IllegalStateException() );
+                fail( "exception expected" );
+            }
+            catch ( InvocationTargetException e )
+            {
+                assertThat( e.getCause(), instanceOf( IllegalStateException.class ) );
+            }
+
+            // asynchronous results are measured until they complete
+            CompletableFuture<String> stage = new CompletableFuture<>();
+            wrapper.getMethod( "later", CompletableFuture.class ).invoke( worker, stage );
+            assertThat( registry.timer( "Worker.later.timer" ).getCount(), equalTo( 0L ) );
+            stage.complete( "done" );
+            assertThat( registry.timer( "Worker.later.timer" ).getCount(), equalTo( 1L ) );
+        }
+
+        assertThat( registry.timer( "Worker.join.timer" ).getCount(), equalTo( 2L ) );
+        assertThat( registry.meter( "Worker.join.meter" ).getCount(), equalTo( 2L ) );
+        assertThat( registry.meter( "Worker.join.meter.starts" ).getCount(), equalTo( 2L ) );
+        assertThat( registry.meter( "Worker.fail.exception" ).getCount(), equalTo( 1L ) );
+        assertThat( registry.meter( "Worker.fail.exception.IllegalStateException" ).getCount(), equalTo( 1L ) );
+        assertThat( registry.timer( "Worker.notMeasured.timer" ).getCount(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void stoppedManagerDetachesHandlesOnlyIfStillInstalled()
+    {
+        MetricRegistry registry =
+                        new DefaultMetricRegistry( new com.codahale.metrics.MetricRegistry(), new HealthCheckRegistry() );
+        DefaultMetricsManager stale = new DefaultMetricsManager( registry );
+        DefaultMetricsManager current = new DefaultMetricsManager( registry );
+        MeasureHandle handle = MeasureHandle.of( MeasureProcessorTest.class, "handle" );
+
+        MeasureHandle.install( stale, new DefaultMetricsConfig() );
+        MeasureHandle.install( current, new DefaultMetricsConfig() );
+        stale.stop();
+        handle.start().close();
+        assertThat( registry.timer( "MeasureProcessorTest.handle.timer" ).getCount(), equalTo( 1L ) );
+
+        current.stop();
+        handle.start().close();
+        assertThat( registry.timer( "MeasureProcessorTest.handle.timer" ).getCount(), equalTo( 1L ) );
+    }
+}